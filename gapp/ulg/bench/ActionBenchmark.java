@@ -0,0 +1,137 @@
+package gapp.ulg.bench;
+
+import gapp.ulg.game.board.Action;
+import gapp.ulg.game.board.Move;
+import gapp.ulg.game.board.PieceModel;
+import gapp.ulg.game.board.Pos;
+
+import static gapp.ulg.game.board.PieceModel.Species;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/** Misura il costo di {@link Action#equals(Object)} e {@link Action#hashCode()} su
+ * azioni {@link Action.Kind#SWAP} come quelle di Othello su una board 12x12 che
+ * rovesciano molte pedine (da 8 a 30). Ogni azione è confrontata con un'azione
+ * uguale ma con le posizioni in ordine diverso e con una che differisce per una sola
+ * posizione, e le mosse sono cercate in un insieme come fa
+ * {@code validMoves().contains(m)}. Per confronto è misurato anche il vecchio
+ * confronto che creava due {@link HashSet} a ogni invocazione.
+ * <br>
+ * Per ogni misura sono riportati i nanosecondi e i byte allocati per operazione.
+ * <br>
+ * Uso: {@code java gapp.ulg.bench.ActionBenchmark [ripetizioni]} */
+public class ActionBenchmark {
+    public static void main(String[] args) {
+        int ripetizioni = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        Random rnd = new Random(1);
+        PieceModel<Species> nero = PieceModel.of(Species.DISC, "nero");
+        int n = 256;
+
+        //Per ogni azione: una uguale con le posizioni mescolate e una con una posizione diversa;
+        List<Action<PieceModel<Species>>> azioni = new ArrayList<>(), uguali = new ArrayList<>(), diverse = new ArrayList<>();
+        Set<Move<PieceModel<Species>>> mosse = new HashSet<>();
+        List<Move<PieceModel<Species>>> cercate = new ArrayList<>();
+
+        for (int i = 0 ; i < n ; i++) {
+            List<Pos> pp = new ArrayList<>();
+
+            for (int b = 0 ; b < 12 ; b++)
+                for (int t = 0 ; t < 12 ; t++)
+                    pp.add(Pos.of(b, t));
+
+            Collections.shuffle(pp, rnd);
+            List<Pos> flip = new ArrayList<>(pp.subList(0, 8 + rnd.nextInt(23)));
+            Pos aggiunta = pp.get(100);
+
+            azioni.add(new Action<>(nero, flip.toArray(new Pos[0])));
+            Collections.shuffle(flip, rnd);
+            uguali.add(new Action<>(nero, flip.toArray(new Pos[0])));
+            flip.set(0, pp.get(99));
+            diverse.add(new Action<>(nero, flip.toArray(new Pos[0])));
+
+            mosse.add(new Move<>(new Action<>(aggiunta, nero), azioni.get(i)));
+            cercate.add(new Move<>(new Action<>(aggiunta, nero), uguali.get(i)));
+        }
+
+        for (int giro = 0 ; giro < 2 ; giro++) {    //Il primo giro serve a "scaldare" la JVM
+            Misura uguale = misura(() -> {
+                long c = 0;
+                for (int i = 0 ; i < n ; i++) if (azioni.get(i).equals(uguali.get(i))) c++;
+                return c;
+            }, ripetizioni, n);
+
+            Misura diversa = misura(() -> {
+                long c = 0;
+                for (int i = 0 ; i < n ; i++) if (azioni.get(i).equals(diverse.get(i))) c++;
+                return c;
+            }, ripetizioni, n);
+
+            Misura hash = misura(() -> {
+                long c = 0;
+                for (int i = 0 ; i < n ; i++) c += uguali.get(i).hashCode();
+                return c;
+            }, ripetizioni, n);
+
+            Misura contiene = misura(() -> {
+                long c = 0;
+                for (int i = 0 ; i < n ; i++) if (mosse.contains(cercate.get(i))) c++;
+                return c;
+            }, ripetizioni, n);
+
+            Misura insiemi = misura(() -> {
+                long c = 0;
+                for (int i = 0 ; i < n ; i++) if (conInsiemi(azioni.get(i), uguali.get(i))) c++;
+                return c;
+            }, ripetizioni, n);
+
+            if (giro == 1) {
+                System.out.println(uguale.riga("equals, azioni uguali"));
+                System.out.println(diversa.riga("equals, una posizione diversa"));
+                System.out.println(hash.riga("hashCode"));
+                System.out.println(contiene.riga("Set<Move>.contains"));
+                System.out.println(insiemi.riga("equals con due HashSet"));
+            }
+        }
+    }
+
+    /**Un'operazione da misurare, il valore ritornato evita che sia eliminata dal JIT*/
+    private interface Operazione {
+        long esegui();
+    }
+
+    /**Il tempo e i byte allocati per operazione*/
+    private static final class Misura {
+        Misura(double ns, double byteAllocati) {
+            this.ns = ns;
+            this.byteAllocati = byteAllocati;
+        }
+
+        String riga(String nome) {
+            return String.format("%-32s %10.1f ns/op %10.1f byte/op", nome, ns, byteAllocati);
+        }
+
+        final double ns, byteAllocati;
+    }
+
+    private static long pozzo;
+
+    /**Esegue l'operazione r volte, ogni esecuzione conta per n operazioni*/
+    private static Misura misura(Operazione op, int r, int n) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long prima = mx.getThreadAllocatedBytes(id), inizio = System.nanoTime();
+
+        for (int i = 0 ; i < r ; i++)
+            pozzo += op.esegui();
+
+        long tempo = System.nanoTime() - inizio, byteAllocati = mx.getThreadAllocatedBytes(id) - prima;
+        return new Misura(tempo / ((double) r * n), byteAllocati / ((double) r * n));
+    }
+
+    /**Il vecchio confronto delle azioni, che crea due insiemi di posizioni*/
+    private static boolean conInsiemi(Action<?> a, Action<?> b) {
+        return a.kind == b.kind && a.steps == b.steps && a.dir == b.dir && Objects.equals(a.piece, b.piece)
+                && new HashSet<>(a.pos).equals(new HashSet<>(b.pos));
+    }
+}
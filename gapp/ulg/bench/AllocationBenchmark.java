@@ -0,0 +1,119 @@
+package gapp.ulg.bench;
+
+import gapp.ulg.game.GameFactory;
+import gapp.ulg.game.board.GameRuler;
+import gapp.ulg.game.board.Move;
+import gapp.ulg.game.board.PieceModel;
+import gapp.ulg.game.board.Pos;
+import gapp.ulg.games.GameFactories;
+
+import static gapp.ulg.game.board.PieceModel.Species;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/** Misura la memoria allocata dal thread corrente, usando
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.
+ * <br>
+ * Nella prima parte confronta la creazione di posizioni e modelli di pezzi con
+ * {@code new} e con i metodi {@link Pos#of(int, int)} e
+ * {@link PieceModel#of(Enum, String)}. Nella seconda parte, per ogni gioco
+ * disponibile, riporta i byte allocati in media da un rollout, cioè da una partita
+ * giocata con mosse scelte in modo random a partire da una copia della situazione
+ * iniziale, come avviene nei rollout del Monte-Carlo.
+ * <br>
+ * Uso: {@code java gapp.ulg.bench.AllocationBenchmark [rollouts]} */
+public class AllocationBenchmark {
+    public static void main(String[] args) {
+        int rollouts = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        /*Prima parte: new contro of, con 144 posizioni (board 12x12) per iterazione;
+          gli oggetti sono memorizzati in un array, come in una board, altrimenti il
+          JIT potrebbe eliminare le allocazioni*/
+        Object[] board = new Object[2 * 144];
+
+        for (int giro = 0 ; giro < 2 ; giro++) {    //Il primo giro serve a "scaldare" la JVM
+            long nuovi = misura(() -> {
+                for (int b = 0 ; b < 12 ; b++)
+                    for (int t = 0 ; t < 12 ; t++) {
+                        board[2 * (b + 12 * t)] = new Pos(b, t);
+                        board[2 * (b + 12 * t) + 1] = new PieceModel<>(Species.DISC, (b + t) % 2 == 0 ? "nero" : "bianco");
+                    }
+                return board[(int) (pozzo & 255)].hashCode();
+            }, 10_000);
+
+            long condivisi = misura(() -> {
+                for (int b = 0 ; b < 12 ; b++)
+                    for (int t = 0 ; t < 12 ; t++) {
+                        board[2 * (b + 12 * t)] = Pos.of(b, t);
+                        board[2 * (b + 12 * t) + 1] = PieceModel.of(Species.DISC, (b + t) % 2 == 0 ? "nero" : "bianco");
+                    }
+                return board[(int) (pozzo & 255)].hashCode();
+            }, 10_000);
+
+            if (giro == 1) {
+                System.out.printf("Pos + PieceModel con new: %10.1f byte per board 12x12%n", nuovi / 10_000.0);
+                System.out.printf("Pos + PieceModel con of:  %10.1f byte per board 12x12%n", condivisi / 10_000.0);
+            }
+        }
+
+        //Seconda parte: byte allocati per rollout per ogni gioco;
+        for (String nome : GameFactories.availableBoardFactories()) {
+            GameFactory<GameRuler<PieceModel<Species>>> gF = GameFactories.getBoardFactory(nome);
+            gF.setPlayerNames("A", "B");
+            GameRuler<PieceModel<Species>> iniziale = gF.newGame();
+            Random rnd = new Random(1);
+
+            rollout(iniziale, rnd, Math.max(1, rollouts / 10));    //Riscaldamento
+
+            long inizio = System.nanoTime();
+            long byteAllocati = misura(() -> rollout(iniziale, rnd, rollouts), 1);
+            long tempo = System.nanoTime() - inizio;
+
+            System.out.printf("%-20s %-14s %12.0f byte/rollout %10.3f ms/rollout%n", nome, iniziale.name(),
+                    byteAllocati / (double) rollouts, tempo / 1e6 / rollouts);
+        }
+    }
+
+    /**Un'operazione da misurare, il valore ritornato evita che sia eliminata dal JIT*/
+    private interface Operazione {
+        long esegui();
+    }
+
+    private static long pozzo;
+
+    /**Ritorna i byte allocati dal thread corrente eseguendo l'operazione n volte*/
+    private static long misura(Operazione op, int n) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long prima = mx.getThreadAllocatedBytes(id);
+
+        for (int i = 0 ; i < n ; i++)
+            pozzo += op.esegui();
+
+        return mx.getThreadAllocatedBytes(id) - prima;
+    }
+
+    /**Gioca n partite random a partire da copie di g, ritorna la somma delle loro lunghezze*/
+    private static long rollout(GameRuler<PieceModel<Species>> g, Random rnd, int n) {
+        long mosse = 0;
+
+        for (int i = 0 ; i < n ; i++) {
+            GameRuler<PieceModel<Species>> partita = g.copy();
+
+            while (partita.result() == -1) {
+                List<Move<PieceModel<Species>>> lista = new ArrayList<>(partita.validMoves());
+                Move<PieceModel<Species>> mossa = lista.get(rnd.nextInt(lista.size()));
+
+                //Non abbandona mai, se c'è un'altra mossa;
+                if (mossa.kind == Move.Kind.RESIGN && lista.size() > 1)
+                    continue;
+
+                partita.move(mossa);
+                mosse++;
+            }
+        }
+
+        return mosse;
+    }
+}
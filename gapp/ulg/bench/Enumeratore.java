@@ -0,0 +1,395 @@
+package gapp.ulg.bench;
+
+import gapp.ulg.game.GameFactory;
+import gapp.ulg.game.board.GameRuler;
+import gapp.ulg.game.board.GameRuler.Mechanics;
+import gapp.ulg.game.board.GameRuler.Situation;
+import gapp.ulg.game.board.PieceModel;
+import gapp.ulg.game.util.Probe;
+
+import static gapp.ulg.game.board.PieceModel.Species;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+/** Enumera tutte le situazioni raggiungibili dalla situazione iniziale di un gioco,
+ * livello per livello (il livello d contiene le situazioni raggiungibili con d
+ * mosse e non con meno), usando la memoria solamente per un buffer di grandezza
+ * fissata e per il resto file su disco letti e scritti in sequenza tramite
+ * {@link FileChannel}.
+ * <br>
+ * Le situazioni sono codificate con {@link Probe.EncS} (che comprende il turno).
+ * Le prossime situazioni di un livello sono accumulate nel buffer; quando il buffer
+ * è pieno sono ordinate, private delle ripetizioni e scritte in un file (una run).
+ * Alla fine del livello le run sono fuse (fusione a k vie) insieme al file delle
+ * situazioni già viste, anche lui ordinato: le situazioni che non erano già viste
+ * formano il nuovo livello e il file delle viste è riscritto con anche loro. Così
+ * l'enumerazione termina anche per i giochi con cicli e i conteggi sono esatti.
+ * <br>
+ * Uso: {@code java gapp.ulg.bench.Enumeratore <gioco> [param=valore ...] [dir=<directory>] [buffer=<MB>]}
+ * <br>
+ * ad es. {@code java gapp.ulg.bench.Enumeratore m,n,k-game M=4 N=4 K=3}
+ * @param <P>  tipo del modello dei pezzi */
+public class Enumeratore<P> {
+    /** Le statistiche di un livello dell'enumerazione */
+    public static class Livello {
+        /** La profondità del livello */
+        public final int profondita;
+        /** Il numero di situazioni del livello, cioè raggiunte la prima volta a
+         * questa profondità */
+        public final long situazioni;
+        /** Il numero di prossime situazioni generate dal livello precedente, con le
+         * ripetizioni */
+        public final long generate;
+        /** Il numero di situazioni raggiungibili fino a questo livello compreso */
+        public final long totale;
+        /** Il numero di run scritte per questo livello */
+        public final int run;
+        /** I secondi impiegati per calcolare il livello */
+        public final double secondi;
+
+        Livello(int profondita, long situazioni, long generate, long totale, int run, double secondi) {
+            this.profondita = profondita;
+            this.situazioni = situazioni;
+            this.generate = generate;
+            this.totale = totale;
+            this.run = run;
+            this.secondi = secondi;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%4d %15d %15d %15d %6d %10.2f s %12.0f sit/s", profondita, situazioni,
+                    generate, totale, run, secondi, secondi > 0 ? generate / secondi : 0);
+        }
+    }
+
+    /** Crea l'enumeratore per il gioco con la meccanica data.
+     * @param gM  la meccanica del gioco
+     * @param dir  la directory per i file temporanei, che sono cancellati alla fine
+     * @param buffer  la memoria in byte da usare per il buffer delle run */
+    public Enumeratore(Mechanics<P> gM, Path dir, long buffer) {
+        meccanica = Objects.requireNonNull(gM);
+        this.dir = Objects.requireNonNull(dir);
+        this.buffer = buffer;
+    }
+
+    /** Enumera le situazioni raggiungibili, riportando le statistiche di ogni
+     * livello (compreso il livello 0 con la sola situazione iniziale) appena è
+     * calcolato. È sensibile all'interruzione del thread.
+     * @param report  riceve le statistiche di ogni livello
+     * @return il numero di situazioni raggiungibili
+     * @throws UncheckedIOException se la lettura o la scrittura dei file fallisce
+     * @throws CancellationException se il thread è interrotto */
+    public long enumera(Consumer<Livello> report) {
+        List<Path> temporanei = new ArrayList<>();
+
+        try {
+            Path livello = nuovoFile(temporanei), viste = nuovoFile(temporanei);
+            byte[] iniziale = new Probe.EncS<>(meccanica, meccanica.start).codedSit;
+
+            try (Scrittore s = new Scrittore(livello)) { s.scrivi(iniziale); }
+            try (Scrittore s = new Scrittore(viste)) { s.scrivi(iniziale); }
+
+            long totale = 1;
+            report.accept(new Livello(0, 1, 0, 1, 0, 0));
+
+            for (int d = 1 ; ; d++) {
+                long inizio = System.nanoTime();
+                List<Path> run = new ArrayList<>();
+                long generate = espandi(livello, run, temporanei);
+                int numeroRun = run.size();
+
+                //Troppe run aperte insieme: le fondo a gruppi;
+                while (run.size() > MAX_FUSIONE) {
+                    List<Path> gruppo = new ArrayList<>(run.subList(0, MAX_FUSIONE));
+                    Path fusa = nuovoFile(temporanei);
+                    fondi(gruppo, null, null, fusa);
+                    run.subList(0, MAX_FUSIONE).clear();
+                    run.add(fusa);
+
+                    for (Path f : gruppo) elimina(f, temporanei);
+                }
+
+                //Fusione delle run e delle viste: le nuove situazioni sono il prossimo livello;
+                Path prossimo = nuovoFile(temporanei), nuoveViste = nuovoFile(temporanei);
+                long nuove = fondi(run, viste, prossimo, nuoveViste);
+
+                for (Path f : run) elimina(f, temporanei);
+                elimina(livello, temporanei);
+                elimina(viste, temporanei);
+
+                livello = prossimo;
+                viste = nuoveViste;
+
+                if (nuove == 0)
+                    return totale;
+
+                totale += nuove;
+                report.accept(new Livello(d, nuove, generate, totale, numeroRun, (System.nanoTime() - inizio) / 1e9));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (Path f : temporanei)
+                try { Files.deleteIfExists(f); } catch (IOException e) {}
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Uso: java gapp.ulg.bench.Enumeratore <gioco> [param=valore ...] [dir=<directory>] [buffer=<MB>]");
+            return;
+        }
+
+        List<String> parametri = new ArrayList<>();
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"));
+        long buffer = Math.max(16L << 20, Runtime.getRuntime().maxMemory() / 4);
+
+        for (int i = 1 ; i < args.length ; i++)
+            if (args[i].startsWith("dir=")) dir = Paths.get(args[i].substring(4));
+            else if (args[i].startsWith("buffer=")) buffer = Long.parseLong(args[i].substring(7)) << 20;
+            else parametri.add(args[i]);
+
+        GameFactory<GameRuler<PieceModel<Species>>> gF = Giochi.fabbrica(args[0], parametri.toArray(new String[0]));
+        GameRuler<PieceModel<Species>> g = gF.newGame();
+
+        System.out.println(g.name() + ", buffer " + (buffer >> 20) + " MB, file in " + dir);
+        System.out.printf("%4s %15s %15s %15s %6s %12s %18s%n", "d", "situazioni", "generate", "totale", "run", "tempo", "velocità");
+
+        long totale = new Enumeratore<>(g.mechanics(), dir, buffer).enumera(System.out::println);
+
+        System.out.println("Situazioni raggiungibili: " + totale);
+    }
+
+
+    /**Il massimo numero di file fusi insieme*/
+    private static final int MAX_FUSIONE = 128;
+    /**Byte stimati occupati nel buffer da una codifica, oltre ai suoi byte*/
+    private static final int SOVRAPPIU = 32;
+
+    private final Mechanics<P> meccanica;
+    private final Path dir;
+    private final long buffer;
+
+    /**Scrive nelle run le prossime situazioni di quelle del file livello, ritorna quante
+       sono (con le ripetizioni)*/
+    private long espandi(Path livello, List<Path> run, List<Path> temporanei) throws IOException {
+        List<byte[]> accumulate = new ArrayList<>();
+        long occupati = 0, generate = 0;
+
+        try (Lettore l = new Lettore(livello)) {
+            while (l.avanza()) {
+                if (Thread.currentThread().isInterrupted())
+                    throw new CancellationException();
+
+                Situation<P> s = new Probe.EncS<P>(l.corrente).decode(meccanica);
+
+                //Le situazioni terminali non sono espanse (non tutte le Next lo escludono);
+                if (s.turn <= 0)
+                    continue;
+
+                //Le prossime situazioni sono codificate dalla vista, senza copiarne la mappa;
+                List<byte[]> prossime = new ArrayList<>();
+                meccanica.forEachChild(s, (m, n) -> prossime.add(Probe.EncS.code(meccanica, n)));
+
+                for (byte[] cod : prossime) {
+                    accumulate.add(cod);
+                    occupati += cod.length + SOVRAPPIU;
+                    generate++;
+
+                    if (occupati >= buffer) {
+                        run.add(scriviRun(accumulate, temporanei));
+                        accumulate.clear();
+                        occupati = 0;
+                    }
+                }
+            }
+        }
+
+        if (!accumulate.isEmpty())
+            run.add(scriviRun(accumulate, temporanei));
+
+        return generate;
+    }
+
+    /**Ordina le codifiche e le scrive senza ripetizioni in una nuova run*/
+    private Path scriviRun(List<byte[]> codifiche, List<Path> temporanei) throws IOException {
+        codifiche.sort(Enumeratore::confronta);
+        Path f = nuovoFile(temporanei);
+
+        try (Scrittore s = new Scrittore(f)) {
+            byte[] precedente = null;
+
+            for (byte[] c : codifiche)
+                if (precedente == null || confronta(c, precedente) != 0) {
+                    s.scrivi(c);
+                    precedente = c;
+                }
+        }
+
+        return f;
+    }
+
+    /**Fonde le run e il file delle viste: scrive in prossimo le situazioni delle run
+       che non sono nelle viste e in nuoveViste l'unione, ritorna quante sono le nuove.
+       Senza viste e prossimo fonde solamente le run in nuoveViste*/
+    private static long fondi(List<Path> run, Path viste, Path prossimo, Path nuoveViste) throws IOException {
+        List<Lettore> lettori = new ArrayList<>();
+        //I lettori con la codifica corrente minore in testa, le viste vincono a parità;
+        PriorityQueue<Lettore> coda = new PriorityQueue<>((x, y) -> {
+            int c = confronta(x.corrente, y.corrente);
+            return c != 0 ? c : Boolean.compare(!x.viste, !y.viste);
+        });
+
+        try (Scrittore nuove = prossimo == null ? null : new Scrittore(prossimo);
+             Scrittore tutte = new Scrittore(nuoveViste)) {
+            if (viste != null) {
+                Lettore lv = new Lettore(viste);
+                lv.viste = true;
+                lettori.add(lv);
+            }
+
+            for (Path f : run)
+                lettori.add(new Lettore(f));
+
+            for (Lettore l : lettori)
+                if (l.avanza()) coda.add(l);
+
+            long contate = 0;
+            byte[] precedente = null;
+
+            while (!coda.isEmpty()) {
+                Lettore l = coda.poll();
+                byte[] c = l.corrente;
+
+                if (precedente == null || confronta(c, precedente) != 0) {
+                    tutte.scrivi(c);
+
+                    if (!l.viste) {
+                        if (nuove != null) nuove.scrivi(c);
+                        contate++;
+                    }
+
+                    precedente = c;
+                }
+
+                if (l.avanza()) coda.add(l);
+            }
+
+            return contate;
+        } finally {
+            for (Lettore l : lettori) l.close();
+        }
+    }
+
+    /**Le codifiche sono numeri positivi senza byte superflui (BigInteger.toByteArray), quindi
+       l'ordine per lunghezza e poi per byte senza segno è l'ordine numerico*/
+    private static int confronta(byte[] x, byte[] y) {
+        if (x.length != y.length) return Integer.compare(x.length, y.length);
+
+        for (int i = 0 ; i < x.length ; i++) {
+            int c = Integer.compare(x[i] & 0xFF, y[i] & 0xFF);
+            if (c != 0) return c;
+        }
+
+        return 0;
+    }
+
+    private Path nuovoFile(List<Path> temporanei) throws IOException {
+        Path f = Files.createTempFile(dir, "enum", ".run");
+        temporanei.add(f);
+        return f;
+    }
+
+    private static void elimina(Path f, List<Path> temporanei) throws IOException {
+        Files.deleteIfExists(f);
+        temporanei.remove(f);
+    }
+
+    /**Scrive codifiche in un file, ognuna preceduta dalla sua lunghezza (2 byte)*/
+    private static class Scrittore implements AutoCloseable {
+        Scrittore(Path f) throws IOException {
+            canale = FileChannel.open(f, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void scrivi(byte[] c) throws IOException {
+            if (buf.remaining() < 2 + c.length)
+                svuota();
+
+            buf.putShort((short) c.length);
+            buf.put(c);
+        }
+
+        @Override
+        public void close() throws IOException {
+            svuota();
+            canale.close();
+        }
+
+        private final FileChannel canale;
+        private final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+
+        private void svuota() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) canale.write(buf);
+            buf.clear();
+        }
+    }
+
+    /**Legge in sequenza le codifiche scritte da uno Scrittore*/
+    private static class Lettore implements AutoCloseable {
+        Lettore(Path f) throws IOException {
+            canale = FileChannel.open(f, StandardOpenOption.READ);
+            buf.limit(0);
+        }
+
+        /**La codifica corrente, valida dopo che avanza() ha ritornato true*/
+        byte[] corrente;
+        /**Se legge il file delle situazioni già viste*/
+        boolean viste;
+
+        /**Passa alla prossima codifica, ritorna false se il file è finito*/
+        boolean avanza() throws IOException {
+            if (!riempi(2)) return false;
+
+            corrente = new byte[buf.getShort()];
+
+            if (!riempi(corrente.length))
+                throw new IOException("File troncato");
+
+            buf.get(corrente);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            canale.close();
+        }
+
+        private final FileChannel canale;
+        private final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+
+        /**Si assicura che nel buffer ci siano almeno n byte, ritorna false se il file è finito prima*/
+        private boolean riempi(int n) throws IOException {
+            if (buf.remaining() >= n) return true;
+
+            buf.compact();
+
+            while (buf.position() < n)
+                if (canale.read(buf) < 0) break;
+
+            buf.flip();
+            return buf.remaining() >= n;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package gapp.ulg.bench;
+
+import gapp.ulg.game.GameFactory;
+import gapp.ulg.game.Param;
+import gapp.ulg.game.board.GameRuler;
+import gapp.ulg.game.board.PieceModel;
+import gapp.ulg.games.GameFactories;
+
+import static gapp.ulg.game.board.PieceModel.Species;
+
+/** Metodi comuni ai programmi di misura per ottenere i giochi dalla riga di
+ * comando. */
+class Giochi {
+    /** Ritorna la fabbrica del gioco con il nome dato (uno di
+     * {@link GameFactories#availableBoardFactories()}) con i parametri impostati e i
+     * nomi dei giocatori "A" e "B". Ogni parametro è della forma {@code nome=valore},
+     * il valore è un intero se il parametro ha valori interi.
+     * @param nome  il nome del gioco
+     * @param parametri  i parametri da impostare
+     * @return la fabbrica del gioco
+     * @throws IllegalArgumentException se il gioco o un parametro non esistono o un
+     * valore non è ammissibile */
+    static GameFactory<GameRuler<PieceModel<Species>>> fabbrica(String nome, String... parametri) {
+        return imposta(GameFactories.getBoardFactory(nome), parametri);
+    }
+
+    /** Imposta i parametri dati (della forma {@code nome=valore}) e i nomi dei
+     * giocatori "A" e "B" nella fabbrica data, che può anche non essere registrata in
+     * {@link GameFactories} (ad es. quelle dei giochi di riferimento {@code G_rs_*}).
+     * @param gF  la fabbrica
+     * @param parametri  i parametri da impostare, nell'ordine dato
+     * @return la fabbrica data
+     * @throws IllegalArgumentException se un parametro non esiste o un valore non è
+     * ammissibile */
+    static GameFactory<GameRuler<PieceModel<Species>>> imposta(GameFactory<GameRuler<PieceModel<Species>>> gF,
+                                                                String... parametri) {
+        for (String p : parametri) {
+            int uguale = p.indexOf('=');
+
+            if (uguale < 0)
+                throw new IllegalArgumentException("Parametro senza valore: " + p);
+
+            String nomeParam = p.substring(0, uguale), valore = p.substring(uguale + 1);
+            Param<?> param = gF.params().stream().filter(x -> x.name().equals(nomeParam)).findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Parametro sconosciuto: " + nomeParam));
+
+            if (!param.values().isEmpty() && param.values().get(0) instanceof Integer)
+                param.set(Integer.valueOf(valore));
+            else
+                param.set(valore);
+        }
+
+        gF.setPlayerNames("A", "B");
+        return gF;
+    }
+}
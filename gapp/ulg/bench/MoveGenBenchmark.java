@@ -0,0 +1,268 @@
+package gapp.ulg.bench;
+
+import gapp.ulg.game.GameFactory;
+import gapp.ulg.game.board.GameRuler;
+import gapp.ulg.game.board.Move;
+import gapp.ulg.game.board.PieceModel;
+import gapp.ulg.game.board.Pos;
+import gapp.ulg.games.*;
+
+import static gapp.ulg.game.board.PieceModel.Species;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/** Misura la velocità delle operazioni di base dei {@link GameRuler} per i giochi
+ * degli studenti ({@link Othello}, {@link MNKgame}) e per quelli di riferimento
+ * ({@code G_rs_OTH}, {@code G_rs_MNK}, {@code G_rs_BKT}, {@code G_rs_CAM}), con più
+ * dimensioni della board, così i due motori sono confrontabili e le regressioni si
+ * vedono.
+ * <br>
+ * Per ogni gioco sono raccolte delle situazioni campione giocando partite con mosse
+ * scelte in modo random (con seme fissato). Per ogni operazione il tempo per
+ * operazione è misurato ripetendo il giro sui campioni fino a superare una durata
+ * minima, dopo un giro di riscaldamento per il JIT:
+ * <pre>
+ *     copy        copy() di un campione
+ *     validMoves  validMoves() dopo una mossa, cioè senza mosse già calcolate:
+ *                 (move + result + validMoves + unMove) - (move + result + unMove)
+ *     move/unMove una mossa valida e il suo annullamento
+ *     result      result() dopo una mossa: (move + result + unMove) - (move + unMove)
+ *     next        Mechanics.next di un campione (per i giochi non troppo grandi)
+ *     perft       nodi al secondo visitando l'albero di gioco dalla situazione
+ *                 iniziale con move/unMove, alla prima profondità (tra parentesi)
+ *                 che richiede almeno la durata di una misura
+ * </pre>
+ * Ogni tempo è il minimo su più misure; le differenze negative dovute al rumore sono
+ * riportate come 0.
+ * I risultati dipendono dalla macchina e dalla JVM, quindi vanno confrontati solamente
+ * con quelli ottenuti sulla stessa macchina.
+ * <br>
+ * Uso: {@code java gapp.ulg.bench.MoveGenBenchmark [ms per misura] [filtro sul nome]} */
+public class MoveGenBenchmark {
+    public static void main(String[] args) {
+        long durata = args.length > 0 ? Long.parseLong(args[0]) : 300;
+        String filtro = args.length > 1 ? args[1] : "";
+
+        System.out.printf("%-24s %-12s %10s %10s %11s %10s %12s %14s%n", "gioco", "board", "copy",
+                "validMoves", "move/unMove", "result", "next", "perft");
+        System.out.printf("%-24s %-12s %10s %10s %11s %10s %12s %14s%n", "", "", "ns", "ns", "ns", "ns", "ns",
+                "nodi/s (d)");
+
+        for (Configurazione c : CONFIGURAZIONI)
+            if ((c.motore + " " + c.board).contains(filtro))
+                misura(c, durata);
+
+        System.out.println("(pozzo " + pozzo + ")");
+    }
+
+
+    /**Un gioco da misurare: la fabbrica, i parametri e se misurare next*/
+    private static class Configurazione {
+        Configurazione(String motore, Supplier<GameFactory<GameRuler<PieceModel<Species>>>> fabbrica,
+                       String board, boolean next, String... parametri) {
+            this.motore = motore;
+            this.fabbrica = fabbrica;
+            this.board = board;
+            this.next = next;
+            this.parametri = parametri;
+        }
+
+        final String motore, board;
+        final Supplier<GameFactory<GameRuler<PieceModel<Species>>>> fabbrica;
+        final boolean next;
+        final String[] parametri;
+    }
+
+    private static final int MAX_PERFT = 12;
+
+    private static final List<Configurazione> CONFIGURAZIONI = new ArrayList<>();
+
+    static {
+        for (String b : new String[]{"6x6", "8x8", "10x10", "12x12"}) {
+            CONFIGURAZIONI.add(new Configurazione("Othello", OthelloFactory::new, b, true, "Board=" + b));
+            CONFIGURAZIONI.add(new Configurazione("G_rs_OTH", G_rs_OTHFactory::new, b, true, "Board=" + b));
+        }
+
+        for (int[] mnk : new int[][]{{3, 3, 3}, {4, 4, 4}, {7, 6, 4}, {15, 15, 5}}) {
+            String b = mnk[0] + "," + mnk[1] + "," + mnk[2];
+            String[] p = {"M=" + mnk[0], "N=" + mnk[1], "K=" + mnk[2]};
+            CONFIGURAZIONI.add(new Configurazione("MNKgame", MNKgameFactory::new, b, mnk[0] < 15, p));
+            CONFIGURAZIONI.add(new Configurazione("G_rs_MNK", G_rs_MNKFactory::new, b, mnk[0] < 15, p));
+        }
+
+        for (int[] wh : new int[][]{{4, 5}, {6, 6}, {8, 8}})
+            CONFIGURAZIONI.add(new Configurazione("G_rs_BKT", G_rs_BKTFactory::new, wh[0] + "x" + wh[1], true,
+                    "Width=" + wh[0], "Height=" + wh[1]));
+
+        CONFIGURAZIONI.add(new Configurazione("G_rs_CAM", G_rs_CAMFactory::new, "12x16", false));
+    }
+
+    /**Accumula i valori calcolati, così il JIT non può eliminare le operazioni misurate*/
+    static long pozzo;
+
+    private static void misura(Configurazione c, long durata) {
+        GameFactory<GameRuler<PieceModel<Species>>> gF = Giochi.imposta(c.fabbrica.get(), c.parametri);
+        List<GameRuler<PieceModel<Species>>> campioni = campioni(gF.newGame(), 64, new Random(17));
+        List<List<Move<PieceModel<Species>>>> mosse = new ArrayList<>();
+        List<GameRuler.Situation<PieceModel<Species>>> situazioni = new ArrayList<>();
+        GameRuler.Mechanics<PieceModel<Species>> meccanica = gF.newGame().mechanics();
+
+        for (GameRuler<PieceModel<Species>> g : campioni) {
+            mosse.add(mosseGiocabili(g));
+            situazioni.add(situazione(g));
+        }
+
+        double copy = nsPerOp(durata, () -> {
+            for (GameRuler<PieceModel<Species>> g : campioni)
+                pozzo += g.copy().turn();
+            return campioni.size();
+        });
+
+        double muovi = nsPerOp(durata, () -> {
+            long n = 0;
+            for (int i = 0 ; i < campioni.size() ; i++)
+                for (Move<PieceModel<Species>> m : mosse.get(i)) {
+                    campioni.get(i).move(m);
+                    campioni.get(i).unMove();
+                    n++;
+                }
+            return n;
+        });
+
+        double conResult = nsPerOp(durata, () -> {
+            long n = 0;
+            for (int i = 0 ; i < campioni.size() ; i++)
+                for (Move<PieceModel<Species>> m : mosse.get(i)) {
+                    campioni.get(i).move(m);
+                    pozzo += campioni.get(i).result();
+                    campioni.get(i).unMove();
+                    n++;
+                }
+            return n;
+        });
+
+        //validMoves lancia IllegalStateException se la partita è terminata, quindi c'è anche result;
+        double validMoves = nsPerOp(durata, () -> {
+            long n = 0;
+            for (int i = 0 ; i < campioni.size() ; i++)
+                for (Move<PieceModel<Species>> m : mosse.get(i)) {
+                    campioni.get(i).move(m);
+                    if (campioni.get(i).result() == -1)
+                        pozzo += campioni.get(i).validMoves().size();
+                    campioni.get(i).unMove();
+                    n++;
+                }
+            return n;
+        }) - conResult;
+        double result = conResult - muovi;
+
+        double next = !c.next ? Double.NaN : nsPerOp(durata, () -> {
+            for (GameRuler.Situation<PieceModel<Species>> s : situazioni)
+                pozzo += meccanica.next.get(s).size();
+            return situazioni.size();
+        });
+
+        //Perft sempre più profondo fino a quando un livello richiede almeno la durata;
+        GameRuler<PieceModel<Species>> iniziale = gF.newGame();
+        double nodiAlSecondo = 0;
+        int profondita = 0;
+        long tempo = 0;
+
+        while (tempo < durata * 1_000_000L && profondita < MAX_PERFT) {
+            profondita++;
+            long inizio = System.nanoTime();
+            long nodi = perft(iniziale, profondita);
+            tempo = System.nanoTime() - inizio;
+            nodiAlSecondo = nodi / (tempo / 1e9);
+        }
+
+        System.out.printf("%-24s %-12s %10.0f %10.0f %11.0f %10.0f %12s %10.0f (%d)%n", c.motore + " " + iniziale.name(),
+                c.board, copy, Math.max(0, validMoves), muovi, Math.max(0, result), c.next ? String.format("%.0f", next) : "-",
+                nodiAlSecondo, profondita);
+    }
+
+    /**Un giro di operazioni, ritorna quante ne ha fatte*/
+    interface Giro {
+        long esegui();
+    }
+
+    /**Il tempo in nanosecondi per operazione: il minimo su RIPETIZIONI misure, ognuna
+       ripetendo il giro per almeno la durata data in millisecondi divisa per le
+       ripetizioni, dopo un giro di riscaldamento. Il minimo è meno sensibile del valor
+       medio al garbage collector e agli altri processi*/
+    static double nsPerOp(long durata, Giro giro) {
+        giro.esegui();
+
+        double minimo = Double.MAX_VALUE;
+
+        for (int r = 0 ; r < RIPETIZIONI ; r++) {
+            long operazioni = 0, inizio = System.nanoTime(), fine = inizio + durata * 1_000_000 / RIPETIZIONI;
+
+            do {
+                operazioni += giro.esegui();
+            } while (System.nanoTime() < fine);
+
+            minimo = Math.min(minimo, (System.nanoTime() - inizio) / (double) Math.max(1, operazioni));
+        }
+
+        return minimo;
+    }
+
+    private static final int RIPETIZIONI = 5;
+
+    /**Il numero di nodi dell'albero di gioco fino alla profondità data, con move/unMove*/
+    static long perft(GameRuler<PieceModel<Species>> g, int profondita) {
+        long nodi = 0;
+
+        for (long c : Perft.perft(g, profondita))
+            nodi += c;
+
+        return nodi;
+    }
+
+    /**La situazione di una partita non terminata*/
+    static GameRuler.Situation<PieceModel<Species>> situazione(GameRuler<PieceModel<Species>> g) {
+        Map<Pos, PieceModel<Species>> mappa = new HashMap<>();
+
+        for (Pos p : g.getBoard().positions())
+            if (g.getBoard().get(p) != null)
+                mappa.put(p, g.getBoard().get(p));
+
+        return new GameRuler.Situation<>(mappa, g.turn());
+    }
+
+    /**Le mosse valide escluso l'abbandono, in una lista perché l'insieme può cambiare con le mosse*/
+    static List<Move<PieceModel<Species>>> mosseGiocabili(GameRuler<PieceModel<Species>> g) {
+        List<Move<PieceModel<Species>>> lista = new ArrayList<>();
+
+        for (Move<PieceModel<Species>> m : g.validMoves())
+            if (m.kind != Move.Kind.RESIGN)
+                lista.add(m);
+
+        return lista;
+    }
+
+    /**Copie di situazioni non terminali raggiunte con partite random dalla situazione data*/
+    static List<GameRuler<PieceModel<Species>>> campioni(GameRuler<PieceModel<Species>> g, int n, Random rnd) {
+        List<GameRuler<PieceModel<Species>>> campioni = new ArrayList<>();
+
+        while (campioni.size() < n) {
+            GameRuler<PieceModel<Species>> partita = g.copy();
+
+            while (partita.result() == -1 && campioni.size() < n) {
+                List<Move<PieceModel<Species>>> lista = mosseGiocabili(partita);
+
+                if (lista.isEmpty()) break;
+
+                //Circa un campione ogni tre mosse, così ci sono situazioni di tutta la partita;
+                if (rnd.nextInt(3) == 0)
+                    campioni.add(partita.copy());
+
+                partita.move(lista.get(rnd.nextInt(lista.size())));
+            }
+        }
+
+        return campioni;
+    }
+}
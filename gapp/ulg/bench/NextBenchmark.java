@@ -0,0 +1,65 @@
+package gapp.ulg.bench;
+
+import gapp.ulg.game.board.GameRuler;
+import gapp.ulg.game.board.PieceModel;
+import gapp.ulg.games.MNKgame;
+import gapp.ulg.games.Othello;
+
+import static gapp.ulg.game.board.PieceModel.Species;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/** Confronta il {@link GameRuler.Next} sequenziale di {@link Othello} e
+ * {@link MNKgame} ({@code mechanics(false)}, che fa e disfa le mosse su un'unica
+ * partita di appoggio) con quello parallelo ({@code mechanics(true)}, che divide le
+ * mosse tra i thread del {@link ForkJoinPool#commonPool()}). Per ogni gioco sono
+ * misurati i nanosecondi per invocazione di {@code next} sulle stesse situazioni
+ * campione di {@link MoveGenBenchmark}, sia invocando {@code next} da un solo
+ * thread sia da tutti i thread del pool comune (come fa
+ * {@code Probe.nextSituations} in parallelo).
+ * <br>
+ * Uso: {@code java gapp.ulg.bench.NextBenchmark [ms per misura]} */
+public class NextBenchmark {
+    public static void main(String[] args) {
+        long durata = args.length > 0 ? Long.parseLong(args[0]) : 300;
+
+        System.out.println("thread del pool comune: " + ForkJoinPool.getCommonPoolParallelism());
+        System.out.printf("%-16s %16s %16s %16s %16s%n", "gioco", "seq", "par", "seq (pool)", "par (pool)");
+
+        for (int size : new int[]{6, 8, 10, 12}) {
+            Othello g = new Othello(-1, size, "A", "B");
+            misura(g, g.mechanics(false), g.mechanics(true), durata);
+        }
+
+        for (int[] mnk : new int[][]{{3, 3, 3}, {4, 4, 4}, {7, 6, 4}, {15, 15, 5}}) {
+            MNKgame g = new MNKgame(-1, mnk[0], mnk[1], mnk[2], "A", "B");
+            misura(g, g.mechanics(false), g.mechanics(true), durata);
+        }
+
+        System.out.println("(pozzo " + MoveGenBenchmark.pozzo + ")");
+    }
+
+
+    private static void misura(GameRuler<PieceModel<Species>> g, GameRuler.Mechanics<PieceModel<Species>> seq,
+                               GameRuler.Mechanics<PieceModel<Species>> par, long durata) {
+        List<GameRuler.Situation<PieceModel<Species>>> situazioni = new ArrayList<>();
+
+        for (GameRuler<PieceModel<Species>> c : MoveGenBenchmark.campioni(g, 64, new Random(17)))
+            situazioni.add(MoveGenBenchmark.situazione(c));
+
+        System.out.printf("%-16s %16.0f %16.0f %16.0f %16.0f%n", g.name(),
+                MoveGenBenchmark.nsPerOp(durata, () -> giro(seq, situazioni, false)),
+                MoveGenBenchmark.nsPerOp(durata, () -> giro(par, situazioni, false)),
+                MoveGenBenchmark.nsPerOp(durata, () -> giro(seq, situazioni, true)),
+                MoveGenBenchmark.nsPerOp(durata, () -> giro(par, situazioni, true)));
+    }
+
+    /**Un giro di next sulle situazioni, da un solo thread o dai thread del pool comune*/
+    private static long giro(GameRuler.Mechanics<PieceModel<Species>> gM,
+                             List<GameRuler.Situation<PieceModel<Species>>> situazioni, boolean pool) {
+        MoveGenBenchmark.pozzo += (pool ? situazioni.parallelStream() : situazioni.stream())
+                .mapToLong(s -> gM.next.get(s).size()).sum();
+        return situazioni.size();
+    }
+}
@@ -0,0 +1,180 @@
+package gapp.ulg.bench;
+
+import gapp.ulg.game.GameFactory;
+import gapp.ulg.game.board.GameRuler;
+import gapp.ulg.game.board.Move;
+import gapp.ulg.game.board.PieceModel;
+import gapp.ulg.games.*;
+
+import static gapp.ulg.game.board.PieceModel.Species;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/** Perft per i giochi registrati in {@link GameFactories}: visita l'albero di gioco
+ * dalla situazione iniziale fino alla profondità data e conta, per ogni profondità
+ * {@code d}, i nodi a distanza {@code d} dalla radice, cioè le sequenze di {@code d}
+ * mosse (esclusa {@link Move.Kind#RESIGN}) che si possono giocare. Una situazione
+ * terminale non è espansa. La visita è fatta in due modi indipendenti:
+ * <pre>
+ *     move/unMove  con {@link GameRuler#validMoves()}, {@link GameRuler#move(Move)}
+ *                  e {@link GameRuler#unMove()} su un'unica partita
+ *     next         con {@link GameRuler.Mechanics#next} a partire da
+ *                  {@link GameRuler.Mechanics#start}
+ * </pre>
+ * Se il gioco ha un'implementazione di riferimento (ad es. {@code G_rs_OTH} per
+ * "Othello" e "Othello (bitboard)", {@code G_rs_MNK} per "m,n,k-game") anche questa è
+ * visitata con gli stessi parametri. Per ogni profondità sono stampati i conteggi di
+ * tutte le visite, con {@code MISMATCH} se non sono tutti uguali, e infine i nodi al
+ * secondo di ogni visita. Il programma termina con codice 1 se c'è almeno una
+ * differenza.
+ * <br>
+ * Uso: {@code java gapp.ulg.bench.Perft <profondità> [gioco [nome=valore ...]]};
+ * senza gioco sono visitati tutti i giochi registrati con i parametri di default. */
+public class Perft {
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Uso: java gapp.ulg.bench.Perft <profondità> [gioco [nome=valore ...]]");
+            System.exit(2);
+        }
+
+        int profondita = Integer.parseInt(args[0]);
+        boolean uguali = true;
+
+        if (args.length > 1)
+            uguali = confronta(args[1], profondita, Arrays.copyOfRange(args, 2, args.length));
+        else
+            for (String nome : GameFactories.availableBoardFactories())
+                uguali &= confronta(nome, profondita);
+
+        System.exit(uguali ? 0 : 1);
+    }
+
+    /** Ritorna i conteggi dei nodi a ogni profondità da 0 a {@code profondita} della
+     * partita data, visitata con move/unMove. Alla fine la partita è nella situazione
+     * iniziale.
+     * @param g  una partita
+     * @param profondita  la profondità massima
+     * @return i conteggi, l'elemento {@code d} è il numero di nodi a profondità {@code d} */
+    public static long[] perft(GameRuler<PieceModel<Species>> g, int profondita) {
+        long[] conteggi = new long[profondita + 1];
+        visita(g, 0, conteggi);
+        return conteggi;
+    }
+
+    /** Ritorna i conteggi dei nodi a ogni profondità da 0 a {@code profondita} del
+     * gioco con la meccanica data, visitato con {@link GameRuler.Mechanics#next}.
+     * @param gM  la meccanica di un gioco
+     * @param profondita  la profondità massima
+     * @return i conteggi, l'elemento {@code d} è il numero di nodi a profondità {@code d} */
+    public static long[] perft(GameRuler.Mechanics<PieceModel<Species>> gM, int profondita) {
+        long[] conteggi = new long[profondita + 1];
+        visita(gM.next, gM.start, 0, conteggi);
+        return conteggi;
+    }
+
+
+    /**Le implementazioni di riferimento dei giochi registrati, quando ci sono*/
+    private static final Map<String,Supplier<GameFactory<GameRuler<PieceModel<Species>>>>> RIFERIMENTI = new HashMap<>();
+
+    static {
+        RIFERIMENTI.put("Othello", G_rs_OTHFactory::new);
+        RIFERIMENTI.put("Othello (bitboard)", G_rs_OTHFactory::new);
+        RIFERIMENTI.put("m,n,k-game", G_rs_MNKFactory::new);
+    }
+
+    /**Una visita da confrontare: il nome, i conteggi e il tempo in nanosecondi*/
+    private static class Visita {
+        Visita(String nome, Supplier<long[]> perft) {
+            this.nome = nome;
+            long inizio = System.nanoTime();
+            conteggi = perft.get();
+            tempo = System.nanoTime() - inizio;
+        }
+
+        long nodi() {
+            long n = 0;
+            for (long c : conteggi) n += c;
+            return n;
+        }
+
+        final String nome;
+        final long[] conteggi;
+        final long tempo;
+    }
+
+    /**Visita il gioco registrato con il nome dato in tutti i modi, stampa i risultati e
+       ritorna true se i conteggi sono tutti uguali*/
+    private static boolean confronta(String nome, int profondita, String... parametri) {
+        List<Visita> visite = new ArrayList<>();
+        GameFactory<GameRuler<PieceModel<Species>>> gF = Giochi.fabbrica(nome, parametri);
+        aggiungi(visite, "", gF, profondita);
+
+        if (RIFERIMENTI.containsKey(nome))
+            aggiungi(visite, "rif. ", Giochi.imposta(RIFERIMENTI.get(nome).get(), parametri), profondita);
+
+        System.out.println(nome + " " + gF.newGame().name() + (parametri.length > 0 ? " " + String.join(" ", parametri) : ""));
+        System.out.printf("%3s", "d");
+        for (Visita v : visite) System.out.printf(" %22s", v.nome);
+        System.out.println();
+
+        boolean uguali = true;
+
+        for (int d = 0 ; d <= profondita ; d++) {
+            boolean livello = true;
+            System.out.printf("%3d", d);
+
+            for (Visita v : visite) {
+                System.out.printf(" %22d", v.conteggi[d]);
+                livello &= v.conteggi[d] == visite.get(0).conteggi[d];
+            }
+
+            System.out.println(livello ? "" : "  MISMATCH");
+            uguali &= livello;
+        }
+
+        System.out.printf("%3s", "n/s");
+        for (Visita v : visite) System.out.printf(" %22.0f", v.nodi() / Math.max(v.tempo / 1e9, 1e-9));
+        System.out.println();
+        System.out.println();
+        return uguali;
+    }
+
+    /**Aggiunge le visite con move/unMove e con next del gioco della fabbrica data*/
+    private static void aggiungi(List<Visita> visite, String prefisso, GameFactory<GameRuler<PieceModel<Species>>> gF,
+                                 int profondita) {
+        GameRuler<PieceModel<Species>> g = gF.newGame();
+        String motore = g.getClass().getSimpleName();
+        visite.add(new Visita(prefisso + motore + " move", () -> perft(g, profondita)));
+        visite.add(new Visita(prefisso + motore + " next", () -> perft(gF.newGame().mechanics(), profondita)));
+    }
+
+    private static void visita(GameRuler<PieceModel<Species>> g, int d, long[] conteggi) {
+        conteggi[d]++;
+
+        if (d == conteggi.length - 1 || g.result() != -1)
+            return;
+
+        //Le mosse sono copiate in una lista perché l'insieme può cambiare con le mosse;
+        List<Move<PieceModel<Species>>> mosse = new ArrayList<>(g.validMoves());
+
+        for (Move<PieceModel<Species>> m : mosse)
+            if (m.kind != Move.Kind.RESIGN) {
+                g.move(m);
+                visita(g, d + 1, conteggi);
+                g.unMove();
+            }
+    }
+
+    private static void visita(GameRuler.Next<PieceModel<Species>> next, GameRuler.Situation<PieceModel<Species>> s,
+                               int d, long[] conteggi) {
+        conteggi[d]++;
+
+        //La mappa di next non è necessariamente vuota per una situazione terminale;
+        if (d == conteggi.length - 1 || s.turn <= 0)
+            return;
+
+        for (GameRuler.Situation<PieceModel<Species>> figlia : next.get(s).values())
+            visita(next, figlia, d + 1, conteggi);
+    }
+}
@@ -74,6 +74,8 @@ public class Action<P> {
         pos = Collections.unmodifiableList(Arrays.asList(p));
         dir = null;
         steps = 0;
+        canonica = new Pos[] {p};
+        hash = calcolaHash();
 
     }
 
@@ -95,7 +97,9 @@ public class Action<P> {
 
         }
 
-        if (pp.length == 0 || pp.length != new HashSet<>(Arrays.asList(pp)).size()) {
+        Pos[] ordinate = ordina(pp);
+
+        if (pp.length == 0 || duplicati(ordinate)) {
 
             throw new IllegalArgumentException();
 
@@ -103,9 +107,11 @@ public class Action<P> {
 
         kind = Kind.REMOVE;
         piece = null;
-        pos = Collections.unmodifiableList(Arrays.asList(pp));
+        pos = Collections.unmodifiableList(Arrays.asList(pp.clone()));
         dir = null;
         steps = 0;
+        canonica = ordinate;
+        hash = calcolaHash();
 
     }
 
@@ -125,14 +131,18 @@ public class Action<P> {
             if (p == null)
                 throw new NullPointerException();
 
-        if (ns < 1 || pp.length == 0 || pp.length != new HashSet<>(Arrays.asList(pp)).size())
+        Pos[] ordinate = ordina(pp);
+
+        if (ns < 1 || pp.length == 0 || duplicati(ordinate))
             throw new IllegalArgumentException();
 
         kind = Kind.MOVE;
         piece = null;
-        pos = Collections.unmodifiableList(Arrays.asList(pp));
+        pos = Collections.unmodifiableList(Arrays.asList(pp.clone()));
         dir = d;
         steps = ns;
+        canonica = ordinate;
+        hash = calcolaHash();
 
     }
 
@@ -156,6 +166,10 @@ public class Action<P> {
         dir = null;
         steps = 0;
 
+        //Per JUMP l'ordine delle posizioni conta;
+        canonica = new Pos[] {p1, p2};
+        hash = calcolaHash();
+
     }
 
     /** Crea un'azione di tipo {@link Kind#SWAP} che sostituisce tutti i pezzi
@@ -172,8 +186,9 @@ public class Action<P> {
             if (p == null)
                 throw new NullPointerException();
 
+        Pos[] ordinate = ordina(pp);
 
-        if (pp.length == 0 || pp.length != new HashSet<>(Arrays.asList(pp)).size()) {
+        if (pp.length == 0 || duplicati(ordinate)) {
 
             throw new IllegalArgumentException();
 
@@ -181,9 +196,11 @@ public class Action<P> {
 
         kind = Kind.SWAP;
         piece = pm;
-        pos = Collections.unmodifiableList(Arrays.asList(pp));
+        pos = Collections.unmodifiableList(Arrays.asList(pp.clone()));
         dir = null;
         steps = 0;
+        canonica = ordinate;
+        hash = calcolaHash();
 
     }
 
@@ -194,6 +211,10 @@ public class Action<P> {
      * <b>ATTENZIONE: due liste {@link Action#pos} sono considerate uguali se
      * contengono le stesse posizioni indipendentemente dall'ordine per tutti i tipi
      * di azione eccetto che per {@link Action.Kind#JUMP}.</b>
+     * <br>
+     * Il confronto usa le posizioni in forma canonica (ordinate, eccetto per
+     * {@link Action.Kind#JUMP}) e gli hash calcolati alla creazione, quindi non
+     * crea oggetti.
      * @param x  un oggetto (o null)
      * @return true se x è uguale a questa azione */
     @Override
@@ -203,29 +224,54 @@ public class Action<P> {
 
         Action<?> action = (Action<?>) x;
 
+        if (hash != action.hash) return false;
         if (steps != action.steps) return false;
         if (kind != action.kind) return false;
+        if (dir != action.dir) return false;
         if (piece != null ? !piece.equals(action.piece) : action.piece != null) return false;
 
-        if (!(new HashSet<>(pos)).equals(new HashSet<>(action.pos))) {
-
-            return false;
-
-        }
-
-        return dir == action.dir;
+        return Arrays.equals(canonica, action.canonica);
     }
 
     /** Ridefinito coerentemente alla ridefinizione di {@link Action#equals(Object)}.
+     * È calcolato una volta sola, alla creazione dell'azione.
      * @return hash code di questa azione */
     @Override
-    public int hashCode() {
-        int result = kind != null ? kind.hashCode() : 0;
+    public int hashCode() { return hash; }
+
+
+    //Le posizioni in forma canonica: ordinate per b e poi per t, eccetto per JUMP;
+    private final Pos[] canonica;
+    private final int hash;
+
+    /**L'hash dei campi, con le posizioni in forma canonica*/
+    private int calcolaHash() {
+        int result = kind.hashCode();
         result = 31 * result + (piece != null ? piece.hashCode() : 0);
-        result = 31 * result + (pos != null ? (new HashSet<>(pos)).hashCode() : 0);
+        result = 31 * result + Arrays.hashCode(canonica);
         result = 31 * result + (dir != null ? dir.hashCode() : 0);
         result = 31 * result + steps;
         return result;
     }
 
+    //L'ordine delle posizioni canoniche;
+    private static final Comparator<Pos> ORDINE = (p1, p2) -> p1.b != p2.b ? Integer.compare(p1.b, p2.b) : Integer.compare(p1.t, p2.t);
+
+    /**Una copia delle posizioni ordinate per b e poi per t; le posizioni non devono
+       essere null*/
+    private static Pos[] ordina(Pos[] pp) {
+        Pos[] ordinate = pp.clone();
+        Arrays.sort(ordinate, ORDINE);
+        return ordinate;
+    }
+
+    /**Ritorna true se le posizioni ordinate contengono duplicati*/
+    private static boolean duplicati(Pos[] ordinate) {
+        for (int i = 1 ; i < ordinate.length ; i++)
+            if (ordinate[i].equals(ordinate[i - 1]))
+                return true;
+
+        return false;
+    }
+
 }
@@ -1,6 +1,7 @@
 package gapp.ulg.game.board;
 
 import java.util.*;
+import java.util.function.BiConsumer;
 
 /** <b>IMPLEMENTARE I METODI DI DEFAULT CON L'INDICAZIONE "DA IMPLEMENTARE" SECONDO
  * LE SPECIFICHE DATE NEI JAVADOC. Non modificare le intestazioni dei metodi e non
@@ -215,10 +216,31 @@ public interface GameRuler<P> {
     /*-------------------------  N E W    M E M B E R S  -------------------------*/
 
 
+    /** Una vista in sola lettura di una situazione di gioco. A differenza di una
+     * {@link Situation} la situazione vista può cambiare, ad es. quella passata da
+     * {@link Mechanics#forEachChild(Situation, BiConsumer)} è valida solamente
+     * durante l'invocazione a cui è passata.
+     * @param <P>  tipo del modello dei pezzi */
+    interface SituationView<P> {
+        /** Ritorna il pezzo nella posizione p o null, se non c'è un pezzo in p.
+         * @param p  una posizione (può essere null)
+         * @return il pezzo nella posizione p o null, se non c'è un pezzo in p */
+        P get(Pos p);
+
+        /** Ritorna il turno della situazione, come {@link Situation#turn}.
+         * @return il turno della situazione */
+        int turn();
+
+        /** Ritorna una {@link Situation} (immutabile) uguale alla situazione vista
+         * in questo momento.
+         * @return una {@link Situation} uguale alla situazione vista */
+        Situation<P> toSituation();
+    }
+
     /** Una {@code Situation} rappresenta una situazione di gioco. Gli oggetti
      * {@code Situation} sono immutabili.
      * @param <P>  tipo del modello dei pezzi */
-    class Situation<P> {
+    class Situation<P> implements SituationView<P> {
         /** L'indice di turnazione del giocatore di turno della situazione, se
          * la situazione è finale, è 0 per la patta o -w, dove w è l'indice di
          * turnazione del giocatore che ha vinto */
@@ -229,8 +251,16 @@ public interface GameRuler<P> {
          * pezzo in p.
          * @param p  una posizione (può essere null)
          * @return il pezzo nella posizione p o null, se non c'è un pezzo in p */
+        @Override
         public P get(Pos p) { return conf.get(p); }
 
+        @Override
+        public int turn() { return turn; }
+
+        /** @return questa situazione */
+        @Override
+        public Situation<P> toSituation() { return this; }
+
         public Map<Pos,P> newMap() { return new HashMap<>(conf); }
 
         /** Crea una situazione data la mappa delle disposizioni dei pezzi e il
@@ -281,6 +311,25 @@ public interface GameRuler<P> {
         Map<Move<P>, Situation<P>> get(Situation<P> s);
     }
 
+    /** Una funzione che visita le mosse valide di una situazione di gioco e le
+     * corrispondenti prossime situazioni, come {@link Next} ma senza creare la
+     * mappa e una situazione per ogni mossa.
+     * @param <P> tipo del modello dei pezzi */
+    @FunctionalInterface
+    interface Children<P> {
+        /** Per ogni mossa valida, esclusa {@link Move.Kind#RESIGN}, della
+         * situazione di gioco data invoca {@code visit} con la mossa e la vista
+         * della situazione che si ottiene facendo la mossa. La vista può essere
+         * sempre lo stesso oggetto ed è valida solamente durante l'invocazione di
+         * {@code visit}: per tenere la situazione si usa
+         * {@link SituationView#toSituation()}. Non invoca {@code visit} se la
+         * situazione data è finale.
+         * @param s  una situazione di gioco
+         * @param visit  la funzione da invocare per ogni mossa
+         * @throws NullPointerException se s o visit è null */
+        void forEach(Situation<P> s, BiConsumer<Move<P>, SituationView<P>> visit);
+    }
+
     /** Un oggetto {@code Mechanics} rappresenta la meccanica di un gioco. Ovvero
      * tutte quelle caratteristiche che sono indipendenti dalla particolare partita
      * giocata ma sono comuni a tutte le partite che si possono giocare con un certo
@@ -310,13 +359,42 @@ public interface GameRuler<P> {
         public final Next<P> next;
 
         public Mechanics(long t, List<P> pcs, List<Pos> pp, int np, Situation<P> s, Next<P> nx) {
+            this(t, pcs, pp, np, s, nx, null);
+        }
+
+        /** Come {@link Mechanics#Mechanics(long, List, List, int, Situation, Next)}
+         * con in più la funzione usata da
+         * {@link Mechanics#forEachChild(Situation, BiConsumer)}, che deve visitare
+         * le stesse mosse e situazioni di {@code nx}. Se {@code ch} è null le visita
+         * tramite {@code nx}. */
+        public Mechanics(long t, List<P> pcs, List<Pos> pp, int np, Situation<P> s, Next<P> nx, Children<P> ch) {
             time = t;
             pieces = pcs;
             positions = pp;
             this.np = np;
             start = s;
             next = nx;
+            children = ch != null ? ch : (c, visit) -> {
+                Objects.requireNonNull(visit);
+                Map<Move<P>, Situation<P>> m = nx.get(c);
+                if (m != null) m.forEach(visit);
+            };
         }
+
+        /** Per ogni mossa valida, esclusa {@link Move.Kind#RESIGN}, della
+         * situazione data invoca {@code visit} con la mossa e la vista della
+         * prossima situazione (vedi {@link Children#forEach(Situation, BiConsumer)}).
+         * Visita le stesse mosse e situazioni di {@link Mechanics#next} ma, se il
+         * gioco lo permette, senza copiare la disposizione dei pezzi per ogni mossa.
+         * @param s  una situazione di gioco
+         * @param visit  la funzione da invocare per ogni mossa
+         * @throws NullPointerException se s o visit è null */
+        public void forEachChild(Situation<P> s, BiConsumer<Move<P>, SituationView<P>> visit) {
+            children.forEach(s, visit);
+        }
+
+
+        private final Children<P> children;
     }
 
     /** Ritorna la meccanica di questo gioco. L'oggetto ritornato è immutabile e
@@ -327,4 +405,105 @@ public interface GameRuler<P> {
     default Mechanics<P> mechanics() {
         throw new UnsupportedOperationException();
     }
+
+    /** Ritorna uno hash a 64 bit (di Zobrist) della situazione di gioco attuale,
+     * cioè della disposizione dei pezzi e del turno. Situazioni uguali hanno lo
+     * stesso hash anche se sono state raggiunte con sequenze di mosse diverse. Il
+     * valore è aggiornato in modo incrementale da {@link GameRuler#move(Move)} e
+     * {@link GameRuler#unMove()} e quindi il metodo costa O(1). Questo metodo è
+     * implementato solamente dai giochi che lo supportano.
+     * @return lo hash a 64 bit della situazione di gioco attuale
+     * @throws UnsupportedOperationException se questo gioco non calcola lo hash */
+    default long hash() {
+        throw new UnsupportedOperationException("Questo gioco non calcola lo hash");
+    }
+
+    /** Ritorna un {@link Playout} per giocare rapidamente partite con mosse casuali
+     * a partire dalla situazione di gioco attuale, senza creare oggetti per le
+     * mosse. Il Playout ritornato è indipendente da questo GameRuler. Questo metodo
+     * è implementato solamente dai giochi che lo supportano.
+     * @return un Playout per la situazione di gioco attuale
+     * @throws UnsupportedOperationException se questo gioco non ha un Playout */
+    default Playout playout() {
+        throw new UnsupportedOperationException("Questo gioco non ha un Playout");
+    }
+
+    /** Ritorna il numero dei codici delle mosse di questo gioco: i codici sono gli
+     * interi da 0 a {@code moveCodes() - 1}. Il codice di una mossa (vedi
+     * {@link GameRuler#encode(Move)}) dipende dal gioco ma non dalla situazione, ad
+     * es. le mosse che mettono una pedina nella stessa posizione hanno lo stesso
+     * codice anche in situazioni diverse, quindi i codici possono indicizzare
+     * tabelle come quelle della history dei giocatori che fanno ricerche. Questo
+     * metodo, e quindi la codifica delle mosse, è implementato solamente dai giochi
+     * che lo supportano.
+     * @return il numero dei codici delle mosse
+     * @throws UnsupportedOperationException se questo gioco non codifica le mosse */
+    default int moveCodes() {
+        throw new UnsupportedOperationException("Questo gioco non codifica le mosse");
+    }
+
+    /** Ritorna il codice della mossa m se è valida nell'attuale situazione di
+     * gioco, altrimenti -1. La conversione non perde informazione:
+     * {@code decode(encode(m))} è uguale a m.
+     * @param m  una mossa
+     * @return il codice di m o -1 se m non è valida
+     * @throws NullPointerException se m è null
+     * @throws IllegalStateException se il gioco è terminato
+     * @throws UnsupportedOperationException se questo gioco non codifica le mosse */
+    default int encode(Move<P> m) {
+        throw new UnsupportedOperationException("Questo gioco non codifica le mosse");
+    }
+
+    /** Ritorna la mossa valida nell'attuale situazione di gioco che ha il codice
+     * dato, o null se nessuna mossa valida ha quel codice.
+     * @param code  il codice di una mossa
+     * @return la mossa con il codice dato o null
+     * @throws IllegalStateException se il gioco è terminato
+     * @throws UnsupportedOperationException se questo gioco non codifica le mosse */
+    default Move<P> decode(int code) {
+        throw new UnsupportedOperationException("Questo gioco non codifica le mosse");
+    }
+
+    /** Mette in moves (dopo averla svuotata) i codici delle mosse valide
+     * nell'attuale situazione di gioco, escluso l'abbandono. L'implementazione di
+     * default usa {@link GameRuler#validMoves()} e {@link GameRuler#encode(Move)}, i
+     * giochi che codificano le mosse la ridefiniscono senza creare oggetti
+     * {@link Move}.
+     * @param moves  la lista da riempire
+     * @throws NullPointerException se moves è null
+     * @throws IllegalStateException se il gioco è terminato
+     * @throws UnsupportedOperationException se questo gioco non codifica le mosse */
+    default void validMoveCodes(IntMoveList moves) {
+        Objects.requireNonNull(moves);
+        moves.clear();
+
+        for (Move<P> m : validMoves())
+            if (m.kind != Move.Kind.RESIGN)
+                moves.add(encode(m));
+    }
+
+    /** Ritorna true se code è il codice di una mossa valida nell'attuale situazione
+     * di gioco. L'implementazione di default usa {@link GameRuler#decode(int)}.
+     * @param code  il codice di una mossa
+     * @return true se code è il codice di una mossa valida
+     * @throws IllegalStateException se il gioco è terminato
+     * @throws UnsupportedOperationException se questo gioco non codifica le mosse */
+    default boolean isValid(int code) {
+        return decode(code) != null;
+    }
+
+    /** Esegue la mossa valida con il codice dato, come {@link GameRuler#move(Move)}.
+     * L'implementazione di default usa {@link GameRuler#decode(int)}.
+     * @param code  il codice di una mossa valida
+     * @throws IllegalArgumentException se code non è il codice di una mossa valida
+     * @throws IllegalStateException se il gioco è terminato
+     * @throws UnsupportedOperationException se questo gioco non codifica le mosse */
+    default void move(int code) {
+        Move<P> m = decode(code);
+
+        if (m == null)
+            throw new IllegalArgumentException();
+
+        move(m);
+    }
 }
@@ -0,0 +1,87 @@
+package gapp.ulg.game.board;
+
+import java.util.Arrays;
+
+/** Una lista di codici di mosse (vedi {@link GameRuler#encode(Move)}) memorizzata in
+ * un array di interi che cresce quando serve. È pensata per essere riusata: dopo
+ * {@link IntMoveList#clear()} l'array è ancora lì, quindi riempire più volte la
+ * stessa lista con {@link GameRuler#validMoveCodes(IntMoveList)} non crea oggetti. Gli
+ * oggetti IntMoveList non sono thread-safe. */
+public class IntMoveList {
+    /** Crea una lista vuota. */
+    public IntMoveList() { this(16); }
+
+    /** Crea una lista vuota che può contenere almeno capacity codici senza crescere.
+     * @param capacity  la capacità iniziale
+     * @throws IllegalArgumentException se capacity < 0 */
+    public IntMoveList(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException();
+
+        codici = new int[Math.max(1, capacity)];
+    }
+
+    /** @return il numero di codici nella lista */
+    public int size() { return size; }
+
+    /** @return true se la lista è vuota */
+    public boolean isEmpty() { return size == 0; }
+
+    /** Ritorna il codice di indice i.
+     * @param i  un indice
+     * @return il codice di indice i
+     * @throws IndexOutOfBoundsException se i < 0 o i >= size() */
+    public int get(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+
+        return codici[i];
+    }
+
+    /** Sostituisce il codice di indice i.
+     * @param i  un indice
+     * @param code  il nuovo codice
+     * @throws IndexOutOfBoundsException se i < 0 o i >= size() */
+    public void set(int i, int code) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+
+        codici[i] = code;
+    }
+
+    /** Aggiunge il codice in fondo alla lista.
+     * @param code  un codice */
+    public void add(int code) {
+        if (size == codici.length)
+            codici = Arrays.copyOf(codici, codici.length * 2);
+
+        codici[size++] = code;
+    }
+
+    /** Svuota la lista, senza liberare l'array. */
+    public void clear() { size = 0; }
+
+    /** Ritorna l'indice della prima occorrenza del codice, o -1 se non c'è.
+     * @param code  un codice
+     * @return l'indice del codice o -1 */
+    public int indexOf(int code) {
+        for (int i = 0 ; i < size ; i++)
+            if (codici[i] == code) return i;
+
+        return -1;
+    }
+
+    /** @param code  un codice
+     * @return true se il codice è nella lista */
+    public boolean contains(int code) { return indexOf(code) >= 0; }
+
+    /** @return un nuovo array con i codici della lista, nell'ordine */
+    public int[] toArray() { return Arrays.copyOf(codici, size); }
+
+    @Override
+    public String toString() { return Arrays.toString(toArray()); }
+
+
+    private int[] codici;
+    private int size;
+}
@@ -45,6 +45,7 @@ public class Move<P> {
 
         this.kind = k;
         actions = Collections.unmodifiableList(new ArrayList<>());
+        hash = calcolaHash();
     }
 
     /** Crea una mossa di tipo {@link Kind#ACTION}.
@@ -54,15 +55,22 @@ public class Move<P> {
     @SafeVarargs
     public Move(Action<P>...aa) {
 
-        for (Action<P> a : aa)
+        //Copio le azioni, così la mossa (e il suo hash) non cambia se l'array è poi modificato;
+        List<Action<P>> azioni = new ArrayList<>(aa.length);
+
+        for (Action<P> a : aa) {
             if (a == null)
                 throw new NullPointerException();
 
-        if (aa.length == 0)
+            azioni.add(a);
+        }
+
+        if (azioni.isEmpty())
             throw new IllegalArgumentException();
 
         kind = Kind.ACTION;
-        actions = Collections.unmodifiableList(Arrays.asList(aa));
+        actions = Collections.unmodifiableList(azioni);
+        hash = calcolaHash();
     }
 
     /** Crea una mossa di tipo {@link Kind#ACTION}. La lista aa è solamente letta e
@@ -101,11 +109,14 @@ public class Move<P> {
             lista1.add(a);
 
         actions = Collections.unmodifiableList(lista1);
+        hash = calcolaHash();
 
     }
 
     /** Ritorna true se e solo se x è un oggetto di tipo {@link Move} ed ha gli
-     * stessi valori dei campi {@link Move#kind} e {@link Move#actions}.
+     * stessi valori dei campi {@link Move#kind} e {@link Move#actions}. Le azioni
+     * sono confrontate per indice, senza iteratori, dopo gli hash calcolati alla
+     * creazione.
      * @param o  un oggetto (o null)
      * @return true se o è uguale a questa mossa */
     @Override
@@ -115,18 +126,35 @@ public class Move<P> {
 
         Move<?> move = (Move<?>) o;
 
+        if (hash != move.hash) return false;
         if (kind != move.kind) return false;
-        return actions != null ? actions.equals(move.actions) : move.actions == null;
+        if (actions.size() != move.actions.size()) return false;
+
+        for (int i = 0 ; i < actions.size() ; i++)
+            if (!actions.get(i).equals(move.actions.get(i)))
+                return false;
+
+        return true;
 
     }
 
     /** Ridefinito coerentemente con la ridefinizione di
-     * {@link PieceModel#equals(Object)}.
+     * {@link PieceModel#equals(Object)}. È calcolato una volta sola, alla
+     * creazione della mossa.
      * @return hash code di questa mossa */
     @Override
-    public int hashCode() {
-        int result = kind.hashCode();
-        result = 31 * result + (actions != null ? actions.hashCode() : 0);
-        return result;
+    public int hashCode() { return hash; }
+
+
+    private final int hash;
+
+    /**Lo hash del tipo e delle azioni, uguale a quello di una lista delle azioni*/
+    private int calcolaHash() {
+        int result = 1;
+
+        for (int i = 0 ; i < actions.size() ; i++)
+            result = 31 * result + actions.get(i).hashCode();
+
+        return 31 * kind.hashCode() + result;
     }
 }
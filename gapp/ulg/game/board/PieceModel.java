@@ -1,7 +1,10 @@
 package gapp.ulg.game.board;
 
 import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** <b>IMPLEMENTARE I METODI SECONDO LE SPECIFICHE DATE NEI JAVADOC. Non modificare
  * le intestazioni dei metodi nè i campi pubblici.</b>
@@ -35,6 +38,33 @@ public class PieceModel<S extends Enum<S>> implements Serializable {
 
     }
 
+    /** Ritorna il modello di pezzo con la specie e il colore dati. Lo stesso
+     * oggetto (condiviso e immutabile) è ritornato per tutte le invocazioni con
+     * specie e colore uguali, quindi nei cicli critici non sono allocati nuovi
+     * oggetti. Può essere invocato contemporaneamente da più thread.
+     * @param s  la specie
+     * @param c  il colore
+     * @param <S>  il tipo dei valori di specie
+     * @return il modello di pezzo con la specie e il colore dati
+     * @throws NullPointerException se s o c è null */
+    @SuppressWarnings("unchecked")
+    public static <S extends Enum<S>> PieceModel<S> of(S s, String c) {
+
+        Objects.requireNonNull(s);
+        Objects.requireNonNull(c);
+
+        Map<String,PieceModel<?>> perColore = s instanceof Species ? SPECIES.get(s) :
+                OTHERS.computeIfAbsent(s, k -> new ConcurrentHashMap<>());
+
+        //Prima una semplice lettura, così nel caso comune non si alloca niente;
+        PieceModel<?> pm = perColore.get(c);
+
+        if (pm == null)
+            pm = perColore.computeIfAbsent(c, k -> new PieceModel<>(s, k));
+
+        return (PieceModel<S>) pm;
+    }
+
     public S getSpecies() {return species;}
     public String getColor() {return color;}
 
@@ -64,4 +94,16 @@ public class PieceModel<S extends Enum<S>> implements Serializable {
         result = 31 * result + (color != null ? color.hashCode() : 0);
         return result;
     }
+
+    /** Per ogni specie di {@link Species} la mappa dai colori ai modelli condivisi,
+     * le mappe sono create nell'inizializzazione e la EnumMap è poi solo letta */
+    private static final EnumMap<Species,Map<String,PieceModel<?>>> SPECIES = new EnumMap<>(Species.class);
+
+    static {
+        for (Species s : Species.values())
+            SPECIES.put(s, new ConcurrentHashMap<>());
+    }
+
+    /** I modelli condivisi per le specie di altri tipi enumerati */
+    private static final Map<Enum<?>,Map<String,PieceModel<?>>> OTHERS = new ConcurrentHashMap<>();
 }
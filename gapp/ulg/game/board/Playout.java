@@ -0,0 +1,60 @@
+package gapp.ulg.game.board;
+
+import java.util.Random;
+
+/** Un Playout gioca rapidamente partite con mosse casuali (rollout) a partire da
+ * una situazione di gioco fissata, quella del {@link GameRuler} che lo ha creato
+ * con {@link GameRuler#playout()}. La situazione è rappresentata internamente con
+ * array di interi e le mosse sono codificate con interi non negativi, quindi
+ * giocare una partita non crea oggetti {@link Move}, {@link Action}, {@link Pos} o
+ * insiemi di mosse.
+ * <br>
+ * Il significato del codice di una mossa dipende dal gioco: un valore ritornato da
+ * {@link Playout#randomMove(Random)} può essere passato solamente al successivo
+ * {@link Playout#apply(int)}. L'abbandono non è mai scelto: se il giocatore di
+ * turno non ha altre mosse la partita termina come se avesse abbandonato (cioè
+ * come se avesse giocato l'unica mossa valida). L'esito delle partite è lo stesso
+ * che si avrebbe giocando le stesse mosse con il GameRuler, anche se la partita può
+ * terminare dopo, ad es. se il GameRuler riconosce in anticipo una patta certa.
+ * <br>
+ * Un Playout è indipendente dal GameRuler che lo ha creato (i movimenti successivi
+ * del GameRuler non lo modificano) e non è thread-safe: ogni thread deve usare il
+ * proprio. */
+public interface Playout {
+    /** Ritorna l'indice di turnazione del giocatore di turno, o 0 se la partita è
+     * terminata.
+     * @return l'indice di turnazione del giocatore di turno, o 0 */
+    int turn();
+
+    /** Ritorna l'esito della partita, con lo stesso significato di
+     * {@link GameRuler#result()}: -1 se non è terminata, 0 se è patta, altrimenti
+     * l'indice di turnazione del vincitore.
+     * @return l'esito della partita */
+    int result();
+
+    /** Ritorna il codice di una delle mosse valide (escluso l'abbandono) scelta a
+     * caso con probabilità uniforme, o -1 se la partita è terminata.
+     * @param rnd  il generatore di numeri casuali
+     * @return il codice di una mossa valida scelta a caso, o -1 */
+    int randomMove(Random rnd);
+
+    /** Esegue la mossa con il codice dato, che deve essere stato ritornato
+     * dall'ultima invocazione di {@link Playout#randomMove(Random)}.
+     * @param m  il codice di una mossa
+     * @throws IllegalStateException se la partita è terminata */
+    void apply(int m);
+
+    /** Riporta il Playout alla situazione di gioco in cui è stato creato. */
+    void reset();
+
+    /** Riporta il Playout alla situazione in cui è stato creato e gioca una
+     * partita con mosse casuali fino alla fine.
+     * @param rnd  il generatore di numeri casuali
+     * @return l'esito della partita, come {@link Playout#result()} */
+    default int rollout(Random rnd) {
+        reset();
+        while (result() == -1)
+            apply(randomMove(rnd));
+        return result();
+    }
+}
@@ -30,6 +30,47 @@ public class Pos implements Serializable {
 
     }
 
+    /** Ritorna la posizione con le coordinate date. Per coordinate minori di
+     * {@link Pos#CACHE_SIZE} ritorna sempre lo stesso oggetto (condiviso e
+     * immutabile), quindi nei cicli critici non sono allocati nuovi oggetti e
+     * l'uguaglianza si riduce di solito al confronto dei riferimenti.
+     * @param b  coordinata asse base (non negativa)
+     * @param t  coordinata asse trasversale (non negativa)
+     * @return la posizione con le coordinate date
+     * @throws IllegalArgumentException se una delle coordinate è nagativa */
+    public static Pos of(int b, int t) {
+
+        if (b < 0 || t < 0) {
+
+            throw new IllegalArgumentException();
+
+        }
+
+        if (b < CACHE_SIZE && t < CACHE_SIZE)
+            return CACHE[b][t];
+
+        return new Pos(b, t);
+    }
+
+    /** Le posizioni con entrambe le coordinate minori di questo valore sono
+     * ritornate da {@link Pos#of(int, int)} senza allocare, la cache copre le
+     * board di tutti i giochi di {@code gapp.ulg}. */
+    public static final int CACHE_SIZE = 32;
+
+    private static final Pos[][] CACHE = new Pos[CACHE_SIZE][CACHE_SIZE];
+
+    static {
+        for (int b = 0 ; b < CACHE_SIZE ; b++)
+            for (int t = 0 ; t < CACHE_SIZE ; t++)
+                CACHE[b][t] = new Pos(b, t);
+    }
+
+    /** La deserializzazione ritorna l'oggetto condiviso, se c'è.
+     * @return la posizione condivisa uguale a questa o questa stessa posizione */
+    private Object readResolve() {
+        return b < CACHE_SIZE && t < CACHE_SIZE ? CACHE[b][t] : this;
+    }
+
     /** Questa posizione è uguale a x se e solo se x è della classe {@link Pos}
      * ed ha le stesse coordinate.
      * @param o un oggetto (o null)
@@ -21,24 +21,7 @@ public class BoardOct<P> implements Board<P> {
      * @param height  altezza board
      * @throws IllegalArgumentException se width <= 0 o height <= 0 */
     public BoardOct(int width, int height) {
-
-        if (width <= 0 || height <= 0)
-            throw new IllegalArgumentException();
-
-        mappaPosToPiece = new HashMap<>();
-        listaPosizioni = new ArrayList<>();
-        altezza = height;
-        larghezza = width;
-
-        for (int i = 0 ; i < height ; i++)
-            for (int j = 0 ; j < width ; j++)
-                mappaPosToPiece.put(new Pos(j, i), null);
-
-        for (int i = 0 ; i < height ; i++)
-            for (int j = 0 ; j < width ; j++)
-                listaPosizioni.add(new Pos(j, i));
-
-        listaPosizioni = Collections.unmodifiableList(listaPosizioni);
+        this(width, height, Collections.emptyList());
     }
 
     /** Crea una BoardOct con le dimensioni date (può quindi essere rettangolare)
@@ -58,33 +41,108 @@ public class BoardOct<P> implements Board<P> {
         if (width <= 0 || height <= 0)
             throw new IllegalArgumentException();
 
-        mappaPosToPiece = new HashMap<>();
-        listaPosizioni = new ArrayList<>();
         altezza = height;
         larghezza = width;
 
-        for (int i = 0 ; i < height ; i++)
-            for (int j = 0 ; j < width ; j++)
-                mappaPosToPiece.put(new Pos(j, i), null);
+        //Le posizioni sono memorizzate in un array con indice b + t*width;
+        posizioni = new Pos[width * height];
+
+        //I pezzi sono divisi in al più 64 segmenti di almeno 16 posizioni;
+        int shift = 4;
+
+        while ((posizioni.length - 1) >>> shift >= 64)
+            shift++;
+
+        this.shift = shift;
+        segmenti = new Object[((posizioni.length - 1) >>> shift) + 1][1 << shift];
+        propri = -1L;
+        segmentiPropri = true;
 
         for (int i = 0 ; i < height ; i++)
             for (int j = 0 ; j < width ; j++)
-                listaPosizioni.add(new Pos(j, i));
+                posizioni[indice(j, i)] = Pos.of(j, i);
 
+        //Le posizioni escluse restano null;
         for (Pos p : exc)
-            if (listaPosizioni.contains(p)) {
-                listaPosizioni.remove(p);
-                mappaPosToPiece.remove(p);
-            }
+            if (p.b < width && p.t < height)
+                posizioni[indice(p.b, p.t)] = null;
+
+        //La lista delle posizioni contiene gli stessi oggetti dell'array, nello stesso ordine;
+        listaPosizioni = new ArrayList<>();
+
+        for (Pos p : posizioni)
+            if (p != null)
+                listaPosizioni.add(p);
 
         listaPosizioni = Collections.unmodifiableList(listaPosizioni);
+
+        //Precalcolo per ogni direzione l'indice della posizione adiacente (-1 se non c'è);
+        Dir[] direzioni = Dir.values();
+        adiacenti = new int[direzioni.length][posizioni.length];
+
+        for (Dir d : direzioni) {
+            int[] tabella = adiacenti[d.ordinal()];
+
+            for (int i = 0 ; i < posizioni.length ; i++) {
+                tabella[i] = -1;
+
+                if (posizioni[i] == null)
+                    continue;
+
+                int b = posizioni[i].b + spostamentoB(d), t = posizioni[i].t + spostamentoT(d);
+
+                if (b >= 0 && t >= 0 && b < width && t < height && posizioni[indice(b, t)] != null)
+                    tabella[i] = indice(b, t);
+            }
+        }
     }
 
-    public Map<Pos,PieceModel<PieceModel.Species>> mappaPosToPiece;
     public List<Pos> listaPosizioni;
     public int altezza;
     public int larghezza;
 
+    /** Ritorna una copia di questa board, con gli stessi pezzi nelle stesse
+     * posizioni, in tempo costante: le due board condividono i pezzi e una board
+     * copia un segmento di posizioni solamente la prima volta che lo modifica, quindi
+     * le modifiche di una board non cambiano l'altra. Non deve essere invocato
+     * mentre un altro thread modifica o copia la board.
+     * @return una copia di questa board */
+    public BoardOct<P> copy() {
+        BoardOct<P> copia = new BoardOct<>(this);
+
+        //Da ora i segmenti sono condivisi, anche per questa board;
+        propri = 0;
+        segmentiPropri = false;
+        return copia;
+    }
+
+    /**Crea una copia della board o che condivide tutto, anche i segmenti dei pezzi*/
+    private BoardOct(BoardOct<P> o) {
+        listaPosizioni = o.listaPosizioni;
+        altezza = o.altezza;
+        larghezza = o.larghezza;
+        posizioni = o.posizioni;
+        adiacenti = o.adiacenti;
+        shift = o.shift;
+        segmenti = o.segmenti;
+        propri = 0;
+        segmentiPropri = false;
+    }
+
+    //Le posizioni (null se esclusa) indicizzate con b + t*width;
+    private final Pos[] posizioni;
+
+    /*I pezzi indicizzati con b + t*width, divisi in segmenti di 2^shift posizioni;
+      l'array dei segmenti e ogni segmento possono essere condivisi con le copie,
+      propri ha il bit s a 1 se il segmento s è solamente di questa board*/
+    private final int shift;
+    private Object[][] segmenti;
+    private long propri;
+    private boolean segmentiPropri;
+
+    //Per ogni direzione (indicizzata con l'ordinal) e posizione, l'indice della posizione adiacente;
+    private final int[][] adiacenti;
+
     @Override
     public System system() { return System.OCTAGONAL; }
 
@@ -96,36 +154,19 @@ public class BoardOct<P> implements Board<P> {
 
     @Override
     public Pos adjacent(Pos p, Dir d) {
-        Pos posDaRit = null;
 
         Objects.requireNonNull(p);
         Objects.requireNonNull(d);
 
-        if (d.equals(Dir.UP) && listaPosizioni.contains(new Pos(p.b, p.t + 1)))
-            posDaRit = new Pos(p.b, p.t + 1);
-
-        else if (d.equals(Dir.UP_R) && listaPosizioni.contains(new Pos(p.b + 1, p.t + 1)))
-            posDaRit = new Pos(p.b + 1, p.t + 1);
-
-        else if (d.equals(Dir.RIGHT) && listaPosizioni.contains(new Pos(p.b + 1, p.t)))
-            posDaRit = new Pos(p.b + 1, p.t);
-
-        else if (d.equals(Dir.DOWN_R) && p.t > 0 && listaPosizioni.contains(new Pos(p.b + 1, p.t - 1)))
-            posDaRit = new Pos(p.b + 1, p.t - 1);
+        int i = indicePos(p);
 
-        else if (d.equals(Dir.DOWN) && p.t > 0 && listaPosizioni.contains(new Pos(p.b, p.t - 1)))
-            posDaRit = new Pos(p.b, p.t - 1);
+        //Se p non è una posizione della board;
+        if (i < 0)
+            return null;
 
-        else if (d.equals(Dir.DOWN_L) && p.b > 0 && p.t > 0 && listaPosizioni.contains(new Pos(p.b - 1, p.t - 1)))
-            posDaRit = new Pos(p.b - 1, p.t - 1);
+        int adiacente = adiacenti[d.ordinal()][i];
 
-        else if (d.equals(Board.Dir.LEFT) && p.b > 0 && listaPosizioni.contains(new Pos(p.b - 1, p.t)))
-            posDaRit = new Pos(p.b - 1, p.t);
-
-        else if (d.equals(Dir.UP_L) && p.b > 0 && listaPosizioni.contains(new Pos(p.b - 1, p.t + 1)))
-            posDaRit = new Pos(p.b - 1, p.t + 1);
-
-        return posDaRit;
+        return adiacente < 0 ? null : posizioni[adiacente];
     }
 
     @Override
@@ -133,12 +174,22 @@ public class BoardOct<P> implements Board<P> {
         return listaPosizioni;
     }
 
+    @Override
+    public boolean isPos(Pos p) {
+
+        Objects.requireNonNull(p);
+
+        return indicePos(p) >= 0;
+    }
+
     @Override
     public P get(Pos p) {
 
         Objects.requireNonNull(p);
 
-        return (P) mappaPosToPiece.get(p);
+        int i = indicePos(p);
+
+        return i < 0 ? null : (P) segmenti[i >>> shift][i & ((1 << shift) - 1)];
     }
 
     @Override
@@ -146,40 +197,85 @@ public class BoardOct<P> implements Board<P> {
 
     @Override
     public P put(P pm, Pos p) {
-        P piece;
-
         Objects.requireNonNull(pm);
         Objects.requireNonNull(p);
 
         if (!isModifiable())
             throw new UnsupportedOperationException();
 
-        if (!positions().contains(p))
-            throw new IllegalArgumentException();
-
-        piece = (P) mappaPosToPiece.get(p);
+        int i = indicePos(p);
 
-        mappaPosToPiece.put(p,(PieceModel<PieceModel.Species>) pm);
+        if (i < 0)
+            throw new IllegalArgumentException();
 
-        return piece;
+        return metti(i, pm);
     }
 
     @Override
     public P remove(Pos p) {
-        P piece;
-
         Objects.requireNonNull(p);
 
         if (!isModifiable())
             throw new UnsupportedOperationException();
 
-        if (!positions().contains(p))
+        int i = indicePos(p);
+
+        if (i < 0)
             throw new IllegalArgumentException();
 
-        piece = (P) mappaPosToPiece.get(p);
+        return metti(i, null);
+    }
 
-        mappaPosToPiece.put(p, null);
+    /**Mette il pezzo (o null) nella posizione di indice i, copiando prima il suo
+       segmento se è condiviso, e ritorna il pezzo che c'era*/
+    private P metti(int i, P pm) {
+        int s = i >>> shift;
 
+        if ((propri >>> s & 1) == 0) {
+            if (!segmentiPropri) {
+                segmenti = segmenti.clone();
+                segmentiPropri = true;
+            }
+
+            segmenti[s] = segmenti[s].clone();
+            propri |= 1L << s;
+        }
+
+        Object[] segmento = segmenti[s];
+        P piece = (P) segmento[i & ((1 << shift) - 1)];
+        segmento[i & ((1 << shift) - 1)] = pm;
         return piece;
     }
+
+    /**Ritorna l'indice nell'array della posizione (b,t), che deve essere nel rettangolo*/
+    private int indice(int b, int t) {
+        return b + t * larghezza;
+    }
+
+    /**Ritorna l'indice nell'array di p, oppure -1 se p non è una posizione della board*/
+    private int indicePos(Pos p) {
+
+        if (p.b >= larghezza || p.t >= altezza)
+            return -1;
+
+        int i = indice(p.b, p.t);
+
+        return posizioni[i] == null ? -1 : i;
+    }
+
+    private static int spostamentoB(Dir d) {
+        switch (d) {
+            case UP_R: case RIGHT: case DOWN_R: return 1;
+            case UP_L: case LEFT: case DOWN_L: return -1;
+            default: return 0;
+        }
+    }
+
+    private static int spostamentoT(Dir d) {
+        switch (d) {
+            case UP: case UP_R: case UP_L: return 1;
+            case DOWN: case DOWN_R: case DOWN_L: return -1;
+            default: return 0;
+        }
+    }
 }
@@ -0,0 +1,125 @@
+package gapp.ulg.game.util;
+
+import java.util.*;
+
+/** Una lista a cui si possono solamente aggiungere o togliere elementi in fondo
+ * (come una pila), pensata per la cronologia delle mosse di un GameRuler. Gli
+ * elementi sono in celle immutabili che puntano alla cella precedente, quindi una
+ * copia creata con {@link ListaPersistente#ListaPersistente(Collection)} a partire
+ * da un'altra {@code ListaPersistente} costa O(1) e condivide le celle: aggiungere o
+ * togliere elementi in fondo a una delle due liste non cambia l'altra.
+ * <br>
+ * L'accesso all'ultimo elemento costa O(1), quello all'elemento di indice i costa
+ * O(size - i); l'iterazione costa O(size) in tutto. Sono supportati solamente
+ * {@link ListaPersistente#add(Object)}, la rimozione dell'ultimo elemento e
+ * {@link ListaPersistente#clear()}, le altre modifiche lanciano
+ * {@link UnsupportedOperationException}. Come le altre liste di {@code java.util}
+ * non può essere modificata contemporaneamente da più thread.
+ * @param <E>  tipo degli elementi */
+public class ListaPersistente<E> extends AbstractList<E> {
+    /** Crea una lista vuota. */
+    public ListaPersistente() { }
+
+    /** Crea una lista con gli elementi di c, nell'ordine del suo iteratore. Se c è
+     * una {@code ListaPersistente} costa O(1) perché ne condivide le celle.
+     * @param c  una collezione
+     * @throws NullPointerException se c è null */
+    @SuppressWarnings("unchecked")
+    public ListaPersistente(Collection<? extends E> c) {
+        if (c instanceof ListaPersistente) {
+            //Le celle sono immutabili, quindi possono essere condivise;
+            ultima = ((ListaPersistente<E>) c).ultima;
+            size = c.size();
+        } else
+            addAll(c);
+    }
+
+    @Override
+    public int size() { return size; }
+
+    @Override
+    public E get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+        Cella<E> c = ultima;
+
+        for (int i = size - 1 ; i > index ; i--)
+            c = c.precedente;
+
+        return c.elemento;
+    }
+
+    /** Aggiunge l'elemento in fondo alla lista, in O(1).
+     * @param e  l'elemento da aggiungere
+     * @return true */
+    @Override
+    public boolean add(E e) {
+        ultima = new Cella<>(e, ultima);
+        size++;
+        modCount++;
+        return true;
+    }
+
+    /** Toglie l'elemento di indice dato, che deve essere l'ultimo, in O(1).
+     * @param index  l'indice dell'ultimo elemento
+     * @return l'elemento tolto
+     * @throws UnsupportedOperationException se l'indice non è quello dell'ultimo
+     * elemento */
+    @Override
+    public E remove(int index) {
+        if (index != size - 1 || size == 0)
+            throw new UnsupportedOperationException();
+
+        E e = ultima.elemento;
+        ultima = ultima.precedente;
+        size--;
+        modCount++;
+        return e;
+    }
+
+    @Override
+    public void clear() {
+        ultima = null;
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Object[] toArray() {
+        Object[] a = new Object[size];
+        int i = size;
+
+        for (Cella<E> c = ultima ; c != null ; c = c.precedente)
+            a[--i] = c.elemento;
+
+        return a;
+    }
+
+    /** L'iteratore scorre una copia degli elementi, fatta in O(size) */
+    @Override
+    public Iterator<E> iterator() { return listIterator(0); }
+
+    /** L'iteratore scorre una copia degli elementi, fatta in O(size), e non
+     * permette modifiche */
+    @Override
+    @SuppressWarnings("unchecked")
+    public ListIterator<E> listIterator(int index) {
+        return Collections.unmodifiableList(Arrays.asList((E[]) toArray())).listIterator(index);
+    }
+
+
+    /**Una cella immutabile: l'elemento e la cella precedente (null per il primo elemento)*/
+    private static final class Cella<E> {
+        Cella(E e, Cella<E> p) {
+            elemento = e;
+            precedente = p;
+        }
+
+        final E elemento;
+        final Cella<E> precedente;
+    }
+
+    private Cella<E> ultima;
+    private int size;
+}
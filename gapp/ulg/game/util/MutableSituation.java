@@ -0,0 +1,92 @@
+package gapp.ulg.game.util;
+
+import gapp.ulg.game.board.GameRuler.Situation;
+import gapp.ulg.game.board.GameRuler.SituationView;
+import gapp.ulg.game.board.Pos;
+
+import java.util.*;
+
+/** Una situazione di gioco modificabile che ricorda le modifiche, così che possano
+ * essere annullate. Serve a implementare
+ * {@link gapp.ulg.game.board.GameRuler.Children}: si copia una sola volta la
+ * disposizione della situazione di partenza e per ogni mossa si fanno le modifiche,
+ * si passa questo oggetto come vista della prossima situazione e si annullano le
+ * modifiche con {@link MutableSituation#undo(int)}, invece di copiare la
+ * disposizione per ogni mossa. Le modifiche funzionano come quelle di una
+ * {@link Map}, quindi la funzione che esegue una mossa su una mappa può ricevere
+ * {@code ms::put} e {@code ms::remove}. Gli oggetti MutableSituation non possono
+ * essere usati contemporaneamente da più thread.
+ * @param <P>  tipo del modello dei pezzi */
+public class MutableSituation<P> implements SituationView<P> {
+    /** Crea una situazione modificabile uguale alla situazione data.
+     * @param s  una situazione
+     * @throws NullPointerException se s è null */
+    public MutableSituation(Situation<P> s) {
+        conf = s.newMap();
+        turn = s.turn;
+        posizioni = new ArrayList<>();
+        pezzi = new ArrayList<>();
+    }
+
+    @Override
+    public P get(Pos p) { return conf.get(p); }
+
+    @Override
+    public int turn() { return turn; }
+
+    /** Ritorna una {@link Situation} con una copia della disposizione attuale.
+     * @return una {@link Situation} uguale a questa situazione */
+    @Override
+    public Situation<P> toSituation() { return new Situation<>(new HashMap<>(conf), turn); }
+
+    /** Mette il pezzo nella posizione, come {@link Map#put(Object, Object)}.
+     * @param p  una posizione
+     * @param pm  un pezzo
+     * @return il pezzo che c'era in p o null */
+    public P put(Pos p, P pm) {
+        P prima = conf.put(p, pm);
+        ricorda(p, prima);
+        return prima;
+    }
+
+    /** Toglie il pezzo nella posizione, come {@link Map#remove(Object)}.
+     * @param p  una posizione
+     * @return il pezzo che c'era in p o null */
+    public P remove(Object p) {
+        P prima = conf.remove(p);
+        if (prima != null) ricorda((Pos) p, prima);
+        return prima;
+    }
+
+    /** Imposta il turno, che non è ripristinato da {@link MutableSituation#undo(int)}.
+     * @param t  il turno (vedi {@link Situation#turn}) */
+    public void setTurn(int t) { turn = t; }
+
+    /** Ritorna un segno che rappresenta le modifiche fatte finora, da passare a
+     * {@link MutableSituation#undo(int)}.
+     * @return il segno delle modifiche fatte finora */
+    public int mark() { return posizioni.size(); }
+
+    /** Annulla, dalla più recente, tutte le modifiche della disposizione fatte dopo
+     * che è stato ottenuto il segno dato.
+     * @param mark  un segno ritornato da {@link MutableSituation#mark()} */
+    public void undo(int mark) {
+        for (int i = posizioni.size() - 1 ; i >= mark ; i--) {
+            if (pezzi.get(i) == null) conf.remove(posizioni.get(i));
+            else conf.put(posizioni.get(i), pezzi.get(i));
+            posizioni.remove(i);
+            pezzi.remove(i);
+        }
+    }
+
+
+    private void ricorda(Pos p, P prima) {
+        posizioni.add(p);
+        pezzi.add(prima);
+    }
+
+    private final Map<Pos,P> conf;
+    private final List<Pos> posizioni;  // Le posizioni modificate, in ordine
+    private final List<P> pezzi;        // Il pezzo che c'era prima di ogni modifica
+    private int turn;
+}
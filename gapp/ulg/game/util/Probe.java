@@ -6,16 +6,30 @@ import gapp.ulg.game.board.PieceModel;
 import gapp.ulg.game.board.Pos;
 
 import static gapp.ulg.game.board.GameRuler.Situation;
+import static gapp.ulg.game.board.GameRuler.SituationView;
+import static gapp.ulg.game.board.GameRuler.Children;
 import static gapp.ulg.game.board.GameRuler.Next;
 import static gapp.ulg.game.board.GameRuler.Mechanics;
 
+import java.io.*;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /** <b>IMPLEMENTARE I METODI INDICATI CON "DA IMPLEMENTARE" SECONDO LE SPECIFICHE
  * DATE NEI JAVADOC. Non modificare le intestazioni dei metodi.</b>
@@ -38,6 +52,14 @@ public class Probe {
         public EncS(Mechanics<P> gM, Situation<P> s) {
             codedSit = code(gM, s);
         }
+
+        /** Come {@link EncS#EncS(Mechanics, Situation)}, ma legge la situazione da
+         * una vista, senza che sia creata una {@link Situation}.
+         * @param gM  la meccanica di un gioco
+         * @param s  la vista di una situazione dello stesso gioco */
+        public EncS(Mechanics<P> gM, SituationView<P> s) {
+            codedSit = code(gM, s);
+        }
         public EncS(byte[] arrayByte) {
             codedSit = arrayByte;
         }
@@ -45,12 +67,16 @@ public class Probe {
         public byte[] codedSit;
 
         public static <P> byte[] code(Mechanics<P> gM, Situation<P> s) {
+            return code(gM, (SituationView<P>) s);
+        }
+
+        public static <P> byte[] code(Mechanics<P> gM, SituationView<P> s) {
 
             BigInteger codedSit = BigInteger.valueOf(0);
-            Map<Pos,P> mappaSit = s.newMap();
 
+            //La situazione è letta tramite get, senza copiarne la mappa;
             for (Pos p : gM.positions) {
-                P pezzo = mappaSit.get(p);
+                P pezzo = s.get(p);
 
                 if (pezzo == null)
                     codedSit = codedSit.multiply(BigInteger.valueOf(3));
@@ -80,7 +106,7 @@ public class Probe {
 
             }
 
-            switch (s.turn) {
+            switch (s.turn()) {
                 case 0:
                     codedSit = codedSit.multiply(BigInteger.valueOf(5));
                 break;
@@ -184,7 +210,7 @@ public class Probe {
                 }
 
                 if (colore != null && specie != null)
-                    mappaPerLaSit.put(gM.positions.get(i), (P) new PieceModel<>(specie, colore));
+                    mappaPerLaSit.put(gM.positions.get(i), (P) PieceModel.of(specie, colore));
             }
 
             return new Situation<>(mappaPerLaSit, turnSit);
@@ -214,6 +240,171 @@ public class Probe {
         }
     }
 
+    /** Un oggetto {@code PackedS} è una codifica compatta di una situazione di gioco
+     * alternativa a {@link EncS}: ogni posizione occupa un numero fisso di bit (da 2
+     * a 4 per i giochi di {@code gapp.ulg}) in un array di {@code long} e il turno è
+     * mantenuto a parte. Gli oggetti {@code PackedS} sono creati e decodificati da un
+     * {@link Packer} relativo al gioco. Gli array non sono mai modificati dopo la
+     * creazione, quindi {@link PackedS#equals(Object)} e {@link PackedS#hashCode()}
+     * non allocano niente e l'hash code è calcolato una sola volta.
+     * @param <P>  tipo del modello dei pezzi */
+    public static class PackedS<P> {
+        PackedS(long[] w, int t) {
+            words = w;
+            turn = t;
+            hash = 31 * Arrays.hashCode(w) + t;
+        }
+
+        /** Il turno della situazione codificata */
+        public final int turn;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            PackedS<?> packedS = (PackedS<?>) o;
+
+            return hash == packedS.hash && turn == packedS.turn && Arrays.equals(words, packedS.words);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        final long[] words;
+        private final int hash;
+    }
+
+    /** Un {@code Packer} codifica e decodifica le situazioni di un gioco come oggetti
+     * {@link PackedS}. Il codice di ogni posizione è 0 se la posizione è vuota e
+     * i + 1 se c'è il pezzo {@code gM.pieces.get(i)}, quindi la codifica è derivata
+     * da {@link Mechanics#pieces} e non dipende dai colori o dalle specie dei pezzi.
+     * Con {@link Packer#encoder()} e {@link Packer#decoder()} si ottengono le funzioni
+     * da passare a {@link Probe#nextSituations(boolean, Next, Function, Function, Set)}
+     * al posto di quelle di {@link EncS}. Un {@code Packer} non è modificabile e
+     * può essere usato contemporaneamente da più thread.
+     * @param <P>  tipo del modello dei pezzi */
+    public static class Packer<P> {
+        /** Crea un {@code Packer} per il gioco con la meccanica data.
+         * @param gM  la meccanica di un gioco
+         * @throws NullPointerException se {@code gM} è null */
+        public Packer(Mechanics<P> gM) {
+            Objects.requireNonNull(gM);
+
+            positions = gM.positions.toArray(new Pos[0]);
+            pieces = new ArrayList<>(gM.pieces);
+
+            //Il numero di bit necessari per i valori da 0 a pieces.size();
+            bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(pieces.size()));
+            perWord = 64 / bits;
+            nWords = (positions.length + perWord - 1) / perWord;
+
+            codici = new HashMap<>();
+
+            for (int i = 0 ; i < pieces.size() ; i++)
+                codici.put(pieces.get(i), i + 1);
+        }
+
+        /** Ritorna il numero di bit usati per ogni posizione.
+         * @return il numero di bit usati per ogni posizione */
+        public int bitsPerPosition() { return bits; }
+
+        /** Ritorna la codifica della situazione data, la situazione è letta tramite
+         * {@link SituationView#get(Pos)} senza copiarne la mappa, quindi può essere
+         * anche la vista passata da {@link Mechanics#forEachChild}.
+         * @param s  una situazione del gioco
+         * @return la codifica della situazione data */
+        public PackedS<P> encode(SituationView<P> s) {
+            long[] w = new long[nWords];
+
+            for (int i = 0 ; i < positions.length ; i++) {
+                P pezzo = s.get(positions[i]);
+
+                if (pezzo != null)
+                    w[i / perWord] |= (long) codici.get(pezzo) << (bits * (i % perWord));
+            }
+
+            return new PackedS<>(w, s.turn());
+        }
+
+        /** Decodifica {@code e} nel buffer dato, che può essere riusato per tutte le
+         * decodifiche, senza allocare niente: {@code buffer[i]} è il pezzo nella
+         * posizione {@code gM.positions.get(i)} o null se è vuota.
+         * @param e  la codifica di una situazione del gioco
+         * @param buffer  un array lungo almeno quanto il numero di posizioni
+         * @return il turno della situazione */
+        public int decode(PackedS<P> e, P[] buffer) {
+            long mask = (1L << bits) - 1;
+
+            for (int i = 0 ; i < positions.length ; i++) {
+                int c = (int) ((e.words[i / perWord] >>> (bits * (i % perWord))) & mask);
+
+                buffer[i] = c == 0 ? null : pieces.get(c - 1);
+            }
+
+            return e.turn;
+        }
+
+        /** Ritorna la situazione codificata da {@code e}.
+         * @param e  la codifica di una situazione del gioco
+         * @return la situazione codificata da {@code e} */
+        public Situation<P> decode(PackedS<P> e) {
+            Map<Pos,P> conf = new HashMap<>();
+            long mask = (1L << bits) - 1;
+
+            for (int i = 0 ; i < positions.length ; i++) {
+                int c = (int) ((e.words[i / perWord] >>> (bits * (i % perWord))) & mask);
+
+                if (c != 0)
+                    conf.put(positions[i], pieces.get(c - 1));
+            }
+
+            return new Situation<>(conf, e.turn);
+        }
+
+        /** Scrive la codifica {@code e} nello stream dato, per salvarla su file.
+         * @param e  la codifica di una situazione del gioco
+         * @param out  lo stream
+         * @throws IOException se la scrittura fallisce */
+        public void write(PackedS<P> e, DataOutput out) throws IOException {
+            out.writeByte(e.turn);
+
+            for (long w : e.words)
+                out.writeLong(w);
+        }
+
+        /** Legge una codifica scritta con {@link Packer#write(PackedS, DataOutput)} da
+         * un {@code Packer} dello stesso gioco.
+         * @param in  lo stream
+         * @return la codifica letta
+         * @throws IOException se la lettura fallisce */
+        public PackedS<P> read(DataInput in) throws IOException {
+            int t = in.readByte();
+            long[] w = new long[nWords];
+
+            for (int i = 0 ; i < nWords ; i++)
+                w[i] = in.readLong();
+
+            return new PackedS<>(w, t);
+        }
+
+        /** @return il numero di byte scritti da {@link Packer#write(PackedS, DataOutput)} */
+        int recordSize() { return 1 + 8 * nWords; }
+
+        /** @return la funzione di codifica, da usare come {@code enc} */
+        public Function<Situation<P>,PackedS<P>> encoder() { return this::encode; }
+
+        /** @return la funzione di decodifica, da usare come {@code dec} */
+        public Function<PackedS<P>,Situation<P>> decoder() { return this::decode; }
+
+        private final Pos[] positions;
+        private final List<P> pieces;
+        private final Map<P,Integer> codici;
+        private final int bits, perWord, nWords;
+    }
+
     /** Un oggetto per rappresentare il risultato del metodo
      * {@link Probe#nextSituations(boolean, Next, Function, Function, Set)}.
      * Chiamiamo grado di una situazione <i>s</i> il numero delle prossime situazioni
@@ -341,4 +532,319 @@ public class Probe {
         return insiemeDaRitornare;
     }
 
+    /** Un livello di situazioni codificate con un {@link Packer}, senza ripetizioni,
+     * diviso in shard in base all'hash delle codifiche: ogni situazione è in un solo
+     * shard. Gli shard sono in memoria o, se il livello è stato creato con una
+     * directory per i file temporanei, in file (uno per shard) che sono letti in
+     * sequenza solamente quando il livello è percorso, quindi la memoria richiesta non
+     * dipende dalla grandezza del livello. Le statistiche {@code min}, {@code max} e
+     * {@code sum} sono quelle di {@link NSResult} relative al livello precedente (0
+     * per il livello iniziale). Il livello va chiuso con {@link Layer#close()} per
+     * cancellare gli eventuali file temporanei.
+     * @param <P>  tipo del modello dei pezzi */
+    public static class Layer<P> implements Iterable<PackedS<P>>, AutoCloseable {
+        /** Statistiche: il minimo e il massimo grado delle situazioni del livello
+         * precedente e la somma di tutti i gradi */
+        public final long min, max, sum;
+
+        /** Ritorna il livello iniziale, con la sola situazione data.
+         * @param packer  il {@code Packer} del gioco
+         * @param s  la situazione iniziale
+         * @param <P>  tipo del modello dei pezzi
+         * @return il livello con la sola situazione data */
+        public static <P> Layer<P> start(Packer<P> packer, Situation<P> s) {
+            Set<PackedS<P>> shard = new HashSet<>();
+            shard.add(packer.encode(s));
+            return new Layer<>(packer, Collections.singletonList(shard), null, 1, 0, 0, 0);
+        }
+
+        /** @return il numero di situazioni del livello */
+        public long size() { return size; }
+
+        /** @return il numero di shard del livello */
+        public int shards() { return inMemoria != null ? inMemoria.size() : file.size(); }
+
+        /** Ritorna le situazioni dello shard i-esimo, leggendole dal file se il
+         * livello non è in memoria. Lo stream va chiuso.
+         * @param i  l'indice di uno shard
+         * @return le situazioni dello shard i-esimo */
+        public Stream<PackedS<P>> shard(int i) {
+            if (inMemoria != null)
+                return inMemoria.get(i).stream();
+
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.get(i))));
+                long n = (Files.size(file.get(i))) / packer.recordSize();
+
+                Iterator<PackedS<P>> it = new Iterator<PackedS<P>>() {
+                    long letti = 0;
+
+                    @Override
+                    public boolean hasNext() { return letti < n; }
+
+                    @Override
+                    public PackedS<P> next() {
+                        if (letti >= n) throw new NoSuchElementException();
+                        letti++;
+
+                        try {
+                            return packer.read(in);
+                        } catch (IOException e) { throw new UncheckedIOException(e); }
+                    }
+                };
+
+                return StreamSupport.stream(Spliterators.spliterator(it, n, Spliterator.DISTINCT | Spliterator.NONNULL), false)
+                        .onClose(() -> { try { in.close(); } catch (IOException e) { throw new UncheckedIOException(e); } });
+            } catch (IOException e) { throw new UncheckedIOException(e); }
+        }
+
+        /** Ritorna le situazioni del livello, uno shard dopo l'altro. Lo stream va
+         * chiuso.
+         * @return le situazioni del livello */
+        public Stream<PackedS<P>> stream() {
+            return IntStream.range(0, shards()).boxed().flatMap(this::shard);
+        }
+
+        /** Ritorna un iteratore sulle situazioni del livello. Se il livello è su file
+         * il file dello shard corrente è chiuso quando lo shard è finito.
+         * @return un iteratore sulle situazioni del livello */
+        @Override
+        public Iterator<PackedS<P>> iterator() {
+            return stream().iterator();
+        }
+
+        /** Cancella gli eventuali file temporanei del livello, che poi non può essere
+         * più percorso. */
+        @Override
+        public void close() {
+            if (file != null)
+                for (Path f : file)
+                    try { Files.deleteIfExists(f); } catch (IOException e) {}
+        }
+
+
+        private Layer(Packer<P> packer, List<Set<PackedS<P>>> inMemoria, List<Path> file,
+                      long size, long min, long max, long sum) {
+            this.packer = packer;
+            this.inMemoria = inMemoria;
+            this.file = file;
+            this.size = size;
+            this.min = min;
+            this.max = max;
+            this.sum = sum;
+        }
+
+        private final Packer<P> packer;
+        private final List<Set<PackedS<P>>> inMemoria;
+        private final List<Path> file;
+        private final long size;
+    }
+
+    /** Ritorna il livello delle prossime situazioni delle situazioni del livello
+     * {@code frontier}, come {@link Probe#nextSituations} ma senza tenere in memoria
+     * l'intero livello. Le prossime situazioni sono divise in {@code shards} shard in
+     * base all'hash della codifica; se {@code spillDir} non è null ogni shard del
+     * livello di partenza scrive le sue prossime situazioni in un file temporaneo per
+     * ogni shard di arrivo, poi ogni shard di arrivo è letto, privato delle
+     * ripetizioni con un {@link HashSet} e riscritto in un solo file, quindi in
+     * memoria c'è al più uno shard per thread. Se {@code spillDir} è null gli shard
+     * sono insiemi concorrenti in memoria. Se {@code parallel} è true gli shard sono
+     * elaborati in parallelo nel pool comune di {@link java.util.concurrent.ForkJoinPool}.
+     * Come {@link Probe#nextSituations} è sensibile all'interruzione del thread in cui
+     * è invocato e in tal caso ritorna null (cancellando i file temporanei creati).
+     * @param parallel  se true il metodo cerca di sfruttare il parallelismo della
+     *                  macchina
+     * @param nextF  la funzione che ritorna le prossime situazioni di una situazione
+     * @param packer  il {@code Packer} del gioco, lo stesso di {@code frontier}
+     * @param frontier  il livello di partenza
+     * @param shards  il numero di shard del livello ritornato, almeno 1
+     * @param spillDir  la directory per i file temporanei o null
+     * @param <P>  tipo del modello dei pezzi
+     * @return il livello delle prossime situazioni o null se l'esecuzione è
+     * interrotta
+     * @throws UncheckedIOException se la lettura o la scrittura dei file fallisce */
+    public static <P> Layer<P> nextLayer(boolean parallel, Next<P> nextF, Packer<P> packer,
+                                         Layer<P> frontier, int shards, Path spillDir) {
+        Objects.requireNonNull(nextF);
+        return nextLayer(parallel, (Children<P>) (s, visit) -> nextF.get(s).forEach(visit), packer, frontier,
+                shards, spillDir);
+    }
+
+    /** Come {@link Probe#nextLayer(boolean, Next, Packer, Layer, int, Path)}, ma le
+     * prossime situazioni sono visitate con
+     * {@link Mechanics#forEachChild(Situation, java.util.function.BiConsumer)} e
+     * codificate senza creare una {@link Situation} per ognuna.
+     * @param parallel  se true il metodo cerca di sfruttare il parallelismo della
+     *                  macchina
+     * @param gM  la meccanica del gioco
+     * @param packer  il {@code Packer} del gioco, lo stesso di {@code frontier}
+     * @param frontier  il livello di partenza
+     * @param shards  il numero di shard del livello ritornato, almeno 1
+     * @param spillDir  la directory per i file temporanei o null
+     * @param <P>  tipo del modello dei pezzi
+     * @return il livello delle prossime situazioni o null se l'esecuzione è
+     * interrotta
+     * @throws UncheckedIOException se la lettura o la scrittura dei file fallisce */
+    public static <P> Layer<P> nextLayer(boolean parallel, Mechanics<P> gM, Packer<P> packer,
+                                         Layer<P> frontier, int shards, Path spillDir) {
+        return nextLayer(parallel, (Children<P>) gM::forEachChild, packer, frontier, shards, spillDir);
+    }
+
+    private static <P> Layer<P> nextLayer(boolean parallel, Children<P> figli, Packer<P> packer,
+                                          Layer<P> frontier, int shards, Path spillDir) {
+        Thread chiamante = Thread.currentThread();
+        LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        LongAccumulator max = new LongAccumulator(Math::max, 0);
+        LongAdder sum = new LongAdder();
+        List<Set<PackedS<P>>> inMemoria = null;
+        //I file grezzi (con ripetizioni), grezzi[i][k] dallo shard di partenza i allo shard di arrivo k;
+        Path[][] grezzi = spillDir == null ? null : new Path[frontier.shards()][shards];
+        List<Path> file = null;
+
+        if (spillDir == null) {
+            inMemoria = new ArrayList<>();
+
+            for (int k = 0 ; k < shards ; k++)
+                inMemoria.add(ConcurrentHashMap.newKeySet());
+        }
+
+        List<Set<PackedS<P>>> destinazioni = inMemoria;
+
+        //Il primo errore di uno shard, che ferma anche gli altri;
+        AtomicReference<Throwable> errore = new AtomicReference<>();
+
+        try {
+            //Espansione: ogni shard di partenza è indipendente dagli altri;
+            perOgni(parallel, frontier.shards(), errore, i -> {
+                DataOutputStream[] out = grezzi == null ? null : new DataOutputStream[shards];
+
+                try (Stream<PackedS<P>> shard = frontier.shard(i)) {
+                    Iterator<PackedS<P>> it = shard.iterator();
+
+                    while (it.hasNext()) {
+                        if (chiamante.isInterrupted() || errore.get() != null)
+                            throw new CancellationException();
+
+                        Set<PackedS<P>> prossime = new HashSet<>();
+
+                        figli.forEach(packer.decode(it.next()), (m, n) -> prossime.add(packer.encode(n)));
+
+                        min.accumulate(prossime.size());
+                        max.accumulate(prossime.size());
+                        sum.add(prossime.size());
+
+                        for (PackedS<P> n : prossime) {
+                            int k = Math.floorMod(n.hashCode(), shards);
+
+                            if (destinazioni != null)
+                                destinazioni.get(k).add(n);
+                            else {
+                                if (out[k] == null) {
+                                    grezzi[i][k] = Files.createTempFile(spillDir, "layer", ".raw");
+                                    out[k] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(grezzi[i][k])));
+                                }
+
+                                packer.write(n, out[k]);
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    if (out != null)
+                        for (DataOutputStream o : out)
+                            if (o != null)
+                                try { o.close(); } catch (IOException e) {}
+                }
+            });
+
+            if (grezzi != null) {
+                file = new ArrayList<>(Collections.nCopies(shards, null));
+                List<Path> risultato = file;
+
+                //Eliminazione delle ripetizioni: ogni shard di arrivo è indipendente dagli altri;
+                perOgni(parallel, shards, errore, k -> {
+                    Set<PackedS<P>> shard = new HashSet<>();
+
+                    try {
+                        for (Path[] g : grezzi)
+                            if (g[k] != null) {
+                                if (chiamante.isInterrupted() || errore.get() != null)
+                                    throw new CancellationException();
+
+                                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(g[k])))) {
+                                    for (long n = Files.size(g[k]) / packer.recordSize() ; n > 0 ; n--)
+                                        shard.add(packer.read(in));
+                                }
+
+                                Files.delete(g[k]);
+                                g[k] = null;
+                            }
+
+                        Path f = Files.createTempFile(spillDir, "layer", ".bin");
+                        risultato.set(k, f);
+
+                        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(f)))) {
+                            for (PackedS<P> n : shard)
+                                packer.write(n, out);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        } catch (RuntimeException e) {
+            //Interrotto o errore di I/O: tutti gli shard sono terminati, quindi cancello i file temporanei creati;
+            if (grezzi != null)
+                for (Path[] g : grezzi)
+                    for (Path f : g)
+                        if (f != null) try { Files.deleteIfExists(f); } catch (IOException e2) {}
+
+            if (file != null)
+                for (Path f : file)
+                    if (f != null) try { Files.deleteIfExists(f); } catch (IOException e2) {}
+
+            if (e instanceof CancellationException)
+                return null;
+
+            throw e;
+        }
+
+        long size = 0;
+
+        if (inMemoria != null)
+            for (Set<PackedS<P>> shard : inMemoria)
+                size += shard.size();
+        else
+            for (Path f : file)
+                try { size += Files.size(f) / packer.recordSize(); } catch (IOException e) { throw new UncheckedIOException(e); }
+
+        long mn = min.get() == Long.MAX_VALUE ? 0 : min.get();
+        return new Layer<>(packer, inMemoria, file, size, mn, max.get(), sum.sum());
+    }
+
+    /**Esegue azione per gli indici da 0 a n - 1, in parallelo se parallel è true.
+       La prima eccezione è messa in errore (così le altre esecuzioni si possono
+       fermare) ed è lanciata solamente quando tutte le esecuzioni sono terminate,
+       ad es. perché non ci siano più file in scrittura quando sono cancellati*/
+    private static void perOgni(boolean parallel, int n, AtomicReference<Throwable> errore, IntConsumer azione) {
+        IntStream indici = IntStream.range(0, n);
+
+        (parallel ? indici.parallel() : indici).forEach(i -> {
+            if (errore.get() != null)
+                return;
+
+            try {
+                azione.accept(i);
+            } catch (RuntimeException | Error e) {
+                errore.compareAndSet(null, e);
+            }
+        });
+
+        Throwable e = errore.get();
+
+        if (e instanceof RuntimeException) throw (RuntimeException) e;
+        if (e instanceof Error) throw (Error) e;
+    }
+
 }
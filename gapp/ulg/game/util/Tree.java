@@ -602,28 +602,28 @@ public class Tree<P> implements PlayerGUI.MoveChooser<P> {
         Objects.requireNonNull(d);
 
         if (d.equals(Board.Dir.UP))
-            posDaRit = new Pos(p.b, p.t + np);
+            posDaRit = Pos.of(p.b, p.t + np);
 
         else if (d.equals(Board.Dir.UP_R))
-            posDaRit = new Pos(p.b + np, p.t + np);
+            posDaRit = Pos.of(p.b + np, p.t + np);
 
         else if (d.equals(Board.Dir.RIGHT))
-            posDaRit = new Pos(p.b + np, p.t);
+            posDaRit = Pos.of(p.b + np, p.t);
 
         else if (d.equals(Board.Dir.DOWN_R))
-            posDaRit = new Pos(p.b + np, p.t - np);
+            posDaRit = Pos.of(p.b + np, p.t - np);
 
         else if (d.equals(Board.Dir.DOWN))
-            posDaRit = new Pos(p.b, p.t - np);
+            posDaRit = Pos.of(p.b, p.t - np);
 
         else if (d.equals(Board.Dir.DOWN_L))
-            posDaRit = new Pos(p.b - np, p.t - np);
+            posDaRit = Pos.of(p.b - np, p.t - np);
 
         else if (d.equals(Board.Dir.LEFT))
-            posDaRit = new Pos(p.b - np, p.t);
+            posDaRit = Pos.of(p.b - np, p.t);
 
         else if (d.equals(Board.Dir.UP_L))
-            posDaRit = new Pos(p.b - np, p.t + np);
+            posDaRit = Pos.of(p.b - np, p.t + np);
 
         return posDaRit;
     }
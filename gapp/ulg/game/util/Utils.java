@@ -6,7 +6,9 @@ import gapp.ulg.game.GameFactory;
 import static gapp.ulg.game.board.PieceModel.Species;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.Function;
 
@@ -84,6 +86,34 @@ public class Utils {
 
     }
 
+    /** Ritorna la tabella delle adiacenze della board b: per ogni direzione
+     * (indicizzata con {@link Board.Dir#ordinal()}) e per ogni posizione
+     * (indicizzata come nella lista {@link Board#positions()}) l'indice della
+     * posizione adiacente, o -1 se non c'è. Serve ai {@link Playout} che
+     * rappresentano la board con array di interi.
+     * @param b  una board
+     * @return la tabella delle adiacenze della board b
+     * @throws NullPointerException se b è null */
+    public static int[][] adjacencies(Board<?> b) {
+
+        List<Pos> posizioni = b.positions();
+        Map<Pos, Integer> indici = new HashMap<>();
+
+        for (int i = 0 ; i < posizioni.size() ; i++)
+            indici.put(posizioni.get(i), i);
+
+        Board.Dir[] direzioni = Board.Dir.values();
+        int[][] tabella = new int[direzioni.length][posizioni.size()];
+
+        for (Board.Dir d : direzioni)
+            for (int i = 0 ; i < posizioni.size() ; i++) {
+                Pos adiacente = b.adjacent(posizioni.get(i), d);
+                tabella[d.ordinal()][i] = adiacente == null ? -1 : indici.get(adiacente);
+            }
+
+        return tabella;
+    }
+
     /** Imposta i valori dei parametri specificati nella GameFactory gf, i nomi dei
      * giocatori pp poi ottiene il GameRuler dalla gf, passa a ogni giocatore una
      * copia del GameRuler e gioca la partita del GameRuler con i giocatori dati.
@@ -0,0 +1,140 @@
+package gapp.ulg.game.util;
+
+import gapp.ulg.game.board.GameRuler.Mechanics;
+import gapp.ulg.game.board.GameRuler.Situation;
+import gapp.ulg.game.board.Pos;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+
+/** Tabella di chiavi di Zobrist per le situazioni di un gioco. Per ogni coppia
+ * (posizione, pezzo) di una {@link Mechanics} e per ogni valore del turno di una
+ * {@link Situation} (da -np a np) c'è una chiave a 64 bit. Lo hash di una
+ * situazione è lo XOR delle chiavi dei pezzi presenti sulla board e della chiave
+ * del turno, così che un GameRuler lo può aggiornare in modo incrementale: mettere
+ * o togliere il pezzo pm dalla posizione p equivale a fare lo XOR con
+ * {@link Zobrist#key(Pos, Object)}.
+ * <br>
+ * Le chiavi sono generate con un seme fisso, quindi due tabelle create da
+ * meccaniche con le stesse posizioni e gli stessi pezzi (nello stesso ordine)
+ * sono uguali e gli hash sono confrontabili anche tra copie diverse di un
+ * GameRuler. Gli oggetti Zobrist sono immutabili e quindi possono essere condivisi
+ * tra più thread.
+ * @param <P>  tipo del modello dei pezzi */
+public class Zobrist<P> {
+    /** Crea la tabella di chiavi per le posizioni, i pezzi e il numero di
+     * giocatori della meccanica data.
+     * @param gM  la meccanica di un gioco
+     * @throws NullPointerException se gM è null */
+    public Zobrist(Mechanics<P> gM) {
+        this(Objects.requireNonNull(gM).positions, gM.pieces, gM.np);
+    }
+
+    /** Crea la tabella di chiavi per le posizioni, i pezzi e il numero di
+     * giocatori dati, che devono essere gli stessi dei campi
+     * {@link Mechanics#positions}, {@link Mechanics#pieces} e {@link Mechanics#np}
+     * della meccanica del gioco. Serve ai GameRuler che costruiscono la tabella
+     * prima della loro meccanica.
+     * @param pp  le posizioni della board
+     * @param pcs  i pezzi usati nel gioco
+     * @param np  il numero di giocatori
+     * @throws NullPointerException se pp o pcs è null */
+    public Zobrist(List<Pos> pp, List<P> pcs, int np) {
+        positions = Objects.requireNonNull(pp);
+        pieces = Objects.requireNonNull(pcs);
+        this.np = np;
+        int maxB = 0, maxT = 0;
+        for (Pos p : positions) {
+            maxB = Math.max(maxB, p.b);
+            maxT = Math.max(maxT, p.t);
+        }
+        altezza = maxT + 1;
+        indici = new int[(maxB + 1) * altezza];
+        Arrays.fill(indici, -1);
+        for (int i = 0 ; i < positions.size() ; i++) {
+            Pos p = positions.get(i);
+            indici[p.b * altezza + p.t] = i;
+        }
+        SplittableRandom rnd = new SplittableRandom(SEME);
+        chiavi = new long[positions.size() * pieces.size()];
+        for (int i = 0 ; i < chiavi.length ; i++) chiavi[i] = rnd.nextLong();
+        chiaviTurno = new long[2 * np + 1];
+        for (int i = 0 ; i < chiaviTurno.length ; i++) chiaviTurno[i] = rnd.nextLong();
+    }
+
+    /** Ritorna la chiave del pezzo pm nella posizione p, o 0 se pm è null.
+     * @param p  una posizione
+     * @param pm  un pezzo o null
+     * @return la chiave del pezzo pm nella posizione p, o 0 se pm è null
+     * @throws IllegalArgumentException se p non è una posizione della meccanica o
+     * pm non è uno dei suoi pezzi */
+    public long key(Pos p, P pm) {
+        if (pm == null) return 0;
+        return chiavi[indice(p) * pieces.size() + pezzo(pm)];
+    }
+
+    /** Ritorna la chiave del turno t, cioè del valore {@link Situation#turn}.
+     * @param t  un indice di turnazione o un intero tra -np e 0
+     * @return la chiave del turno t
+     * @throws IllegalArgumentException se t è fuori dall'intervallo [-np, np] */
+    public long turn(int t) {
+        if (t < -np || t > np) throw new IllegalArgumentException("Turno non valido");
+        return chiaviTurno[t + np];
+    }
+
+    /** Ritorna lo hash della disposizione dei pezzi data, senza la chiave del turno.
+     * @param c  funzione che per ogni posizione ritorna il pezzo o null
+     * @return lo hash della disposizione dei pezzi data */
+    public long hash(Function<Pos,P> c) {
+        long h = 0;
+        for (Pos p : positions) {
+            P pm = c.apply(p);
+            if (pm != null) h ^= key(p, pm);
+        }
+        return h;
+    }
+
+    /** Ritorna lo hash della situazione data, calcolato su tutta la board. Per
+     * la situazione corrente di un GameRuler è uguale al valore aggiornato in modo
+     * incrementale da {@link gapp.ulg.game.board.GameRuler#hash()}.
+     * @param s  una situazione
+     * @return lo hash della situazione data */
+    public long hash(Situation<P> s) {
+        return hash(s::get) ^ turn(s.turn);
+    }
+
+    /** Ritorna il valore di {@link Situation#turn} per lo stato di un GameRuler
+     * che ha il turno e il risultato dati, cioè il turno se la partita non è
+     * terminata, 0 se è patta e -w se ha vinto il giocatore w.
+     * @param turn  il turno del giocatore di turno
+     * @param result  il risultato della partita, -1 se non è terminata
+     * @return il valore di {@link Situation#turn} corrispondente */
+    public static int situationTurn(int turn, int result) {
+        return result == -1 ? turn : -result;
+    }
+
+
+    private static final long SEME = 0x9E3779B97F4A7C15L;
+
+    private int indice(Pos p) {
+        int b = p.b, t = p.t, i = b * altezza + t;
+        if (t >= altezza || i >= indici.length || indici[i] < 0)
+            throw new IllegalArgumentException("Posizione non valida");
+        return indici[i];
+    }
+
+    private int pezzo(P pm) {
+        for (int i = 0 ; i < pieces.size() ; i++)
+            if (pieces.get(i) == pm || pieces.get(i).equals(pm)) return i;
+        throw new IllegalArgumentException("Pezzo non valido");
+    }
+
+    private final List<Pos> positions;
+    private final List<P> pieces;
+    private final int np, altezza;
+    private final int[] indici;
+    private final long[] chiavi, chiaviTurno;
+}
@@ -2,8 +2,12 @@ package gapp.ulg.games;
 
 import gapp.ulg.game.board.*;
 import gapp.ulg.game.util.BoardOct;
+import gapp.ulg.game.util.MutableSituation;
+import gapp.ulg.game.util.Utils;
+import gapp.ulg.game.util.Zobrist;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -27,7 +31,10 @@ public class G_rs_BKT implements GameRuler<PieceModel<Species>> {
         history = new ArrayList<>();
         Map<Pos,PieceModel<Species>> c = new HashMap<>();
         start(c::put);
-        gM = new Mechanics<>((time > 0 ? time : -1), PIECES, board.positions(), 2, new Situation<>(c,1), this::next);
+        gM = new Mechanics<>((time > 0 ? time : -1), PIECES, board.positions(), 2, new Situation<>(c,1), this::next, this::children);
+        zobrist = new Zobrist<>(gM);
+        hashes = new ArrayList<>();
+        boardHash = zobrist.hash(board::get);
     }
 
     @Override
@@ -71,6 +78,7 @@ public class G_rs_BKT implements GameRuler<PieceModel<Species>> {
         Objects.requireNonNull(m);
         if (gResult != -1) throw new IllegalStateException();
         history.add(toSituation(unModBoard, currTurn));
+        hashes.add(boardHash);
         if (!validMoves().contains(m)) {        // Mossa non valida, vince l'altro giocatore
             gResult = 3 - currTurn;    // Indice dell'altro giocatore
             return false;
@@ -79,7 +87,7 @@ public class G_rs_BKT implements GameRuler<PieceModel<Species>> {
             gResult = 3 - currTurn;    // Indice dell'altro giocatore
             return true;
         }
-        move((p,pm) -> board.put(pm, p), board::remove, unModBoard::adjacent, m);
+        move(this::put, this::remove, unModBoard::adjacent, m);
         currTurn = 3 - currTurn;      // Il turno passa all'altro giocatore
         gResult = check(board::get);
         return true;
@@ -90,6 +98,7 @@ public class G_rs_BKT implements GameRuler<PieceModel<Species>> {
         if (history.isEmpty()) return false;
         Situation<PieceModel<Species>> s = history.remove(history.size()-1);
         toBoard(s, board);
+        boardHash = hashes.remove(hashes.size()-1);
         gResult = -1;
         currTurn = s.turn;
         return true;
@@ -118,6 +127,26 @@ public class G_rs_BKT implements GameRuler<PieceModel<Species>> {
     @Override
     public Mechanics<PieceModel<Species>> mechanics() { return gM; }
 
+    @Override
+    public long hash() { return boardHash ^ zobrist.turn(Zobrist.situationTurn(currTurn, gResult)); }
+
+    /** Il {@link Playout} rappresenta la board con un array di interi (0 vuota, 1
+     * nero, 2 bianco) indicizzato come {@link Board#positions()}. Il codice di una
+     * mossa è 3*p+i, dove p è l'indice della posizione del pedone e i l'indice della
+     * direzione (diagonale sinistra, avanti, diagonale destra). Se il giocatore di
+     * turno non ha mosse la partita termina come se avesse abbandonato. */
+    @Override
+    public Playout playout() {
+        List<Pos> pp = board.positions();
+        int[] c = new int[pp.size()];
+        for (int i = 0 ; i < c.length ; i++) {
+            PieceModel<Species> pm = board.get(pp.get(i));
+            if (pm != null) c[i] = pm.equals(NERO) ? 1 : 2;
+        }
+        int[][] adj = ADJACENCIES.computeIfAbsent(name, k -> Utils.adjacencies(board));
+        return new BKTPlayout(adj, c, currTurn, gResult);
+    }
+
 
 
     private static <P> void move(BiConsumer<Pos,P> put, Function<Pos,P> remove, BiFunction<Pos,Dir,Pos> adj, Move<P> m) {
@@ -144,6 +173,18 @@ public class G_rs_BKT implements GameRuler<PieceModel<Species>> {
         }
     }
 
+    /** Mette il pezzo nella posizione della board aggiornando lo hash */
+    private void put(Pos p, PieceModel<Species> pm) {
+        boardHash ^= zobrist.key(p, board.put(pm, p)) ^ zobrist.key(p, pm);
+    }
+
+    /** Rimuove il pezzo dalla posizione della board aggiornando lo hash */
+    private PieceModel<Species> remove(Pos p) {
+        PieceModel<Species> pm = board.remove(p);
+        boardHash ^= zobrist.key(p, pm);
+        return pm;
+    }
+
     private static <P> Situation<P> toSituation(Board<P> b, int t) {
         Map<Pos,P> conf = new HashMap<>();
         b.get().forEach(p -> conf.put(p, b.get(p)));
@@ -163,8 +204,8 @@ public class G_rs_BKT implements GameRuler<PieceModel<Species>> {
         return millis < 60_000 ? (millis/1000)+"s" : (millis/60_000)+"m";
     }
 
-    private static final PieceModel<Species> NERO = new PieceModel<>(Species.PAWN, "nero"),
-            BIANCO = new PieceModel<>(Species.PAWN, "bianco");
+    private static final PieceModel<Species> NERO = PieceModel.of(Species.PAWN, "nero"),
+            BIANCO = PieceModel.of(Species.PAWN, "bianco");
     private static final List<PieceModel<Species>> PIECES = Collections.unmodifiableList(Arrays.asList(NERO, BIANCO));
 
     /** Crea una copia (profonda) dell'oggetto Breakthrough dato
@@ -184,31 +225,45 @@ public class G_rs_BKT implements GameRuler<PieceModel<Species>> {
         gResult = o.gResult;
         Map<Pos,PieceModel<Species>> c = new HashMap<>();
         start(c::put);
-        gM = new Mechanics<>(o.gM.time, PIECES, board.positions(), 2, new Situation<>(c,1), this::next);
+        gM = new Mechanics<>(o.gM.time, PIECES, board.positions(), 2, new Situation<>(c,1), this::next, this::children);
+        zobrist = o.zobrist;             // Può essere condivisa perché immodificabile
+        hashes = new ArrayList<>(o.hashes);
+        boardHash = o.boardHash;
     }
 
     private void start(BiConsumer<Pos,PieceModel<Species>> put) {
         int w = board.width(), h = board.height();
         for (int t = 0 ; t <= 1 ; t++)
-            for (int b = 0 ; b < w ; b++) put.accept(new Pos(b, t), BIANCO);
+            for (int b = 0 ; b < w ; b++) put.accept(Pos.of(b, t), BIANCO);
         for (int t = h-2 ; t <= h-1 ; t++)
-            for (int b = 0 ; b < w ; b++) put.accept(new Pos(b, t), NERO);
+            for (int b = 0 ; b < w ; b++) put.accept(Pos.of(b, t), NERO);
     }
 
     private Map<Move<PieceModel<Species>>,Situation<PieceModel<Species>>> next(Situation<PieceModel<Species>> s) {
         Objects.requireNonNull(s);
         Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>> sMap = new HashMap<>();
         if (s.turn <= 0) return sMap;
+        children(s, (m, v) -> sMap.put(m, v.toSituation()));
+        if (sMap.isEmpty()) return null;   // Situazione non valida
+        return sMap;
+    }
+
+    /** Visita le prossime situazioni di s (vedi {@link Children}) facendo e
+     * annullando ogni mossa su un'unica copia della disposizione di s */
+    private void children(Situation<PieceModel<Species>> s,
+                          BiConsumer<Move<PieceModel<Species>>,SituationView<PieceModel<Species>>> visit) {
+        Objects.requireNonNull(s);
+        Objects.requireNonNull(visit);
+        if (s.turn <= 0) return;
+        MutableSituation<PieceModel<Species>> cNext = new MutableSituation<>(s);
         for (Move<PieceModel<Species>> m : validMoves(s::get, s.turn)) {
-            Map<Pos, PieceModel<Species>> cNext = s.newMap();
+            int mark = cNext.mark();
             move(cNext::put, cNext::remove, unModBoard::adjacent, m);
-            int tNext = 3 - s.turn;
             int r = check(cNext::get);
-            if (r != -1) tNext = -r;
-            sMap.put(m, new Situation<>(cNext, tNext));
+            cNext.setTurn(r != -1 ? -r : 3 - s.turn);
+            visit.accept(m, cNext);
+            cNext.undo(mark);        // Annulla la mossa
         }
-        if (sMap.isEmpty()) return null;   // Situazione non valida
-        return sMap;
     }
 
     /** Ritorna l'insieme delle mosse valide (esclusa {@link Move.Kind#RESIGN}) per
@@ -245,9 +300,9 @@ public class G_rs_BKT implements GameRuler<PieceModel<Species>> {
     private int check(Function<Pos,PieceModel<Species>> c) {
         int w = board.width(), h = board.height();
         for (int b = 0 ; b < w ; b++)
-            if (NERO.equals(c.apply(new Pos(b, 0)))) return 1;
+            if (NERO.equals(c.apply(Pos.of(b, 0)))) return 1;
         for (int b = 0 ; b < w ; b++)
-            if (BIANCO.equals(c.apply(new Pos(b, h-1)))) return 2;
+            if (BIANCO.equals(c.apply(Pos.of(b, h-1)))) return 2;
         int[] count = {0,0};
         for (Pos p : board.positions()) {
             PieceModel<Species> pm = c.apply(p);
@@ -260,12 +315,87 @@ public class G_rs_BKT implements GameRuler<PieceModel<Species>> {
     }
 
 
+    /** Il Playout di Breakthrough. Dopo ogni mossa le mosse del giocatore di turno
+     * sono calcolate in un array riusato. */
+    private static class BKTPlayout implements Playout {
+        private BKTPlayout(int[][] adj, int[] c, int turn, int result) {
+            this.adj = adj;
+            start = c;
+            startTurn = turn;
+            startResult = result;
+            cells = new int[c.length];
+            moves = new int[3*c.length];
+            reset();
+        }
+
+        @Override
+        public int turn() { return result == -1 ? turn : 0; }
+
+        @Override
+        public int result() { return result; }
+
+        @Override
+        public int randomMove(Random rnd) { return result == -1 ? moves[rnd.nextInt(nMoves)] : -1; }
+
+        @Override
+        public void apply(int m) {
+            if (result != -1) throw new IllegalStateException();
+            int from = m / 3, d = DIRS[turn-1][m % 3], to = adj[d][from];
+            if (cells[to] != 0) count[2-turn]--;  // Cattura del pedone avversario
+            cells[to] = turn;
+            cells[from] = 0;
+            if (adj[DIRS[turn-1][1]][to] < 0 || count[2-turn] == 0) result = turn;  // Ultima riga o nessun pedone avversario
+            turn = 3 - turn;
+            if (result == -1) genMoves();
+        }
+
+        @Override
+        public void reset() {
+            System.arraycopy(start, 0, cells, 0, cells.length);
+            turn = startTurn;
+            result = startResult;
+            count[0] = count[1] = 0;
+            for (int x : cells) if (x != 0) count[x-1]++;
+            if (result == -1) genMoves();
+        }
+
+        /** Calcola le mosse del giocatore di turno, se non ce ne sono vince l'altro */
+        private void genMoves() {
+            nMoves = 0;
+            int[] dirs = DIRS[turn-1];
+            for (int p = 0 ; p < cells.length ; p++) {
+                if (cells[p] != turn) continue;
+                for (int i = 0 ; i < 3 ; i++) {
+                    int pp = adj[dirs[i]][p];
+                    if (pp >= 0 && (cells[pp] == 0 || (i != 1 && cells[pp] != turn)))
+                        moves[nMoves++] = 3*p + i;
+                }
+            }
+            if (nMoves == 0) result = 3 - turn;
+        }
+
+        private static final int[][] DIRS = {
+                {Dir.DOWN_L.ordinal(), Dir.DOWN.ordinal(), Dir.DOWN_R.ordinal()},
+                {Dir.UP_L.ordinal(), Dir.UP.ordinal(), Dir.UP_R.ordinal()}};
+
+        private final int[][] adj;
+        private final int[] start, cells, moves, count = new int[2];
+        private final int startTurn, startResult;
+        private int turn, result, nMoves;
+    }
+
+    private static final Map<String,int[][]> ADJACENCIES = new ConcurrentHashMap<>();  // Le adiacenze per i Playout, per nome del gioco
+
+
     private final String name;
     private final Board<PieceModel<Species>> board;
     private final Board<PieceModel<Species>> unModBoard;
     private final List<String> playerNames;
     private final List<Situation<PieceModel<Species>>> history;
     private final Mechanics<PieceModel<Species>> gM;
+    private final Zobrist<PieceModel<Species>> zobrist;
+    private final List<Long> hashes;     // Gli hash della board prima di ogni mossa, in parallelo alla history
+    private long boardHash;              // Lo hash della board senza il turno
     private int currTurn;
     private int gResult;
 }
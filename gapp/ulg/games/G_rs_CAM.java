@@ -2,6 +2,9 @@ package gapp.ulg.games;
 
 import gapp.ulg.game.board.*;
 import gapp.ulg.game.util.BoardOct;
+import gapp.ulg.game.util.MutableSituation;
+import gapp.ulg.game.util.Utils;
+import gapp.ulg.game.util.Zobrist;
 
 import java.util.*;
 import java.util.function.BiConsumer;
@@ -26,7 +29,10 @@ public class G_rs_CAM implements GameRuler<PieceModel<Species>> {
         history = new ArrayList<>();
         Map<Pos,PieceModel<Species>> c = new HashMap<>();
         start(c::put);
-        gM = new Mechanics<>((time > 0 ? time : -1), PIECES, board.positions(), 2, new Situation<>(c,1), this::next);
+        gM = new Mechanics<>((time > 0 ? time : -1), PIECES, board.positions(), 2, new Situation<>(c,1), this::next, this::children);
+        zobrist = new Zobrist<>(gM);
+        hashes = new ArrayList<>();
+        boardHash = zobrist.hash(board::get);
     }
 
     @Override
@@ -68,6 +74,7 @@ public class G_rs_CAM implements GameRuler<PieceModel<Species>> {
         Objects.requireNonNull(m);
         if (gResult != -1) throw new IllegalStateException();
         history.add(toSituation(unModBoard, currTurn));
+        hashes.add(boardHash);
         if (!validMoves().contains(m)) {        // Mossa non valida, vince l'altro giocatore
             gResult = 3 - currTurn;    // Indice dell'altro giocatore
             return false;
@@ -76,7 +83,7 @@ public class G_rs_CAM implements GameRuler<PieceModel<Species>> {
             gResult = 3 - currTurn;    // Indice dell'altro giocatore
             return true;
         }
-        move((p,pm) -> board.put(pm, p), board::remove, unModBoard::adjacent, m);
+        move(this::put, this::remove, unModBoard::adjacent, m);
         currTurn = 3 - currTurn;      // Il turno passa all'altro giocatore
         gResult = check(board::get);
         if (gResult == -1) {
@@ -91,6 +98,7 @@ public class G_rs_CAM implements GameRuler<PieceModel<Species>> {
         if (history.isEmpty()) return false;
         Situation<PieceModel<Species>> s = history.remove(history.size()-1);
         toBoard(s, board);
+        boardHash = hashes.remove(hashes.size()-1);
         gResult = -1;
         currTurn = s.turn;
         return true;
@@ -119,6 +127,25 @@ public class G_rs_CAM implements GameRuler<PieceModel<Species>> {
     @Override
     public Mechanics<PieceModel<Species>> mechanics() { return gM; }
 
+    @Override
+    public long hash() { return boardHash ^ zobrist.turn(Zobrist.situationTurn(currTurn, gResult)); }
+
+    /** Il {@link Playout} rappresenta la board con un array di interi indicizzato
+     * come {@link Board#positions()}, con il colore del pezzo (1 nero, 2 bianco) più
+     * 4 se è un cavaliere, e genera le mosse con le stesse regole di
+     * {@link G_rs_CAM#validMoves()}. Il codice di una mossa è il suo indice tra le
+     * mosse del giocatore di turno. */
+    @Override
+    public Playout playout() {
+        List<Pos> pp = board.positions();
+        int[] c = new int[pp.size()];
+        for (int i = 0 ; i < c.length ; i++) {
+            PieceModel<Species> pm = board.get(pp.get(i));
+            if (pm != null) c[i] = (pm.color.equals(P_NERO.color) ? 1 : 2) + (pm.species == Species.KNIGHT ? 4 : 0);
+        }
+        return new CAMPlayout(c, currTurn, gResult);
+    }
+
 
 
     private static <P> void move(BiConsumer<Pos,P> put, Function<Pos,P> remove, BiFunction<Pos,Dir,Pos> adj, Move<P> m) {
@@ -145,6 +172,18 @@ public class G_rs_CAM implements GameRuler<PieceModel<Species>> {
         }
     }
 
+    /** Mette il pezzo nella posizione della board aggiornando lo hash */
+    private void put(Pos p, PieceModel<Species> pm) {
+        boardHash ^= zobrist.key(p, board.put(pm, p)) ^ zobrist.key(p, pm);
+    }
+
+    /** Rimuove il pezzo dalla posizione della board aggiornando lo hash */
+    private PieceModel<Species> remove(Pos p) {
+        PieceModel<Species> pm = board.remove(p);
+        boardHash ^= zobrist.key(p, pm);
+        return pm;
+    }
+
     private static <P> Situation<P> toSituation(Board<P> b, int t) {
         Map<Pos,P> conf = new HashMap<>();
         b.get().forEach(p -> conf.put(p, b.get(p)));
@@ -159,13 +198,13 @@ public class G_rs_CAM implements GameRuler<PieceModel<Species>> {
         }
     }
 
-    private static final PieceModel<Species> P_NERO = new PieceModel<>(Species.PAWN, "nero"),
-            K_NERO = new PieceModel<>(Species.KNIGHT, "nero"),
-            P_BIANCO = new PieceModel<>(Species.PAWN, "bianco"),
-            K_BIANCO = new PieceModel<>(Species.KNIGHT, "bianco");
+    private static final PieceModel<Species> P_NERO = PieceModel.of(Species.PAWN, "nero"),
+            K_NERO = PieceModel.of(Species.KNIGHT, "nero"),
+            P_BIANCO = PieceModel.of(Species.PAWN, "bianco"),
+            K_BIANCO = PieceModel.of(Species.KNIGHT, "bianco");
     private static final List<PieceModel<Species>> PIECES = Collections.unmodifiableList(Arrays.asList(P_NERO, K_NERO, P_BIANCO, K_BIANCO));
-    private static final List<List<Pos>> CASTLES = Arrays.asList(Arrays.asList(new Pos(5,15), new Pos(6,15)),
-            Arrays.asList(new Pos(5,0), new Pos(6,0)));
+    private static final List<List<Pos>> CASTLES = Arrays.asList(Arrays.asList(Pos.of(5,15), Pos.of(6,15)),
+            Arrays.asList(Pos.of(5,0), Pos.of(6,0)));
 
 
     /** Crea una copia (profonda) dell'oggetto Camelot dato
@@ -184,14 +223,17 @@ public class G_rs_CAM implements GameRuler<PieceModel<Species>> {
         gResult = o.gResult;
         Map<Pos,PieceModel<Species>> c = new HashMap<>();
         start(c::put);
-        gM = new Mechanics<>(o.gM.time, PIECES, board.positions(), 2, new Situation<>(c,1), this::next);
+        gM = new Mechanics<>(o.gM.time, PIECES, board.positions(), 2, new Situation<>(c,1), this::next, this::children);
+        zobrist = o.zobrist;             // Può essere condivisa perché immodificabile
+        hashes = new ArrayList<>(o.hashes);
+        boardHash = o.boardHash;
     }
 
-    private Board<PieceModel<Species>> newBoard() {
+    private static Board<PieceModel<Species>> newBoard() {
         Function<int[], List<Pos>> toP = cc -> {
             List<Pos> pp = new ArrayList<>();
             for (int i = 0; i < cc.length; i += 2)
-                pp.add(new Pos(cc[i], cc[i + 1]));
+                pp.add(Pos.of(cc[i], cc[i + 1]));
             return pp;
         };
         int[] exc = {0,0, 1,0, 2,0, 3,0, 4,0, 7,0, 8,0, 9,0, 10,0, 11,0, 0,1, 1,1, 10,1, 11,1, 0,2, 11,2,
@@ -200,30 +242,41 @@ public class G_rs_CAM implements GameRuler<PieceModel<Species>> {
     }
 
     private void start(BiConsumer<Pos,PieceModel<Species>> put) {
-        for (int b = 3 ; b <= 8 ; b++) put.accept(new Pos(b, 10), P_NERO);
-        for (int b = 4 ; b <= 7 ; b++) put.accept(new Pos(b, 9), P_NERO);
-        for (int b = 3 ; b <= 8 ; b++) put.accept(new Pos(b, 5), P_BIANCO);
-        for (int b = 4 ; b <= 7 ; b++) put.accept(new Pos(b, 6), P_BIANCO);
-        put.accept(new Pos(2, 10), K_NERO); put.accept(new Pos(9, 10), K_NERO);
-        put.accept(new Pos(3, 9), K_NERO); put.accept(new Pos(8, 9), K_NERO);
-        put.accept(new Pos(2, 5), K_BIANCO); put.accept(new Pos(9, 5), K_BIANCO);
-        put.accept(new Pos(3, 6), K_BIANCO); put.accept(new Pos(8, 6), K_BIANCO);
+        for (int b = 3 ; b <= 8 ; b++) put.accept(Pos.of(b, 10), P_NERO);
+        for (int b = 4 ; b <= 7 ; b++) put.accept(Pos.of(b, 9), P_NERO);
+        for (int b = 3 ; b <= 8 ; b++) put.accept(Pos.of(b, 5), P_BIANCO);
+        for (int b = 4 ; b <= 7 ; b++) put.accept(Pos.of(b, 6), P_BIANCO);
+        put.accept(Pos.of(2, 10), K_NERO); put.accept(Pos.of(9, 10), K_NERO);
+        put.accept(Pos.of(3, 9), K_NERO); put.accept(Pos.of(8, 9), K_NERO);
+        put.accept(Pos.of(2, 5), K_BIANCO); put.accept(Pos.of(9, 5), K_BIANCO);
+        put.accept(Pos.of(3, 6), K_BIANCO); put.accept(Pos.of(8, 6), K_BIANCO);
     }
 
     private Map<Move<PieceModel<Species>>,Situation<PieceModel<Species>>> next(Situation<PieceModel<Species>> s) {
         Objects.requireNonNull(s);
         Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>> sMap = new HashMap<>();
         if (s.turn <= 0) return sMap;
+        children(s, (m, v) -> sMap.put(m, v.toSituation()));
+        if (sMap.isEmpty()) return null;   // Situazione non valida
+        return sMap;
+    }
+
+    /** Visita le prossime situazioni di s (vedi {@link Children}) facendo e
+     * annullando ogni mossa su un'unica copia della disposizione di s */
+    private void children(Situation<PieceModel<Species>> s,
+                          BiConsumer<Move<PieceModel<Species>>,SituationView<PieceModel<Species>>> visit) {
+        Objects.requireNonNull(s);
+        Objects.requireNonNull(visit);
+        if (s.turn <= 0) return;
+        MutableSituation<PieceModel<Species>> cNext = new MutableSituation<>(s);
         for (Move<PieceModel<Species>> m : validMoves(s::get, s.turn)) {
-            Map<Pos, PieceModel<Species>> cNext = s.newMap();
+            int mark = cNext.mark();
             move(cNext::put, cNext::remove, unModBoard::adjacent, m);
-            int tNext = 3 - s.turn;
             int r = check(cNext::get);
-            if (r != -1) tNext = -r;
-            sMap.put(m, new Situation<>(cNext, tNext));
+            cNext.setTurn(r != -1 ? -r : 3 - s.turn);
+            visit.accept(m, cNext);
+            cNext.undo(mark);        // Annulla la mossa
         }
-        if (sMap.isEmpty()) return null;   // Situazione non valida
-        return sMap;
     }
 
     /** Ritorna l'insieme delle mosse valide (esclusa {@link Move.Kind#RESIGN}) per
@@ -506,11 +559,209 @@ public class G_rs_CAM implements GameRuler<PieceModel<Species>> {
     }
 
 
+    /** Il Playout di Camelot. Le mosse del giocatore di turno sono calcolate dopo
+     * ogni mossa con visite in profondità (invece che in ampiezza come in
+     * {@link G_rs_CAM#validMoves()}, l'insieme delle mosse è lo stesso) e sono
+     * memorizzate in array riusati, ognuna con la posizione di partenza, quella di
+     * arrivo e le posizioni dei pezzi catturati. */
+    private static class CAMPlayout implements Playout {
+        private CAMPlayout(int[] c, int turn, int result) {
+            start = c;
+            startTurn = turn;
+            startResult = result;
+            cells = new int[c.length];
+            path = new int[c.length];
+            reset();
+        }
+
+        @Override
+        public int turn() { return result == -1 ? turn : 0; }
+
+        @Override
+        public int result() { return result; }
+
+        @Override
+        public int randomMove(Random rnd) { return result == -1 ? rnd.nextInt(nMoves) : -1; }
+
+        @Override
+        public void apply(int m) {
+            if (result != -1) throw new IllegalStateException();
+            int k = offsets[m], from = data[k], to = data[k+1], nCapt = data[k+2];
+            int piece = cells[from];
+            cells[from] = 0;
+            cells[to] = piece;
+            for (int i = 0 ; i < nCapt ; i++) cells[data[k+3+i]] = 0;
+            count[2-turn] -= nCapt;
+            turn = 3 - turn;
+            result = check();
+            if (result == -1) {
+                genMoves();
+                if (nMoves == 0) result = 3 - turn;
+            }
+        }
+
+        @Override
+        public void reset() {
+            System.arraycopy(start, 0, cells, 0, cells.length);
+            turn = startTurn;
+            result = startResult;
+            count[0] = count[1] = 0;
+            for (int x : cells) if (x != 0) count[(x & 3)-1]++;
+            if (result == -1) {
+                genMoves();
+                if (nMoves == 0) result = 3 - turn;
+            }
+        }
+
+        /** Come {@link G_rs_CAM#check(Function)} */
+        private int check() {
+            if (count[0] == 0 && count[1] >= 2) return 2;
+            if (count[1] == 0 && count[0] >= 2) return 1;
+            if (count[0] <= 1 && count[1] <= 1) return 0;
+            for (int i = 0 ; i < 2 ; i++) {
+                int c1 = cells[CASTLE[i][0]], c2 = cells[CASTLE[i][1]];
+                if (c1 != 0 && c2 != 0 && (c1 & 3) != i+1 && (c2 & 3) != i+1)
+                    return 2 - i;
+            }
+            return -1;
+        }
+
+        /** Come {@link G_rs_CAM#validMoves(Function, int)} */
+        private void genMoves() {
+            nMoves = 0;
+            nData = 0;
+            int[] own = CASTLE[turn-1], opp = CASTLE[2-turn];
+            for (int p = 0 ; p < cells.length ; p++)      // Un pezzo nel proprio castello blocca tutte le mosse
+                if ((cells[p] & 3) == turn && (p == own[0] || p == own[1])) return;
+            for (int p = 0 ; p < cells.length ; p++)
+                if (isMover(p)) jump(p, p, 0);
+            if (nMoves == 0) {    // Non può saltare
+                for (int p = 0 ; p < cells.length ; p++) {
+                    if (!isMover(p)) continue;
+                    path[0] = p;
+                    canter(p, p, 1, cells[p] >= 4);
+                    for (int[] a : ADJ) {
+                        int pp = a[p];
+                        if (pp >= 0 && pp != own[0] && pp != own[1] && cells[pp] == 0) add(p, pp, 0);
+                    }
+                }
+                for (int i = 0 ; i < 2 ; i++)
+                    if ((cells[opp[i]] & 3) == turn && cells[opp[1-i]] == 0) add(opp[i], opp[1-i], 0);
+            }
+            for (int p = 0 ; p < cells.length ; p++)
+                if (isMover(p) && cells[p] >= 4) {
+                    path[0] = p;
+                    charge(p, p, 1);
+                }
+        }
+
+        /** Ritorna true se in p c'è un pezzo del giocatore di turno che non è nel
+         * castello avversario */
+        private boolean isMover(int p) {
+            int[] opp = CASTLE[2-turn];
+            return (cells[p] & 3) == turn && p != opp[0] && p != opp[1];
+        }
+
+        /** Salti da p avendo già catturato i primi nCapt pezzi di capt */
+        private void jump(int from, int p, int nCapt) {
+            boolean jumping = false;
+            for (int[] a : ADJ) {
+                int pp = a[p];
+                if (pp < 0 || cells[pp] == 0 || (cells[pp] & 3) == turn) continue;
+                int ppp = a[pp];
+                if (ppp < 0 || cells[ppp] != 0 || contains(capt, nCapt, pp)) continue;
+                capt[nCapt] = pp;
+                jump(from, ppp, nCapt+1);
+                jumping = true;
+            }
+            if (!jumping && nCapt > 0) add(from, p, nCapt);
+        }
+
+        /** Canter da p, con le prime len posizioni del cammino in path */
+        private void canter(int from, int p, int len, boolean isK) {
+            int[] own = CASTLE[turn-1];
+            for (int[] a : ADJ) {
+                int pp = a[p];
+                if (pp < 0 || (cells[pp] & 3) != turn) continue;
+                int ppp = a[pp];
+                if (ppp < 0 || cells[ppp] != 0 || contains(path, len, ppp)) continue;
+                if (isK && canJump(ppp)) continue;
+                path[len] = ppp;
+                if (ppp != own[0] && ppp != own[1]) add(from, ppp, 0);
+                canter(from, ppp, len+1, isK);
+            }
+        }
+
+        /** Knight's Charge da p, con le prime len posizioni dei canter in path */
+        private void charge(int from, int p, int len) {
+            for (int[] a : ADJ) {
+                int pp = a[p];
+                if (pp < 0 || cells[pp] == 0) continue;
+                int ppp = a[pp];
+                if (ppp < 0 || cells[ppp] != 0 || contains(path, len, ppp)) continue;
+                if ((cells[pp] & 3) == turn) {    // Canter
+                    path[len] = ppp;
+                    charge(from, ppp, len+1);
+                } else if (len > 1) {              // Jump
+                    capt[0] = pp;
+                    jump(from, ppp, 1);
+                }
+            }
+        }
+
+        private boolean canJump(int p) {
+            for (int[] a : ADJ) {
+                int pp = a[p];
+                if (pp < 0 || cells[pp] == 0 || (cells[pp] & 3) == turn) continue;
+                int ppp = a[pp];
+                if (ppp >= 0 && cells[ppp] == 0) return true;
+            }
+            return false;
+        }
+
+        private static boolean contains(int[] a, int n, int x) {
+            for (int i = 0 ; i < n ; i++) if (a[i] == x) return true;
+            return false;
+        }
+
+        /** Aggiunge la mossa da from a to che cattura i primi nCapt pezzi di capt */
+        private void add(int from, int to, int nCapt) {
+            if (nMoves == offsets.length) offsets = Arrays.copyOf(offsets, 2*nMoves);
+            if (nData + 3 + nCapt > data.length) data = Arrays.copyOf(data, 2*data.length + nCapt);
+            offsets[nMoves++] = nData;
+            data[nData++] = from;
+            data[nData++] = to;
+            data[nData++] = nCapt;
+            System.arraycopy(capt, 0, data, nData, nCapt);
+            nData += nCapt;
+        }
+
+        private static final int[][] ADJ;      // Le adiacenze della board
+        private static final int[][] CASTLE;   // Gli indici delle posizioni dei castelli
+        static {
+            Board<PieceModel<Species>> b = newBoard();
+            ADJ = Utils.adjacencies(b);
+            CASTLE = new int[2][2];
+            for (int i = 0 ; i < 2 ; i++)
+                for (int j = 0 ; j < 2 ; j++)
+                    CASTLE[i][j] = b.positions().indexOf(CASTLES.get(i).get(j));
+        }
+
+        private final int[] start, cells, path, capt = new int[32], count = new int[2];
+        private final int startTurn, startResult;
+        private int[] offsets = new int[64], data = new int[256];
+        private int turn, result, nMoves, nData;
+    }
+
+
     private final Board<PieceModel<Species>> board;
     private final Board<PieceModel<Species>> unModBoard;
     private final List<String> playerNames;
     private final List<Situation<PieceModel<Species>>> history;
     private final Mechanics<PieceModel<Species>> gM;
+    private final Zobrist<PieceModel<Species>> zobrist;
+    private final List<Long> hashes;     // Gli hash della board prima di ogni mossa, in parallelo alla history
+    private long boardHash;              // Lo hash della board senza il turno
     private int currTurn;
     private int gResult;
 }
@@ -2,9 +2,11 @@ package gapp.ulg.games;
 
 import gapp.ulg.game.board.*;
 import gapp.ulg.game.util.BoardOct;
+import gapp.ulg.game.util.MutableSituation;
 import gapp.ulg.game.util.Utils;
 
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 
 import static gapp.ulg.game.board.PieceModel.Species;
@@ -37,7 +39,7 @@ class G_rs_MNK implements GameRuler<PieceModel<Species>> {
         history = new ArrayList<>();
         gResult = -1;
         currTurn = 1;
-        gM = new Mechanics<>((time > 0 ? time : -1), PIECES, board.positions(), 2, START, this::next);
+        gM = new Mechanics<>((time > 0 ? time : -1), PIECES, board.positions(), 2, START, this::next, this::children);
     }
 
     /** Il nome rispetta il formato:
@@ -206,8 +208,8 @@ class G_rs_MNK implements GameRuler<PieceModel<Species>> {
             return (millis/60_000)+"m";
     }
 
-    private static final PieceModel<Species> NERO = new PieceModel<>(Species.DISC, "nero"),
-                                             BIANCO = new PieceModel<>(Species.DISC, "bianco");
+    private static final PieceModel<Species> NERO = PieceModel.of(Species.DISC, "nero"),
+                                             BIANCO = PieceModel.of(Species.DISC, "bianco");
     private static final List<PieceModel<Species>> PIECES = Collections.unmodifiableList(Arrays.asList(NERO, BIANCO));
     private static final Situation<PieceModel<Species>> START = new Situation<>(new HashMap<>(), 1);
 
@@ -231,15 +233,28 @@ class G_rs_MNK implements GameRuler<PieceModel<Species>> {
         history.addAll(o.history);
         currTurn = o.currTurn;
         gResult = o.gResult;
-        gM = new Mechanics<>(o.gM.time, PIECES, board.positions(), 2, START, this::next);
+        gM = new Mechanics<>(o.gM.time, PIECES, board.positions(), 2, START, this::next, this::children);
     }
 
     private Map<Move<PieceModel<Species>>,Situation<PieceModel<Species>>> next(Situation<PieceModel<Species>> s) {
         Objects.requireNonNull(s);
         Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>> sMap = new HashMap<>();
         if (s.turn <= 0) return sMap;
+        children(s, (m, v) -> sMap.put(m, v.toSituation()));
+        if (sMap.isEmpty()) return null;   // Situazione non valida
+        return sMap;
+    }
+
+    /** Visita le prossime situazioni di s (vedi {@link Children}) facendo e
+     * annullando ogni mossa su un'unica copia della disposizione di s */
+    private void children(Situation<PieceModel<Species>> s,
+                          BiConsumer<Move<PieceModel<Species>>,SituationView<PieceModel<Species>>> visit) {
+        Objects.requireNonNull(s);
+        Objects.requireNonNull(visit);
+        if (s.turn <= 0) return;
+        MutableSituation<PieceModel<Species>> cNext = new MutableSituation<>(s);
         for (Move<PieceModel<Species>> m : validMoves(s::get, s.turn)) {
-            Map<Pos, PieceModel<Species>> cNext = s.newMap();
+            int mark = cNext.mark();
             Action<PieceModel<Species>> add = m.actions.get(0);
             cNext.put(add.pos.get(0), add.piece);  // Esegue la mossa: aggiunge il disco
             int tNext = 3 - s.turn;         // Il turno passa all'altro giocatore
@@ -250,10 +265,10 @@ class G_rs_MNK implements GameRuler<PieceModel<Species>> {
                 case PATTA_OBBLIGATA: tNext = 0; break;
                 case NERO_NONVINCE: case BIANCO_NONVINCE: case INDECISA: break;
             }
-            sMap.put(m, new Situation<>(cNext, tNext));
+            cNext.setTurn(tNext);
+            visit.accept(m, cNext);
+            cNext.undo(mark);               // Annulla la mossa
         }
-        if (sMap.isEmpty()) return null;   // Situazione non valida
-        return sMap;
     }
 
     /** Ritorna l'insieme delle mosse valide (esclusa {@link Move.Kind#RESIGN}) per
@@ -286,7 +301,7 @@ class G_rs_MNK implements GameRuler<PieceModel<Species>> {
                 int db = disp.db, dt = disp.dt, len = K;
                 int b = p.b, t = p.t;             // Prima posizione della fila
                 while (b >= 0 && b < M && t >= 0 && t < N && len > 0) {
-                    count[PIECES.indexOf(c.apply(new Pos(b, t)))+1]++;
+                    count[PIECES.indexOf(c.apply(Pos.of(b, t)))+1]++;
                     len--;
                     b += db;
                     t += dt;
@@ -29,10 +29,10 @@ class G_rs_OTH implements GameRuler<PieceModel<Species>> {
         name = "Othello"+size+"x"+size;
         board = new BoardOct<>(size, size);            // La board
         int i = (size - 2)/2;
-        board.put(BIANCO, new Pos(i, i+1));            // La configurazione iniziale
-        board.put(BIANCO, new Pos(i+1, i));
-        board.put(NERO, new Pos(i+1, i+1));
-        board.put(NERO, new Pos(i, i));
+        board.put(BIANCO, Pos.of(i, i+1));            // La configurazione iniziale
+        board.put(BIANCO, Pos.of(i+1, i));
+        board.put(NERO, Pos.of(i+1, i+1));
+        board.put(NERO, Pos.of(i, i));
         unModBoard = Utils.UnmodifiableBoard(board);  // La view immodificabile della board
         playerNames = Collections.unmodifiableList(Arrays.asList(p1, p2));
         history = new ArrayList<>();
@@ -210,8 +210,8 @@ class G_rs_OTH implements GameRuler<PieceModel<Species>> {
             return (millis/60_000)+"m";
     }
 
-    private static final PieceModel<Species> NERO = new PieceModel<>(Species.DISC, "nero"),
-            BIANCO = new PieceModel<>(Species.DISC, "bianco");
+    private static final PieceModel<Species> NERO = PieceModel.of(Species.DISC, "nero"),
+            BIANCO = PieceModel.of(Species.DISC, "bianco");
     private static final List<PieceModel<Species>> PIECES = Collections.unmodifiableList(Arrays.asList(NERO, BIANCO));
 
 
@@ -239,10 +239,10 @@ class G_rs_OTH implements GameRuler<PieceModel<Species>> {
     private Situation<PieceModel<Species>> start() {
         Map<Pos,PieceModel<Species>> c = new HashMap<>();
         int i = (board.width() - 2)/2;
-        c.put(new Pos(i, i+1), BIANCO);            // La configurazione iniziale
-        c.put(new Pos(i+1, i), BIANCO);
-        c.put(new Pos(i+1, i+1), NERO);
-        c.put(new Pos(i, i), NERO);
+        c.put(Pos.of(i, i+1), BIANCO);            // La configurazione iniziale
+        c.put(Pos.of(i+1, i), BIANCO);
+        c.put(Pos.of(i+1, i+1), NERO);
+        c.put(Pos.of(i, i), NERO);
         return new Situation<>(c, 1);
     }
 
@@ -294,15 +294,15 @@ class G_rs_OTH implements GameRuler<PieceModel<Species>> {
                 Disp disp = Disp.toOctDisp.apply(d);
                 int db = disp.db, dt = disp.dt, count = 0;
                 int b = p.b + db, t = p.t + dt;          // Prima posizione nella direzione d
-                while (b >= 0 && t >= 0 && other.equals(c.apply(new Pos(b, t)))) {
+                while (b >= 0 && t >= 0 && other.equals(c.apply(Pos.of(b, t)))) {
                     count++;                  // Conta il numero di posizioni,
                     b += db;                  // nella direzione d, occupate da
                     t += dt;                  // dischi dell'altro giocatore
                 }
-                if (b >= 0 && t >= 0 && count > 0 && curr.equals(c.apply(new Pos(b, t)))) { // Se c'è una linea non vuota di
+                if (b >= 0 && t >= 0 && count > 0 && curr.equals(c.apply(Pos.of(b, t)))) { // Se c'è una linea non vuota di
                     for (int i = 0 ; i < count ; i++) {                                     // dischi dell'altro giocatore
                         b -= db; t -= dt;                                                   // chiusa da un disco del giocatore,
-                        toFlip.add(new Pos(b, t));                           // aggiungi le posizioni a
+                        toFlip.add(Pos.of(b, t));                           // aggiungi le posizioni a
                     }                                                        // quelle da rovesciare
                 }
             }
@@ -62,6 +62,7 @@ public class GameFactories {
         boardFactories = new ConcurrentHashMap<>();
         boardFactories.put("Othello", OthelloFactory.class);
         boardFactories.put("m,n,k-game", MNKgameFactory .class);
+        boardFactories.put("Othello (bitboard)", OthelloBitboardFactory.class);
     }
 
     static {
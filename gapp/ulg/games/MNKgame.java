@@ -2,9 +2,15 @@ package gapp.ulg.games;
 
 import gapp.ulg.game.board.*;
 import gapp.ulg.game.util.BoardOct;
+import gapp.ulg.game.util.ListaPersistente;
 import gapp.ulg.game.util.Utils;
+import gapp.ulg.game.util.Zobrist;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static gapp.ulg.game.board.PieceModel.Species;
 
@@ -76,7 +82,7 @@ public class MNKgame implements GameRuler<PieceModel<Species>> {
         turn = 1;
 
         //Inizializzo la lista delle mosse finora effettuate;
-        cronologiaMosse = new ArrayList<>();
+        cronologiaMosse = new ListaPersistente<>();
 
         //Il tempo massimo per eseguire una mossa...
         tempo = time;
@@ -84,6 +90,14 @@ public class MNKgame implements GameRuler<PieceModel<Species>> {
         //...e la lunghezza della linea!
         lunghezzaLinea = k;
 
+        //La board è vuota, quindi nessuno ha ancora una linea (ma se K è troppo lungo la patta è già certa);
+        esitoIniziale = pattaCerta() ? 0 : -1;
+        esitiDopoMossa = new ListaPersistente<>();
+
+        //La board è vuota, quindi anche il suo hash è 0;
+        zobrist = zobrist(m, n);
+        hashBoard = 0;
+
     }
 
     public BoardOct<PieceModel<Species>> board;
@@ -100,6 +114,26 @@ public class MNKgame implements GameRuler<PieceModel<Species>> {
 
     public static List<Board.Dir> listaDirezioni = Arrays.asList(Board.Dir.UP, Board.Dir.UP_R, Board.Dir.RIGHT, Board.Dir.DOWN_R, Board.Dir.DOWN, Board.Dir.DOWN_L, Board.Dir.LEFT, Board.Dir.UP_L);
 
+    //I quattro assi (spostamenti in b e in t) su cui può giacere una linea;
+    private static final int[][] ASSI = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+
+    /*L'esito della board: il giocatore (1 o 2) che ha una linea di K pedine, 0 se
+      la patta è certa, -1 altrimenti; prima di tutte le mosse della cronologia, e
+      dopo ognuna di esse (in parallelo alla cronologia)*/
+    private int esitoIniziale;
+    private List<Integer> esitiDopoMossa;
+
+    //Le chiavi di Zobrist (condivise tra le partite con la stessa board) e lo hash della board senza il turno;
+    private final Zobrist<PieceModel<Species>> zobrist;
+    private long hashBoard;
+
+    private static final List<PieceModel<Species>> PEZZI = Collections.unmodifiableList(Arrays.asList(
+            PieceModel.of(Species.DISC, "nero"), PieceModel.of(Species.DISC, "bianco")));
+    private static final Map<Integer, Zobrist<PieceModel<Species>>> CHIAVI = new ConcurrentHashMap<>();
+
+    //Le tabelle delle adiacenze per i Playout, condivise tra le partite con la stessa board;
+    private static final Map<Integer, int[][]> ADIACENZE = new ConcurrentHashMap<>();
+
 
     /** Il nome rispetta il formato:
      * <pre>
@@ -230,65 +264,69 @@ public class MNKgame implements GameRuler<PieceModel<Species>> {
      * disposte le pedine rimanenti di entrambi i giocatori). */
     @Override
     public boolean move(Move<PieceModel<Species>> m) {
-        Boolean moveIsOk = false;
         Set<Move<PieceModel<Species>>> mosseValide = validMoves();
 
         Objects.requireNonNull(m);
 
-        //Se il gioco è terminato;
-        if (statoGioco != -1)
-            throw new IllegalStateException();
-
         //Se m è una mossa valida per l'attuale situazione di gioco;
-        else if (mosseValide.contains(m)) {
-            moveIsOk = true;
+        if (mosseValide.contains(m)) {
+            esegui(m);
+            return true;
+        }
 
-            //Se m è una mossa Action;
-            if (m.kind.equals(Move.Kind.ACTION)) {
+        //Altrimenti il giocatore perde, quindi pongo il turno uguale a 0, e passo la vittoria all'altro giocatore;
+        statoGioco = 3 - turn;
+        turn = 0;
+        return false;
+    }
 
-                //Se sta giocando il nero;
-                if (turn == 1) {
+    /**Esegue la mossa m, che è valida*/
+    private void esegui(Move<PieceModel<Species>> m) {
 
-                    //Metto il pezzo nero nella casella vuota...
-                    board.put(new PieceModel<>(PieceModel.Species.DISC, "nero"), m.actions.get(0).pos.get(0));
-                    mosseRimanentiNero--;
+        //Se m è una mossa Action;
+        if (m.kind.equals(Move.Kind.ACTION)) {
 
-                }
+            //Se sta giocando il nero;
+            if (turn == 1) {
 
-                //Se invece è il turno del bianco;
-                else if (turn == 2) {
+                //Metto il pezzo nero nella casella vuota...
+                metti(PieceModel.of(PieceModel.Species.DISC, "nero"), m.actions.get(0).pos.get(0));
+                mosseRimanentiNero--;
 
-                    //Metto il pezzo bianco nella casella vuota...
-                    board.put(new PieceModel<>(PieceModel.Species.DISC, "bianco"), m.actions.get(0).pos.get(0));
-                    mosseRimanentiBianco--;
+            }
 
-                }
+            //Se invece è il turno del bianco;
+            else if (turn == 2) {
 
-                turn = 3 - turn;
-                cronologiaMosse.add(m);
+                //Metto il pezzo bianco nella casella vuota...
+                metti(PieceModel.of(PieceModel.Species.DISC, "bianco"), m.actions.get(0).pos.get(0));
+                mosseRimanentiBianco--;
 
             }
 
-                //Se invece è una mossa RESIGN;
-            else if (m.kind.equals(Move.Kind.RESIGN)) {
+            //Controllo solo le linee che passano per la pedina appena messa...
+            int esito = vincitore();
+            if (esito == 0 && lineaCompleta(m.actions.get(0).pos.get(0)))
+                esito = turn;
 
-                //Aggiungo la mossa alla cronologia;
-                cronologiaMosse.add(m);
+            //...e, se non c'è un vincitore, se la patta è ormai certa;
+            if (esito == 0)
+                esito = pattaCerta() ? 0 : -1;
 
-            }
+            turn = 3 - turn;
+            cronologiaMosse.add(m);
+            esitiDopoMossa.add(esito);
 
         }
 
-            //Se invece m non è una mossa valida;
-        else if (!mosseValide.contains(m)) {
+        //Se invece è una mossa RESIGN;
+        else if (m.kind.equals(Move.Kind.RESIGN)) {
 
-            //Il giocatore perde, quindi pongo il turno uguale a 0, e passo la vittoria all'altro giocatore;
-            statoGioco = 3 - turn;
-            turn = 0;
+            //Aggiungo la mossa alla cronologia;
+            cronologiaMosse.add(m);
+            esitiDopoMossa.add(esito());
 
         }
-
-        return moveIsOk;
     }
 
     @Override
@@ -302,7 +340,9 @@ public class MNKgame implements GameRuler<PieceModel<Species>> {
         if (cronologiaMosse.get(cronologiaMosse.size() - 1).kind.equals(Move.Kind.ACTION)) {
 
             //Rimuovo il pezzo che avevo messo nel turno precedente;
-            PieceModel<Species> pezzoTolto = board.remove(cronologiaMosse.get(cronologiaMosse.size() - 1).actions.get(0).pos.get(0));
+            Pos posizioneTolta = cronologiaMosse.get(cronologiaMosse.size() - 1).actions.get(0).pos.get(0);
+            PieceModel<Species> pezzoTolto = board.remove(posizioneTolta);
+            hashBoard ^= zobrist.key(posizioneTolta, pezzoTolto);
 
             if (pezzoTolto.color.equals("nero"))
                 mosseRimanentiNero++;
@@ -315,11 +355,15 @@ public class MNKgame implements GameRuler<PieceModel<Species>> {
             else
                 turn = 2;
 
+            //...che quindi sta ancora giocando!
+            statoGioco = -1;
+            esitiDopoMossa.remove(esitiDopoMossa.size() - 1);
+
             //Se finora c'è stata una sola mossa;
             if (cronologiaMosse.size() == 1) {
 
                 //Svuoto la lista;
-                cronologiaMosse = new ArrayList<>();
+                cronologiaMosse = new ListaPersistente<>();
             }
 
             //Altrimenti..
@@ -339,12 +383,13 @@ public class MNKgame implements GameRuler<PieceModel<Species>> {
 
             //e riporto lo stato del gioco a -1!
             statoGioco = -1;
+            esitiDopoMossa.remove(esitiDopoMossa.size() - 1);
 
             //Se finora c'è stata una sola mossa;
             if (cronologiaMosse.size() == 1) {
 
                 //Svuoto la lista;
-                cronologiaMosse = new ArrayList<>();
+                cronologiaMosse = new ListaPersistente<>();
             }
 
             //Altrimenti..
@@ -395,539 +440,647 @@ public class MNKgame implements GameRuler<PieceModel<Species>> {
             return statoGioco;
         }
 
-        //Per ogni posizione della board;
-        for (Pos p : board.positions()) {
-            PieceModel<Species> pedina = board.get(p);
-
-            //Ignoro le caselle vuote;
-            if (pedina == null)
-                continue;
-
-            //Creo un contatore per le pedine di uno stesso colore
-            // impostato già ad 1 poiché mi trovo su una casella non vuota;
-            String colorePedina = pedina.color;
-
-            //Per ogni direzione;
-            for (Board.Dir direzione : listaDirezioni) {
-                Pos p1 = p;
-                int counter = 1;
-
-                //Inizio il ciclo;
-                while (true) {
-
-                    /*Prendo, ad ogni ciclo del while, la casella
-                    adiacente a quella attuale, finche non trovo una
-                    casella che sia dell'altro colore oppure null*/
-                    p1 = board.adjacent(p1, direzione);
+        //Se c'è una linea vincente (aggiornato ad ogni mossa);
+        int esito = esito();
+        if (esito > 0) {
+            turn = 0;
+            statoGioco = esito;
 
-                    //Se p1 non è una casella della board, termino il ciclo!;
-                    if (p1 == null)
-                        break;
+            return statoGioco;
+        }
 
-                    //Se trovo una pedina del colore delle pedina principale, aumento il counter di 1;
-                    if (board.get(p1) != null && board.get(p1).color.equals(colorePedina))
-                        counter++;
+        //Se la board è piena o la patta è comunque certa (anche questo aggiornato ad ogni mossa);
+        if (esito == 0)
+            statoGioco = 0;
 
-                        //Se invece trovo una pedina del colore opposto, termino il ciclo;
-                    else if (board.get(p1) != null && !board.get(p1).color.equals(colorePedina))
-                        break;
+        return statoGioco;
+    }
 
-                        //Se invece trovo una casella vuota, termino lo stesso il ciclo;
-                    else if (board.get(p1) == null)
-                        break;
+    /** Ogni mossa (diversa dall'abbandono) è rappresentata da una sola {@link Action}
+     * di tipo {@link Action.Kind#ADD}. */
+    @Override
+    public Set<Move<PieceModel<Species>>> validMoves() {
+        Set<Move<PieceModel<PieceModel.Species>>> insieme = new HashSet<>();
+        insieme.add(new Move<>(Move.Kind.RESIGN));
+        String player;
 
-                    //Se ho trovato una linea che permette la vittoria;
-                    if (counter == lunghezzaLinea) {
+        //Associo il colore in base al turno;
+        if (turn == 1)
+            player = "nero";
+        else
+            player = "bianco";
 
-                        //Se la linea è nera:
-                        if (colorePedina.equals("nero")) {
-                            turn = 0;
-                            statoGioco = 1;
+        //Se il gioco è terminato;
+        if (statoGioco != -1)
+            throw new IllegalStateException();
 
-                            return statoGioco;
-                        }
+        //Per ogni riga della board;
+        for (Pos p : board.positions()) {
 
-                        //Se invece è bianca:
-                        if (colorePedina.equals("bianco")) {
-                            turn = 0;
-                            statoGioco = 2;
+            //Se quella casella è vuota;
+            if (board.get(p) == null) {
 
-                            return statoGioco;
-                        }
+                //Creo l'azione ADD per quella casella;
+                Action<PieceModel<Species>> azione = new Action<>(p, PieceModel.of(PieceModel.Species.DISC, player));
 
-                    }
+                //Creo la mossa ACTION che fa quell'azione;
+                Move<PieceModel<PieceModel.Species>> mossa = new Move(azione);
 
-                }
+                //Aggiungo l'azione all'insieme delle mosse valide;
+                insieme.add(mossa);
 
             }
 
         }
 
-        //Se ho superato il controllo delle linee vincenti, e la board è piena, vuol dire che é necessariamente finita in patta;
-        if (mosseRimanentiNero == 0 && mosseRimanentiBianco == 0) {
-            statoGioco = 0;
-            return statoGioco;
-        }
+        return insieme;
+    }
 
-        //Se invece sono arrivato fin qui, controllo il caso di parità certa a board non piena (Per i neri);
-        for (Pos p : board.positions()) {
-            int mosseDelNero = mosseRimanentiNero;
+    /** La copia costa O(1): la board e la cronologia delle mosse sono condivise con
+     * questa partita finché una delle due non le modifica (vedi
+     * {@link BoardOct#copy()} e {@link ListaPersistente}). */
+    @Override
+    public GameRuler<PieceModel<Species>> copy() { return new MNKgame(this); }
+
+    /**Crea una copia della partita o, condividendo la board e la cronologia*/
+    private MNKgame(MNKgame o) {
+
+        //La board, i cui segmenti sono copiati solamente quando sono modificati;
+        board = o.board.copy();
+
+        //I nomi dei giocatori e i loro colori;
+        nomiGiocatori = new ArrayList<>(o.nomiGiocatori);
+        colorFirstplayer = o.colorFirstplayer;
+        colorSecondPlayer = o.colorSecondPlayer;
+
+        //Le pedine rimanenti, lo stato del gioco, il turno, il tempo e la lunghezza della linea;
+        mosseRimanentiNero = o.mosseRimanentiNero;
+        mosseRimanentiBianco = o.mosseRimanentiBianco;
+        statoGioco = o.statoGioco;
+        turn = o.turn;
+        tempo = o.tempo;
+        lunghezzaLinea = o.lunghezzaLinea;
+
+        //La cronologia, che condivide le mosse con quella di o;
+        cronologiaMosse = new ListaPersistente<>(o.cronologiaMosse);
+        zobrist = o.zobrist;
+
+        /*Se non ci sono mosse la board può essere stata preparata direttamente
+          (come nel mechanics), quindi cerco le linee su tutta la board*/
+        if (o.cronologiaMosse.isEmpty()) {
+            esitoIniziale = calcolaEsito();
+            esitiDopoMossa = new ListaPersistente<>();
+            hashBoard = zobrist.hash(board::get);
+        }
 
-            //Ignoro le caselle piene;
-            if (board.get(p) != null)
-                continue;
+        else {
+            esitoIniziale = o.esitoIniziale;
+            esitiDopoMossa = new ListaPersistente<>(o.esitiDopoMossa);
+            hashBoard = o.hashBoard;
+        }
+    }
 
-            board.put(new PieceModel<>(PieceModel.Species.DISC, "nero"), p);
-            mosseRimanentiNero--;
-            PieceModel<Species> pedina = board.get(p);
+    /** Lo hash è quello di {@link Zobrist#hash(Situation)} per la situazione
+     * attuale: se c'è una linea di K pedine o un giocatore ha abbandonato il turno
+     * è -w, dove w è il vincitore, se la board è piena o la patta è comunque
+     * certa è 0. */
+    @Override
+    public long hash() {
+        int turno;
+
+        if (statoGioco > 0)
+            turno = -statoGioco;
+        else if (!cronologiaMosse.isEmpty() && cronologiaMosse.get(cronologiaMosse.size() - 1).kind == Move.Kind.RESIGN)
+            turno = -(3 - turn);
+        else if (vincitore() != 0)
+            turno = -vincitore();
+        else if (esito() == 0)
+            turno = 0;
+        else
+            turno = turn;
 
-            String colorePedina = pedina.color;
+        return hashBoard ^ zobrist.turn(turno);
+    }
 
-            //Per ogni direzione;
-            for (Board.Dir direzione : listaDirezioni) {
-                Pos p1 = p;
-                int counter = 1;
+    /** Il codice di una mossa è l'indice in {@link Board#positions()} della
+     * posizione in cui si mette la pedina (come nel {@link Playout}), quello
+     * dell'abbandono è il numero delle posizioni. */
+    @Override
+    public int moveCodes() { return board.positions().size() + 1; }
 
-                //Inizio il ciclo;
-                while (true) {
+    @Override
+    public int encode(Move<PieceModel<Species>> m) {
+        Objects.requireNonNull(m);
 
-                    /*Prendo, ad ogni ciclo del while, la casella
-                    adiacente a quella attuale, finche non trovo una
-                    casella che sia dell'altro colore oppure null*/
-                    p1 = board.adjacent(p1, direzione);
+        //Se il gioco è terminato;
+        if (statoGioco != -1) throw new IllegalStateException();
 
-                    //Se p1 non è una casella della board, termino il ciclo!;
-                    if (p1 == null) {
-                        mosseRimanentiNero = mosseDelNero - 1;
+        int codice = -1;
 
-                        break;
-                    }
-                    //Se invece trovo una pedina del colore delle pedina principale, aumento il counter di 1;
-                    else if (board.get(p1) != null && board.get(p1).color.equals(colorePedina))
-                        counter++;
+        if (m.kind == Move.Kind.RESIGN)
+            codice = board.positions().size();
+        else if (m.kind == Move.Kind.ACTION && m.actions.get(0).kind == Action.Kind.ADD)
+            codice = indice(m.actions.get(0).pos.get(0));
 
-                        //Se invece trovo una pedina del colore opposto, termino il ciclo;
-                    else if (board.get(p1) != null && !board.get(p1).color.equals(colorePedina)) {
-                        mosseRimanentiNero = mosseDelNero - 1;
+        //La mossa con quel codice deve essere proprio m (ad es. con la pedina del colore giusto);
+        return codice >= 0 && m.equals(decode(codice)) ? codice : -1;
+    }
 
-                        break;
-                    }
-                    //Se invece trovo una casella vuota ed il nero ha ancora a disposizione alcune pedine, metto una 'pedina immaginaria' nera al suo posto;
-                    else if (board.get(p1) == null && mosseRimanentiNero > 0) {
-                        mosseRimanentiNero--;
-                        counter++;
-                    }
+    @Override
+    public Move<PieceModel<Species>> decode(int code) {
+        if (!isValid(code)) return null;
 
-                    //Se il nero non ha più pedine, esco;
-                    else if (mosseRimanentiNero == 0) {
-                        mosseRimanentiNero = mosseDelNero - 1;
+        if (code == board.positions().size())
+            return new Move<>(Move.Kind.RESIGN);
 
-                        break;
-                    }
+        return new Move<>(new Action<>(board.positions().get(code),
+                PieceModel.of(PieceModel.Species.DISC, turn == 1 ? "nero" : "bianco")));
+    }
 
-                    //Se ho trovato una linea che permette la vittoria, vuol dire che non siamo ancora in un caso di parita certa, quindi la partita puo continuare;
-                    if (counter == lunghezzaLinea) {
-                        mosseRimanentiNero = mosseDelNero;
-                        board.remove(p);
+    /** Le mosse valide sono le posizioni vuote, trovate senza creare le
+     * {@link Move}. */
+    @Override
+    public void validMoveCodes(IntMoveList moves) {
+        Objects.requireNonNull(moves);
 
-                        return statoGioco;
-                    }
+        //Se il gioco è terminato;
+        if (statoGioco != -1) throw new IllegalStateException();
 
-                }
+        moves.clear();
 
-            }
+        for (int i = 0 ; i < board.positions().size() ; i++)
+            if (board.get(board.positions().get(i)) == null)
+                moves.add(i);
+    }
 
-            //Rimuovo il pezzo messo all'inizio per il test della parità, per fare spazio ad un altro!
-            board.remove(p);
-            mosseRimanentiNero = mosseDelNero;
-        }
+    @Override
+    public boolean isValid(int code) {
 
-        //Se invece sono arrivato fin qui, controllo il caso di parità certa a board non piena (Per i neri);
-        for (Pos p : board.positions()) {
-            int mosseDelNero = mosseRimanentiNero;
+        //Se il gioco è terminato;
+        if (statoGioco != -1) throw new IllegalStateException();
 
-            //Ignoro le caselle vuote;
-            if (board.get(p) == null)
-                continue;
+        int n = board.positions().size();
 
-            PieceModel<Species> pedina = board.get(p);
-            String colorePedina = pedina.color;
+        return code == n || (code >= 0 && code < n && board.get(board.positions().get(code)) == null);
+    }
 
-            //Per ogni direzione;
-            for (Board.Dir direzione : listaDirezioni) {
-                Pos p1 = p;
-                int counter = 1;
+    /** La mossa è creata solamente per la cronologia, senza calcolare le altre mosse
+     * valide. */
+    @Override
+    public void move(int code) {
+        Move<PieceModel<Species>> m = decode(code);
 
-                //Inizio il ciclo;
-                while (true) {
+        if (m == null)
+            throw new IllegalArgumentException();
 
-                    /*Prendo, ad ogni ciclo del while, la casella
-                    adiacente a quella attuale, finche non trovo una
-                    casella che sia dell'altro colore oppure null*/
-                    p1 = board.adjacent(p1, direzione);
+        esegui(m);
+    }
 
-                    //Se p1 non è una casella della board, termino il ciclo!;
-                    if (p1 == null) {
-                        mosseRimanentiNero = mosseDelNero;
+    /** Il {@link Playout} rappresenta la board con un array di interi (0 vuota, 1
+     * nera, 2 bianca) indicizzato come {@link Board#positions()}; il codice di una
+     * mossa è l'indice della posizione in cui si mette la pedina. Durante il
+     * playout la partita termina con una linea di K pedine o a board piena, quindi
+     * le patte anticipate successive sono giocate fino alla fine (l'esito non
+     * cambia). */
+    @Override
+    public Playout playout() {
+        int[] celle = new int[board.positions().size()];
 
-                        break;
-                    }
-                    //Se invece trovo una pedina del colore delle pedina principale, aumento il counter di 1;
-                    else if (board.get(p1) != null && board.get(p1).color.equals(colorePedina))
-                        counter++;
+        //Copio la disposizione delle pedine;
+        for (int i = 0 ; i < celle.length ; i++) {
+            PieceModel<Species> pedina = board.get(board.positions().get(i));
 
-                        //Se invece trovo una pedina del colore opposto, termino il ciclo;
-                    else if (board.get(p1) != null && !board.get(p1).color.equals(colorePedina)) {
-                        mosseRimanentiNero = mosseDelNero;
+            if (pedina != null)
+                celle[i] = pedina.color.equals("nero") ? 1 : 2;
+        }
 
-                        break;
-                    }
-                    //Se invece trovo una casella vuota ed il nero ha ancora a disposizione alcune pedine, metto una 'pedina immaginaria' nera al suo posto;
-                    else if (board.get(p1) == null && mosseRimanentiNero > 0) {
-                        mosseRimanentiNero--;
-                        counter++;
-                    }
+        //L'esito attuale, come in hash();
+        int esito = statoGioco;
 
-                    //Se il nero non ha più pedine, esco;
-                    else if (mosseRimanentiNero == 0) {
-                        mosseRimanentiNero = mosseDelNero;
+        if (esito == -1 && !cronologiaMosse.isEmpty() && cronologiaMosse.get(cronologiaMosse.size() - 1).kind == Move.Kind.RESIGN)
+            esito = 3 - turn;
+        else if (esito == -1)
+            esito = esito();
 
-                        break;
-                    }
+        return new PlayoutMNK(adiacenze(board.width(), board.height()), celle, lunghezzaLinea, turn, esito);
+    }
 
-                    //Se ho trovato una linea che permette la vittoria, vuol dire che non siamo ancora in un caso di parita certa, quindi la partita puo continuare;
-                    if (counter == lunghezzaLinea) {
-                        mosseRimanentiNero = mosseDelNero;
+    /**L'indice in board.positions() della posizione p, -1 se non è della board*/
+    private int indice(Pos p) {
+        return p.b < board.width() && p.t < board.height() ? p.b + p.t * board.width() : -1;
+    }
 
-                        return statoGioco;
-                    }
+    /**Mette il pezzo nella posizione, aggiornando lo hash della board*/
+    private void metti(PieceModel<Species> pezzo, Pos p) {
+        hashBoard ^= zobrist.key(p, board.put(pezzo, p)) ^ zobrist.key(p, pezzo);
+    }
 
-                }
+    /**Le chiavi di Zobrist per la board m x n, create una volta sola per ogni dimensione*/
+    private static Zobrist<PieceModel<Species>> zobrist(int m, int n) {
+        Zobrist<PieceModel<Species>> chiavi = CHIAVI.get(m * 32 + n);
 
-            }
+        if (chiavi == null)
+            chiavi = CHIAVI.computeIfAbsent(m * 32 + n, k -> new Zobrist<>(new BoardOct<>(m, n).positions(), PEZZI, 2));
 
-            mosseRimanentiNero = mosseDelNero;
-        }
+        return chiavi;
+    }
 
-        //Se invece sono arrivato fin qui, controllo il caso di parità certa a board non piena (Per i bianchi);
-        for (Pos p : board.positions()) {
-            int mosseDelBianco = mosseRimanentiBianco;
+    /**Le adiacenze della board m x n, calcolate una volta sola per ogni dimensione*/
+    private static int[][] adiacenze(int m, int n) {
+        int[][] tabella = ADIACENZE.get(m * 32 + n);
 
-            //Ignoro le caselle piene;
-            if (board.get(p) != null)
-                continue;
+        if (tabella == null)
+            tabella = ADIACENZE.computeIfAbsent(m * 32 + n, k -> Utils.adjacencies(new BoardOct<>(m, n)));
 
-            board.put(new PieceModel<>(PieceModel.Species.DISC, "bianco"), p);
-            mosseRimanentiBianco--;
-            PieceModel<Species> pedina = board.get(p);
+        return tabella;
+    }
 
-            String colorePedina = pedina.color;
+    /**L'esito della board nella situazione attuale: il giocatore che ha una linea
+       di K pedine, 0 se la patta è certa, -1 altrimenti*/
+    private int esito() {
+        if (esitiDopoMossa.isEmpty())
+            return esitoIniziale;
 
-            //Per ogni direzione;
-            for (Board.Dir direzione : listaDirezioni) {
-                Pos p1 = p;
-                int counter = 1;
+        return esitiDopoMossa.get(esitiDopoMossa.size() - 1);
+    }
 
-                //Inizio il ciclo;
-                while (true) {
+    /**Il giocatore che ha una linea di K pedine nella situazione attuale, 0 se nessuno*/
+    private int vincitore() { return Math.max(esito(), 0); }
 
-                    /*Prendo, ad ogni ciclo del while, la casella
-                    adiacente a quella attuale, finche non trovo una
-                    casella che sia dell'altro colore oppure null*/
-                    p1 = board.adjacent(p1, direzione);
+    /**Ritorna true se la pedina in p fa parte di una linea di almeno K pedine
+       dello stesso colore, controllando solamente i quattro assi che passano per p*/
+    private boolean lineaCompleta(Pos p) {
 
-                    //Se p1 non è una casella della board, termino il ciclo!;
-                    if (p1 == null) {
-                        mosseRimanentiBianco = mosseDelBianco - 1;
+        //Nessuna pedina (succede se la mossa è fatta a gioco terminato, come nel mechanics);
+        if (board.get(p) == null)
+            return false;
 
-                        break;
-                    }
-                    //Se invece trovo una pedina del colore delle pedina principale, aumento il counter di 1;
-                    else if (board.get(p1) != null && board.get(p1).color.equals(colorePedina))
-                        counter++;
+        String colore = board.get(p).color;
 
-                        //Se invece trovo una pedina del colore opposto, termino il ciclo;
-                    else if (board.get(p1) != null && !board.get(p1).color.equals(colorePedina)) {
-                        mosseRimanentiBianco = mosseDelBianco - 1;
+        for (int[] asse : ASSI) {
+            int contatore = 1;
 
-                        break;
-                    }
-                    //Se invece trovo una casella vuota ed il nero ha ancora a disposizione alcune pedine, metto una 'pedina immaginaria' nera al suo posto;
-                    else if (board.get(p1) == null && mosseRimanentiNero > 0) {
-                        mosseRimanentiBianco--;
-                        counter++;
-                    }
+            //Conto le pedine dello stesso colore in un verso e nell'altro;
+            for (int verso = 1 ; verso >= -1 ; verso -= 2) {
+                int b = p.b + verso * asse[0], t = p.t + verso * asse[1];
 
-                    //Se il nero non ha più pedine, esco;
-                    else if (mosseRimanentiNero == 0) {
-                        mosseRimanentiBianco = mosseDelBianco - 1;
+                while (b >= 0 && t >= 0 && b < board.width() && t < board.height()) {
+                    PieceModel<Species> pedina = board.get(Pos.of(b, t));
 
+                    if (pedina == null || !pedina.color.equals(colore))
                         break;
-                    }
-
-                    //Se ho trovato una linea che permette la vittoria, vuol dire che non siamo ancora in un caso di parita certa, quindi la partita puo continuare;
-                    if (counter == lunghezzaLinea) {
-                        mosseRimanentiBianco = mosseDelBianco;
-                        board.remove(p);
-
-                        return statoGioco;
-                    }
 
+                    contatore++;
+                    b += verso * asse[0];
+                    t += verso * asse[1];
                 }
-
             }
 
-            //Rimuovo il pezzo messo all'inizio per il test della parità, per fare spazio ad un altro!
-            board.remove(p);
-            mosseRimanentiBianco = mosseDelBianco;
+            if (contatore >= lunghezzaLinea)
+                return true;
         }
 
-        //Se invece sono arrivato fin qui, controllo il caso di parità certa a board non piena (Per i bianchi);
-        for (Pos p : board.positions()) {
-            int mosseDelBianco = mosseRimanentiBianco;
-
-            //Ignoro le caselle vuote;
-            if (board.get(p) == null)
-                continue;
+        return false;
+    }
 
+    /**Cerca una linea di K pedine su tutta la board, ritorna il giocatore che la
+       possiede oppure 0 se non ce ne sono*/
+    private int cercaVincitore() {
+        for (Pos p : board.positions()) {
             PieceModel<Species> pedina = board.get(p);
-            String colorePedina = pedina.color;
 
-            //Per ogni direzione;
-            for (Board.Dir direzione : listaDirezioni) {
-                Pos p1 = p;
-                int counter = 1;
+            if (pedina != null && lineaCompleta(p))
+                return pedina.color.equals("nero") ? 1 : 2;
+        }
 
-                //Inizio il ciclo;
-                while (true) {
+        return 0;
+    }
 
-                    /*Prendo, ad ogni ciclo del while, la casella
-                    adiacente a quella attuale, finche non trovo una
-                    casella che sia dell'altro colore oppure null*/
-                    p1 = board.adjacent(p1, direzione);
+    /**L'esito della board calcolato da zero (come in {@link MNKgame#esito()})*/
+    private int calcolaEsito() {
+        int vincitore = cercaVincitore();
 
-                    //Se p1 non è una casella della board, termino il ciclo!;
-                    if (p1 == null) {
-                        mosseRimanentiBianco = mosseDelBianco;
+        if (vincitore != 0)
+            return vincitore;
 
-                        break;
-                    }
-                    //Se invece trovo una pedina del colore delle pedina principale, aumento il counter di 1;
-                    else if (board.get(p1) != null && board.get(p1).color.equals(colorePedina))
-                        counter++;
+        return pattaCerta() ? 0 : -1;
+    }
 
-                        //Se invece trovo una pedina del colore opposto, termino il ciclo;
-                    else if (board.get(p1) != null && !board.get(p1).color.equals(colorePedina)) {
-                        mosseRimanentiBianco = mosseDelBianco;
+    /**Ritorna true se la board è piena o se nessun giocatore può più completare una
+       linea di K pedine con le pedine che gli rimangono. Le pedine 'immaginarie' non
+       sono messe sulla board: si conta solamente quante ne servirebbero*/
+    private boolean pattaCerta() {
 
-                        break;
-                    }
-                    //Se invece trovo una casella vuota ed il nero ha ancora a disposizione alcune pedine, metto una 'pedina immaginaria' nera al suo posto;
-                    else if (board.get(p1) == null && mosseRimanentiNero > 0) {
-                        mosseRimanentiBianco--;
-                        counter++;
-                    }
+        //Se la board è piena, è necessariamente finita in patta;
+        if (mosseRimanentiNero == 0 && mosseRimanentiBianco == 0)
+            return true;
 
-                    //Se il nero non ha più pedine, esco;
-                    else if (mosseRimanentiBianco == 0) {
-                        mosseRimanentiBianco = mosseDelBianco;
+        for (Pos p : board.positions()) {
+            PieceModel<Species> pedina = board.get(p);
 
-                        break;
-                    }
+            //Le caselle vuote, con una pedina immaginaria del nero o del bianco...
+            if (pedina == null) {
+                if (lineaPossibile(p, "nero", mosseRimanentiNero - 1, false, false)
+                        || lineaPossibile(p, "bianco", mosseRimanentiBianco - 1, true, false))
+                    return false;
+            }
 
-                    //Se ho trovato una linea che permette la vittoria, vuol dire che non siamo ancora in un caso di parita certa, quindi la partita puo continuare;
-                    if (counter == lunghezzaLinea) {
-                        mosseRimanentiBianco = mosseDelBianco;
+            //...e le pedine già messe;
+            else if (lineaPossibile(p, pedina.color, mosseRimanentiNero, false, false)
+                    || lineaPossibile(p, pedina.color, mosseRimanentiBianco, true, true))
+                return false;
+        }
 
-                        return statoGioco;
-                    }
+        //Non c'è possibilità di vittoria per entrambi, ed è quindi patta;
+        return true;
+    }
 
+    /**Ritorna true se, partendo da p (con una pedina del colore dato) ed andando in
+       una delle direzioni, si arriva a K pedine del colore, mettendo nelle caselle
+       vuote al più {@code rimanenti} pedine immaginarie. Per il bianco le caselle
+       vuote si riempiono finché il nero ha pedine, e se {@code saltaVuote} le
+       caselle vuote che non si riempiono sono saltate finché {@code rimanenti} non
+       arriva a 0 (come è sempre stato controllato)*/
+    private boolean lineaPossibile(Pos p, String colore, int rimanenti, boolean bianco, boolean saltaVuote) {
+        for (Board.Dir direzione : listaDirezioni) {
+            Pos p1 = p;
+            int counter = 1;
+            int mosse = rimanenti;
+
+            while (true) {
+                p1 = board.adjacent(p1, direzione);
+
+                //Se p1 non è una casella della board, o è dell'altro colore, cambio direzione;
+                if (p1 == null)
+                    break;
+
+                PieceModel<Species> pedina = board.get(p1);
+
+                if (pedina != null && pedina.color.equals(colore))
+                    counter++;
+                else if (pedina != null)
+                    break;
+
+                //Se trovo una casella vuota e ci sono ancora pedine, metto una 'pedina immaginaria';
+                else if (bianco ? mosseRimanentiNero > 0 : mosse > 0) {
+                    mosse--;
+                    counter++;
                 }
 
-            }
+                else if (!saltaVuote || mosse == 0)
+                    break;
 
-            mosseRimanentiBianco = mosseDelBianco;
+                //Se ho trovato una linea che permette la vittoria, la partita può continuare;
+                if (counter == lunghezzaLinea)
+                    return true;
+            }
         }
 
-        //Se sono giunto fin qui, non c'è possibilità di vittoria per entrambi, ed è quindi patta;
-        statoGioco = 0;
-        return statoGioco;
+        return false;
     }
 
-    /** Ogni mossa (diversa dall'abbandono) è rappresentata da una sola {@link Action}
-     * di tipo {@link Action.Kind#ADD}. */
     @Override
-    public Set<Move<PieceModel<Species>>> validMoves() {
-        Set<Move<PieceModel<PieceModel.Species>>> insieme = new HashSet<>();
-        insieme.add(new Move<>(Move.Kind.RESIGN));
-        String player;
+    public Mechanics<PieceModel<Species>> mechanics() { return mechanics(false); }
+
+    /** Come {@link MNKgame#mechanics()}, ma se {@code parallel} è true le situazioni
+     * successive di ogni situazione sono calcolate dai thread del
+     * {@link ForkJoinPool#commonPool()}, dividendo le mosse tra più partite di
+     * appoggio. Conviene solamente per board grandi e se chi invoca il
+     * {@link Next} non usa già tutti i processori. Le partite di appoggio sono
+     * riusate: ogni thread ne ha una, riportata alla situazione ad ogni invocazione.
+     * @param parallel  se calcolare in parallelo le situazioni successive
+     * @return la meccanica del gioco */
+    public Mechanics<PieceModel<Species>> mechanics(boolean parallel) {
+        Map<Pos,PieceModel<Species>> mappa = new HashMap<>();
 
-        //Associo il colore in base al turno;
-        if (turn == 1)
-            player = "nero";
-        else
-            player = "bianco";
+        //Creo una 'falsa' partita per crearmi il Situation;
+        MNKgame pseudoMNK = new MNKgame(tempo, board.width(), board.height(), lunghezzaLinea, "Andrea", "Gattuso");
 
-        //Se il gioco è terminato;
-        if (statoGioco != -1)
-            throw new IllegalStateException();
+        //Per ogni posizione della board, associo quella posizione
+        // al pezzo che contiene;
+        for (Pos p : pseudoMNK.board.positions())
+            if (pseudoMNK.board.get(p) != null)
+                mappa.put(p, pseudoMNK.board.get(p));
 
-        //Per ogni riga della board;
-        for (Pos p : board.positions()) {
+        //La partita di appoggio di ogni thread, su cui faccio e disfo le mosse;
+        ThreadLocal<MNKgame> libere = new ThreadLocal<>();
 
-            //Se quella casella è vuota;
-            if (board.get(p) == null) {
+        Next<PieceModel<Species>> nextFunc2 = (s) -> {
+            Objects.requireNonNull(s);
 
-                //Creo l'azione ADD per quella casella;
-                Action<PieceModel<Species>> azione = new Action<>(p, new PieceModel<>(PieceModel.Species.DISC, player));
+            //Se la situazione è finale non ci sono mosse;
+            if (s.turn <= 0) return new HashMap<>();
 
-                //Creo la mossa ACTION che fa quell'azione;
-                Move<PieceModel<PieceModel.Species>> mossa = new Move(azione);
+            //Porto la partita di appoggio nella Situation...
+            MNKgame appoggio = appoggio(libere, s);
+            List<Move<PieceModel<Species>>> mosse = new ArrayList<>();
+            int parti;
 
-                //Aggiungo l'azione all'insieme delle mosse valide;
-                insieme.add(mossa);
+            try {
+
+                //...e creo la lista delle mosse valide, escluso l'abbandono;
+                for (Move<PieceModel<Species>> mossa : appoggio.validMoves())
+                    if (!mossa.kind.equals(Move.Kind.RESIGN))
+                        mosse.add(mossa);
+
+                parti = parallel ? Math.min(mosse.size(), ForkJoinPool.getCommonPoolParallelism()) : 1;
 
+                if (parti <= 1)
+                    return successive(appoggio, s, mosse);
+
+            } finally {
+                libere.set(appoggio);
             }
 
-        }
+            //Ogni parte delle mosse usa la partita di appoggio del thread che la esegue;
+            List<Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>>> mappe = IntStream.range(0, parti).parallel()
+                    .mapToObj(i -> {
+                        MNKgame partita = appoggio(libere, s);
 
-        return insieme;
-    }
+                        try {
+                            return successive(partita, s, mosse.subList(i * mosse.size() / parti, (i + 1) * mosse.size() / parti));
+                        } finally {
+                            libere.set(partita);
+                        }
+                    })
+                    .collect(Collectors.toList());
 
-    @Override
-    public GameRuler<PieceModel<Species>> copy() {
+            Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>> mappona = new HashMap<>();
 
-        //Inizializzo il gameruler;
-        MNKgame partita = new MNKgame(tempo, board.width(), board.height(),
-                lunghezzaLinea, nomiGiocatori.get(0), nomiGiocatori.get(1));
+            for (Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>> m : mappe)
+                mappona.putAll(m);
 
-        //Copio la disposizione dei pezzi;
-        for (Map.Entry<Pos,PieceModel<Species>> e : board.mappaPosToPiece.entrySet()) {
-            Pos p = e.getKey();
-            PieceModel<PieceModel.Species> pm = e.getValue();
+            return mappona;
+        };
 
-            if (pm == null)
-                continue;
+        return new Mechanics<>(tempo, PEZZI,
+                Collections.unmodifiableList(board.positions()), 2, new Situation<>(mappa, 1), nextFunc2);
+    }
 
-            partita.board.put(pm, p);
-        }
+    /**La partita di appoggio del thread, creata se non c'è, portata nella situazione
+       data (non terminata) e senza cronologia. È tolta da libere finché non è rimessa,
+       così non è usata anche da un'altra invocazione nello stesso thread (un task
+       eseguito dal thread mentre aspetta), che ne crea un'altra*/
+    private MNKgame appoggio(ThreadLocal<MNKgame> libere, Situation<PieceModel<Species>> s) {
+        MNKgame partita = libere.get();
+        libere.set(null);
 
-        //Copio i loro colori;
-        partita.colorFirstplayer = colorFirstplayer;
-        partita.colorSecondPlayer = colorSecondPlayer;
+        if (partita == null)
+            partita = new MNKgame(tempo, board.width(), board.height(), lunghezzaLinea, "Andrea", "Gattuso");
 
-        //Copio le pedine rimanenti;
-        partita.mosseRimanentiNero = mosseRimanentiNero;
-        partita.mosseRimanentiBianco = mosseRimanentiBianco;
+        //Porto la board alla Situation che mi interessa, cambiando solamente le posizioni diverse;
+        int pedine = 0;
 
-        //Copio lo stato del gioco;
-        partita.statoGioco = statoGioco;
+        for (Pos p : partita.board.positions()) {
+            PieceModel<Species> pezzo = s.get(p), attuale = partita.board.get(p);
 
-        //Copio il turno;
-        partita.turn = turn;
+            if (pezzo != null) {
+                pedine++;
 
-        //Copio la lunghezza della linea;
-        partita.lunghezzaLinea = lunghezzaLinea;
+                if (!pezzo.equals(attuale))
+                    partita.board.put(pezzo, p);
+            }
 
-        //...e la cronologia!
-        for (Move<PieceModel<PieceModel.Species>> mossa : cronologiaMosse)
-            partita.cronologiaMosse.add(mossa);
+            else if (attuale != null)
+                partita.board.remove(p);
+        }
 
+        //Do ad ogni giocatore di questa partita le pedine rimaste (il nero ha messo la prima);
+        int celle = partita.board.positions().size();
+        partita.mosseRimanentiNero = (celle + 1) / 2 - (pedine + 1) / 2;
+        partita.mosseRimanentiBianco = celle / 2 - pedine / 2;
+
+        partita.cronologiaMosse = new ListaPersistente<>();
+        partita.esitiDopoMossa = new ListaPersistente<>();
+        partita.statoGioco = -1;
+        partita.turn = s.turn;
+        partita.esitoIniziale = partita.calcolaEsito();
+        partita.hashBoard = zobrist.hash(partita.board::get);
         return partita;
     }
 
-    @Override
-    public Mechanics<PieceModel<Species>> mechanics() {
-        Map<Pos,PieceModel<Species>> mappa = new HashMap<>();
+    /**Le situazioni che si ottengono con le mosse date dalla situazione s, in cui si
+       trova la partita: ogni mossa è fatta e subito annullata, quindi alla fine la
+       partita è ancora in s*/
+    private static Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>> successive(MNKgame partita,
+                                            Situation<PieceModel<Species>> s, List<Move<PieceModel<Species>>> mosse) {
+        Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>> mappona = new HashMap<>();
 
-        //Creo una 'falsa' partita per crearmi il Situation;
-        MNKgame pseudoMNK = new MNKgame(tempo, board.width(), board.height(), lunghezzaLinea, "Andrea", "Gattuso");
-
-        //Per ogni posizione della board, associo quella posizione
-        // al pezzo che contiene;
-        for (Pos p : pseudoMNK.board.positions())
-            if (pseudoMNK.board.get(p) != null)
-                mappa.put(p, pseudoMNK.board.get(p));
+        //Le mosse sono valide in s, quindi le eseguo senza ricalcolare le mosse valide;
+        for (Move<PieceModel<Species>> mossa : mosse) {
+            partita.esegui(mossa);
 
-        Next<PieceModel<Species>> nextFunc2 = (s) -> {
-            Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>> mappona = new HashMap<>();
+            //La disposizione è quella di s con la pedina messa;
+            Map<Pos,PieceModel<Species>> mappaRelativaAllaMossa = s.newMap();
+            mappaRelativaAllaMossa.put(mossa.actions.get(0).pos.get(0), mossa.actions.get(0).piece);
 
-            Objects.requireNonNull(s);
+            //Prelevo lo stato del gioco in questa situazione;
+            int statoAttuale = partita.result();
 
-            //Creo una 'falsa' partita per crearmi il Situation nel Next;
-            MNKgame pseudoMNKNext = new MNKgame(tempo, board.width(), board.height(), lunghezzaLinea, "Andrea", "Gattuso");
-            pseudoMNKNext.turn = s.turn;
+            if (statoAttuale != -1)
+                mappona.put(mossa, new Situation<>(mappaRelativaAllaMossa, - statoAttuale));
+            else
+                mappona.put(mossa, new Situation<>(mappaRelativaAllaMossa, partita.turn));
 
-            //Do ad ogni giocatore di questa partita le pedine rimaste;
-            if (s.newMap().size() % 2 == 0) {
+            partita.unMove();
+        }
 
-                pseudoMNKNext.mosseRimanentiNero = pseudoMNKNext.mosseRimanentiNero - (s.newMap().size()) / 2;
-                pseudoMNKNext.mosseRimanentiBianco = pseudoMNKNext.mosseRimanentiBianco - (s.newMap().size()) / 2;
+        return mappona;
+    }
 
-            } else if (s.newMap().size() % 2 == 1) {
 
-                pseudoMNKNext.mosseRimanentiNero = pseudoMNKNext.mosseRimanentiNero - (s.newMap().size()) / 2 + 1;
-                pseudoMNKNext.mosseRimanentiBianco = pseudoMNKNext.mosseRimanentiBianco - (s.newMap().size()) / 2;
+    /**Il Playout di un m,n,k-game: le posizioni vuote sono tenute in un array (con
+       l'indice di ogni posizione nell'array), quindi una mossa a caso costa O(1) e
+       il controllo della linea guarda solamente i quattro assi della pedina messa*/
+    private static class PlayoutMNK implements Playout {
+
+        private PlayoutMNK(int[][] adiacenze, int[] celle, int k, int turno, int risultato) {
+            this.adiacenze = adiacenze;
+            this.k = k;
+            inizio = celle;
+            turnoInizio = turno;
+            risultatoInizio = risultato;
+            this.celle = new int[celle.length];
+            vuote = new int[celle.length];
+            indiceVuota = new int[celle.length];
+            reset();
+        }
 
-            }
+        //Le direzioni (indicizzate con l'ordinal) dei due versi di ogni asse;
+        private static final int[][] VERSI = {
+                {Board.Dir.UP.ordinal(), Board.Dir.DOWN.ordinal()},
+                {Board.Dir.LEFT.ordinal(), Board.Dir.RIGHT.ordinal()},
+                {Board.Dir.UP_L.ordinal(), Board.Dir.DOWN_R.ordinal()},
+                {Board.Dir.UP_R.ordinal(), Board.Dir.DOWN_L.ordinal()}};
 
-            //Porto la board alla Situation che mi interessa;
-            for (Pos p : pseudoMNKNext.board.positions()) {
-                PieceModel<Species> pezzo = s.get(p);
+        private final int[][] adiacenze;
+        private final int k, turnoInizio, risultatoInizio;
+        private final int[] inizio, celle, vuote, indiceVuota;
+        private int turno, risultato, numVuote;
 
-                if (pezzo != null)
-                    pseudoMNKNext.board.put(pezzo, p);
-            }
+        @Override
+        public int turn() { return risultato == -1 ? turno : 0; }
 
-            //Creo l'insieme delle mosse valide;
-            Set<Move<PieceModel<Species>>> mosseValide = pseudoMNKNext.validMoves();
+        @Override
+        public int result() { return risultato; }
 
-            //Per ogni mossa possibile da questa situazione di gioco:
-            for (Move<PieceModel<Species>> mossa : mosseValide) {
+        @Override
+        public int randomMove(Random rnd) {
+            return risultato == -1 ? vuote[rnd.nextInt(numVuote)] : -1;
+        }
 
-                //Se è una mossa RESIGN, ignorala;
-                if (mossa.kind.equals(Move.Kind.RESIGN))
-                    continue;
+        @Override
+        public void apply(int m) {
+            if (risultato != -1) throw new IllegalStateException();
 
-                //Altrimenti, inizializzo la mappa della Situation...
-                Map<Pos,PieceModel<Species>> mappaRelativaAllaMossa = new HashMap<>();
+            celle[m] = turno;
 
-                //Creo un'altra 'falsa' partita per crearmi il Situation nel Next;
-                MNKgame pseudoMNKNext2 = (MNKgame) pseudoMNKNext.copy();
+            //Tolgo la posizione dalle vuote mettendo al suo posto l'ultima;
+            int i = indiceVuota[m], ultima = vuote[--numVuote];
+            vuote[i] = ultima;
+            indiceVuota[ultima] = i;
 
-                //...ed eseguo la mossa!
-                pseudoMNKNext2.move(mossa);
+            if (linea(m))
+                risultato = turno;
+            else if (numVuote == 0)
+                risultato = 0;
 
-                //Per ogni posizione di QUESTA board, associo quella posizione al pezzo che contiene;
-                for (Pos p : pseudoMNKNext2.board.positions()) {
-                    PieceModel<Species> pezzo2 = pseudoMNKNext2.board.get(p);
+            turno = 3 - turno;
+        }
 
-                    if (pezzo2 != null)
-                        mappaRelativaAllaMossa.put(p, pezzo2);
+        @Override
+        public void reset() {
+            System.arraycopy(inizio, 0, celle, 0, celle.length);
+            turno = turnoInizio;
+            risultato = risultatoInizio;
+            numVuote = 0;
+
+            for (int p = 0 ; p < celle.length ; p++)
+                if (celle[p] == 0) {
+                    indiceVuota[p] = numVuote;
+                    vuote[numVuote++] = p;
                 }
 
-                //Creo la situazione a cui sono arrivato,
-                // e la aggiungo alla mappa del Next;
-                Situation<PieceModel<Species>> situazionePerQuestaMossa = null;
+            //Nessuna posizione vuota, la partita non può continuare;
+            if (risultato == -1 && numVuote == 0)
+                risultato = 0;
+        }
 
-                //Prelevo lo stato del gioco in questa situazione;
-                int statoAttuale = pseudoMNKNext2.result();
+        /**Ritorna true se la pedina in p fa parte di una linea di almeno K pedine*/
+        private boolean linea(int p) {
+            for (int[] versi : VERSI) {
+                int contatore = 1;
 
-                if (statoAttuale != -1)
-                    situazionePerQuestaMossa = new Situation<>(mappaRelativaAllaMossa, - statoAttuale);
-                else
-                    situazionePerQuestaMossa = new Situation<>(mappaRelativaAllaMossa, pseudoMNKNext2.turn);
+                for (int verso : versi)
+                    for (int q = adiacenze[verso][p] ; q >= 0 && celle[q] == celle[p] ; q = adiacenze[verso][q])
+                        contatore++;
 
-                //Aggiungo chiave e valore alla mappa principale del Next;
-                mappona.put(mossa, situazionePerQuestaMossa);
+                if (contatore >= k)
+                    return true;
             }
 
-            return mappona;
-        };
-
-        return new Mechanics<>(tempo,
-                Collections.unmodifiableList(Arrays.asList(new PieceModel<>(Species.DISC, "nero"), new PieceModel<>(Species.DISC, "bianco"))),
-                Collections.unmodifiableList(board.positions()), 2, new Situation<>(mappa, 1), nextFunc2);
+            return false;
+        }
     }
 
 }
@@ -2,15 +2,17 @@ package gapp.ulg.games;
 
 import gapp.ulg.game.board.*;
 import gapp.ulg.game.util.BoardOct;
+import gapp.ulg.game.util.ListaPersistente;
 import gapp.ulg.game.util.Utils;
+import gapp.ulg.game.util.Zobrist;
 
 import static gapp.ulg.game.board.PieceModel.Species;
 
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /** <b>IMPLEMENTARE I METODI SECONDO LE SPECIFICHE DATE NEI JAVADOC. Non modificare
  * le intestazioni dei metodi.</b>
@@ -61,10 +63,10 @@ public class Othello implements GameRuler<PieceModel<Species>> {
         board = new BoardOct<>(8,8);
 
         //Metto i pezzi di partenza;
-        board.put(new PieceModel<>(PieceModel.Species.DISC, "bianco"), new Pos(3, 4));
-        board.put(new PieceModel<>(PieceModel.Species.DISC, "bianco"), new Pos(4, 3));
-        board.put(new PieceModel<>(PieceModel.Species.DISC, "nero"), new Pos(3, 3));
-        board.put(new PieceModel<>(PieceModel.Species.DISC, "nero"), new Pos(4, 4));
+        board.put(PieceModel.of(PieceModel.Species.DISC, "bianco"), Pos.of(3, 4));
+        board.put(PieceModel.of(PieceModel.Species.DISC, "bianco"), Pos.of(4, 3));
+        board.put(PieceModel.of(PieceModel.Species.DISC, "nero"), Pos.of(3, 3));
+        board.put(PieceModel.of(PieceModel.Species.DISC, "nero"), Pos.of(4, 4));
 
         //Lista con i nomi dei giocatori...
         nomiGiocatori = new ArrayList<>();
@@ -82,7 +84,7 @@ public class Othello implements GameRuler<PieceModel<Species>> {
         turn = 1;
 
         //Inizializzo la lista delle mosse finora effettuate;
-        cronologiaMosse = new ArrayList<>();
+        cronologiaMosse = new ListaPersistente<>();
 
         //Il tempo per fare una mossa!
         tempo = -1;
@@ -90,6 +92,13 @@ public class Othello implements GameRuler<PieceModel<Species>> {
         //...e la grandezza della board!
         grandezzaBoard = 8;
 
+        //Lo hash della disposizione iniziale;
+        zobrist = zobrist(8);
+        hashBoard = zobrist.hash(board::get);
+
+        //Le caselle in cui ogni giocatore può mettere una pedina;
+        calcolaMobilita();
+
     }
 
     /** Crea un GameRuler per fare una partita a Othello.
@@ -114,10 +123,10 @@ public class Othello implements GameRuler<PieceModel<Species>> {
         board = new BoardOct<>(size, size);
 
         //Metto i pezzi di partenza;
-        board.put(new PieceModel<>(PieceModel.Species.DISC, "bianco"), new Pos((size / 2) - 1, (size / 2)));
-        board.put(new PieceModel<>(PieceModel.Species.DISC, "bianco"), new Pos((size / 2), (size / 2) - 1));
-        board.put(new PieceModel<>(PieceModel.Species.DISC, "nero"), new Pos((size / 2) - 1, (size / 2) - 1));
-        board.put(new PieceModel<>(PieceModel.Species.DISC, "nero"), new Pos((size / 2), (size / 2)));
+        board.put(PieceModel.of(PieceModel.Species.DISC, "bianco"), Pos.of((size / 2) - 1, (size / 2)));
+        board.put(PieceModel.of(PieceModel.Species.DISC, "bianco"), Pos.of((size / 2), (size / 2) - 1));
+        board.put(PieceModel.of(PieceModel.Species.DISC, "nero"), Pos.of((size / 2) - 1, (size / 2) - 1));
+        board.put(PieceModel.of(PieceModel.Species.DISC, "nero"), Pos.of((size / 2), (size / 2)));
 
         //Lista con i nomi dei giocatori...
         nomiGiocatori = new ArrayList<>();
@@ -135,7 +144,7 @@ public class Othello implements GameRuler<PieceModel<Species>> {
         turn = 1;
 
         //Inizializzo la lista delle mosse finora effettuate;
-        cronologiaMosse = new ArrayList<>();
+        cronologiaMosse = new ListaPersistente<>();
 
         //Il tempo massimo per eseguire una mossa!
         tempo = time;
@@ -143,6 +152,13 @@ public class Othello implements GameRuler<PieceModel<Species>> {
         //...e la grandezza della board!
         grandezzaBoard = size;
 
+        //Lo hash della disposizione iniziale;
+        zobrist = zobrist(size);
+        hashBoard = zobrist.hash(board::get);
+
+        //Le caselle in cui ogni giocatore può mettere una pedina;
+        calcolaMobilita();
+
     }
 
     public BoardOct<PieceModel<Species>> board;
@@ -155,6 +171,27 @@ public class Othello implements GameRuler<PieceModel<Species>> {
     public long tempo;
     public int grandezzaBoard;
 
+    //Le mosse valide della situazione attuale, null se da ricalcolare;
+    private Set<Move<PieceModel<Species>>> mosseValideCache;
+
+    /*Per ogni giocatore (indice turno - 1) se può mettere una pedina nella casella di
+      indice i (come in board.positions()) e il numero di queste caselle; aggiornati ad
+      ogni mossa e condivisi con le copie finché una delle due non li modifica*/
+    private boolean[][] mobilita;
+    private int[] mobili;
+    private boolean mobilitaCondivisa;
+
+    //Le chiavi di Zobrist (condivise tra le partite con la stessa board) e lo hash della board senza il turno;
+    private final Zobrist<PieceModel<Species>> zobrist;
+    private long hashBoard;
+
+    private static final List<PieceModel<Species>> PEZZI = Collections.unmodifiableList(Arrays.asList(
+            PieceModel.of(Species.DISC, "nero"), PieceModel.of(Species.DISC, "bianco")));
+    private static final Map<Integer, Zobrist<PieceModel<Species>>> CHIAVI = new ConcurrentHashMap<>();
+
+    //Le tabelle delle adiacenze per i Playout, condivise tra le partite con la stessa board;
+    private static final Map<Integer, int[][]> ADIACENZE = new ConcurrentHashMap<>();
+
     public static List<Board.Dir> listaDirezioni = Arrays.asList(Board.Dir.UP, Board.Dir.UP_R, Board.Dir.RIGHT, Board.Dir.DOWN_R, Board.Dir.DOWN, Board.Dir.DOWN_L, Board.Dir.LEFT, Board.Dir.UP_L);
 
     /** Il nome rispetta il formato:
@@ -290,56 +327,71 @@ public class Othello implements GameRuler<PieceModel<Species>> {
      * giocatore. */
     @Override
     public boolean move(Move<PieceModel<Species>> m) {
-        Boolean moveIsOk = false;
         Set<Move<PieceModel<Species>>> mosseValide = validMoves();
 
         Objects.requireNonNull(m);
 
-        //Se il gioco è terminato;
-        if (statoGioco != -1)
-            throw new IllegalStateException();
-
         //Se m è una mossa valida per l'attuale situazione di gioco;
-        else if (mosseValide.contains(m)) {
-            moveIsOk = true;
+        if (mosseValide.contains(m)) {
+            esegui(m);
+            return true;
+        }
 
-            //Se m è una mossa Action;
-            if (m.kind.equals(Move.Kind.ACTION)) {
-                String colore = null;
+        //Altrimenti il giocatore perde, quindi pongo il turno uguale a 0, e passo la vittoria all'altro giocatore;
+        statoGioco = 3 - turn;
+        turn = 0;
+        return false;
+    }
 
-                if (turn == 1)
-                    colore = "nero";
-                else if (turn == 2)
-                    colore = "bianco";
+    /**Esegue la mossa m, che è valida*/
+    private void esegui(Move<PieceModel<Species>> m) {
 
-                //Metto il pezzo nella casella vuota...
-                board.put(new PieceModel<>(PieceModel.Species.DISC, colore), m.actions.get(0).pos.get(0));
+        //Se m è una mossa Action;
+        if (m.kind.equals(Move.Kind.ACTION)) {
+            String colore = null;
 
-                //...e per ogni posizione SWAP....
-                for (Pos p : m.actions.get(1).pos)
-                    board.put(new PieceModel<>(PieceModel.Species.DISC, colore), p);
+            if (turn == 1)
+                colore = "nero";
+            else if (turn == 2)
+                colore = "bianco";
 
-                turn = 3 - turn;
-                cronologiaMosse.add(m);
+            //Metto il pezzo nella casella vuota...
+            metti(PieceModel.of(PieceModel.Species.DISC, colore), m.actions.get(0).pos.get(0));
 
-            }
+            //...e per ogni posizione SWAP....
+            for (Pos p : m.actions.get(1).pos)
+                metti(PieceModel.of(PieceModel.Species.DISC, colore), p);
 
-            //Se invece è una mossa RESIGN;
-            else if (m.kind.equals(Move.Kind.RESIGN))
-                cronologiaMosse.add(m);
+            //Aggiorno le caselle di entrambi i giocatori vicine a quelle cambiate;
+            aggiornaMobilita(m);
 
-        }
+            turn = 3 - turn;
+            cronologiaMosse.add(m);
+            mosseValideCache = null;
 
-        //Se invece m non è una mossa valida;
-        else if (!mosseValide.contains(m)) {
+            //Se il giocatore di turno non ha mosse valide (eccetto l'abbandono) la partita termina;
+            if (!puoMuovere()) {
 
-            //Il giocatore perde, quindi pongo il turno uguale a 0, e passo la vittoria all'altro giocatore;
-            statoGioco = 3 - turn;
-            turn = 0;
+                //Trovo i punteggi;
+                double punteggio1 = score(1), punteggio2 = score(2);
+
+                if (punteggio1 > punteggio2)
+                    statoGioco = 1;
+                else if (punteggio1 < punteggio2)
+                    statoGioco = 2;
+                else
+                    statoGioco = 0;
+
+                turn = 0;
+            }
 
         }
 
-        return moveIsOk;
+        //Se invece è una mossa RESIGN, vince l'altro giocatore;
+        else if (m.kind.equals(Move.Kind.RESIGN)) {
+            cronologiaMosse.add(m);
+            statoGioco = 3 - turn;
+        }
     }
 
     @Override
@@ -352,7 +404,9 @@ public class Othello implements GameRuler<PieceModel<Species>> {
         if (cronologiaMosse.get(cronologiaMosse.size() - 1).kind.equals(Move.Kind.ACTION)) {
 
             //Rimuovo il pezzo che avevo messo nel turno precedente;
-            PieceModel<Species> pezzoTolto = board.remove(cronologiaMosse.get(cronologiaMosse.size() - 1).actions.get(0).pos.get(0));
+            Pos posizioneTolta = cronologiaMosse.get(cronologiaMosse.size() - 1).actions.get(0).pos.get(0);
+            PieceModel<Species> pezzoTolto = board.remove(posizioneTolta);
+            hashBoard ^= zobrist.key(posizioneTolta, pezzoTolto);
 
             //e per ogni posizione SWAP....
             for (Pos p : cronologiaMosse.get(cronologiaMosse.size() - 1).actions.get(1).pos) {
@@ -360,20 +414,27 @@ public class Othello implements GameRuler<PieceModel<Species>> {
 
                 //Inverto le pedine!
                 if (colore.equals("nero"))
-                    board.put(new PieceModel<>(PieceModel.Species.DISC, "bianco"), p);
+                    metti(PieceModel.of(PieceModel.Species.DISC, "bianco"), p);
 
                 else if (colore.equals("bianco"))
-                    board.put(new PieceModel<>(PieceModel.Species.DISC, "nero"), p);
+                    metti(PieceModel.of(PieceModel.Species.DISC, "nero"), p);
 
             }
 
+            //Le caselle vicine a quelle cambiate tornano come prima della mossa;
+            aggiornaMobilita(cronologiaMosse.get(cronologiaMosse.size() - 1));
+
             //Ripasso il turno all'altro giocatore!
             if (pezzoTolto.color.equals("nero")) turn = 1;
             else turn = 2;
 
+            //...che sicuramente poteva muovere!
+            statoGioco = -1;
+            mosseValideCache = null;
+
             //Se finora c'è stata una sola mossa;
             if (cronologiaMosse.size() == 1)
-                cronologiaMosse = new ArrayList<>();
+                cronologiaMosse = new ListaPersistente<>();
 
             //Altrimenti..
             else if (cronologiaMosse.size() > 1)
@@ -384,15 +445,12 @@ public class Othello implements GameRuler<PieceModel<Species>> {
         //Se invece è stata un RESIGN:
         else if (cronologiaMosse.get(cronologiaMosse.size() - 1).kind.equals(Move.Kind.RESIGN)) {
 
-            //Ripasso il turno all'altro giocatore!
-            turn =  2 - (cronologiaMosse.size() % 2);
-
-            //e riporto lo stato del gioco a -1!
+            //Il turno non è cambiato con l'abbandono, quindi riporto lo stato del gioco a -1!
             statoGioco = -1;
 
             //Se finora c'è stata una sola mossa;
             if (cronologiaMosse.size() == 1)
-                cronologiaMosse = new ArrayList<>();
+                cronologiaMosse = new ListaPersistente<>();
 
             //Altrimenti..
             else if (cronologiaMosse.size() > 1)
@@ -417,102 +475,70 @@ public class Othello implements GameRuler<PieceModel<Species>> {
         return i > 0 && i < 3;
     }
 
+    /** Lo stato del gioco è aggiornato da {@link Othello#move(Move)} e
+     * {@link Othello#unMove()}, quindi non è necessario ricalcolare le mosse valide. */
     @Override
-    public int result() {
-        int statoDelGioco = statoGioco;
-        statoGioco = -1;
-        Boolean fineGioco = false;
-
-        //Se l'ultima mossa è RESIGN;
-        if (cronologiaMosse.size() > 1 && cronologiaMosse.get(cronologiaMosse.size() - 1).kind.equals(Move.Kind.RESIGN)) {
-            statoGioco = 3 - turn;
-            turn = 0;
-            fineGioco = true;
-        }
-
-        //Se non ci sono più mosse possibili;
-        else if (validMoves().size() == 1) {
-
-            //Trovo i punteggi;
-            double punteggio1 = score(1), punteggio2 = score(2);
-
-            if (punteggio1 > punteggio2) {
-
-                statoGioco = 1;
-                turn = 0;
-
-            } else if (punteggio1 < punteggio2) {
-
-                statoGioco = 2;
-                turn = 0;
-
-            } else {
-
-                statoGioco = 0;
-                turn = 0;
-
-            }
-
-            fineGioco = true;
-        }
-
-        if (!fineGioco)
-            statoGioco = statoDelGioco;
-
-        return statoGioco;
-    }
+    public int result() { return statoGioco; }
 
     /** Ogni mossa, eccetto l'abbandono, è rappresentata da una {@link Action} di tipo
      * {@link Action.Kind#ADD} seguita da una {@link Action} di tipo
-     * {@link Action.Kind#SWAP}. */
+     * {@link Action.Kind#SWAP}. L'insieme ritornato è immodificabile ed è calcolato
+     * una sola volta per ogni situazione di gioco. */
     @Override
     public Set<Move<PieceModel<Species>>> validMoves() {
-        Set<Move<PieceModel<PieceModel.Species>>> insieme = new HashSet<>();
-        insieme.add(new Move<>(Move.Kind.RESIGN));
-        String player;
-
-        //Associo il colore in base al turno;
-        if (turn == 1) player = "nero";
-        else player = "bianco";
 
         //Se il gioco è terminato;
         if (statoGioco != -1) throw new IllegalStateException();
 
-        //Per ogni riga della board;
-        for (Pos p : board.positions()) {
+        if (mosseValideCache == null)
+            mosseValideCache = Collections.unmodifiableSet(calcolaMosseValide());
 
-            //Se quella casella non è vuota, la ignoro;
-                if (board.get(p) != null) continue;
+        return mosseValideCache;
+    }
 
-            /*Inizializzo la lista delle possibili posizioni
-              per lo SWAP!*/
-            List<Pos> swapPositions = new ArrayList<>();
+    /**Calcola l'insieme delle mosse valide per il giocatore di turno*/
+    private Set<Move<PieceModel<Species>>> calcolaMosseValide() {
+        Set<Move<PieceModel<PieceModel.Species>>> insieme = new HashSet<>();
+        insieme.add(new Move<>(Move.Kind.RESIGN));
 
-            //Lista per catturare le pos;
-            List<Pos> swapTemp;
+        //Per ogni casella vuota in cui si possono rovesciare delle pedine, aggiungo la mossa all'insieme!
+        for (Pos p : board.positions()) {
+            Move<PieceModel<Species>> mossa = mossaIn(p);
+
+            if (mossa != null)
+                insieme.add(mossa);
+        }
 
-            //Per ogni direzione;
-            for (Board.Dir direz : listaDirezioni) {
-                swapTemp = swapPositionDIR(p, direz, turn);
+        return insieme;
+    }
 
-                //Se ci sono pedine 'convertibili';
-                if (swapTemp != null)
-                    swapPositions.addAll(swapTemp);
+    /**La mossa del giocatore di turno che mette una pedina nella casella p, o null se
+       la casella non è vuota o la pedina non rovescerebbe nessuna pedina avversaria*/
+    private Move<PieceModel<Species>> mossaIn(Pos p) {
 
-            }
+        //Se quella casella non è vuota, la ignoro;
+        if (board.get(p) != null) return null;
 
-            //Se c'è almeno una posizione accettabile per lo SWAP;
-            if (swapPositions.size() > 0) {
+        String player = turn == 1 ? "nero" : "bianco";
 
-                //Aggiungo la mossa all'insieme!
-                insieme.add(new Move<>(new Action<>(p, new PieceModel<>(PieceModel.Species.DISC, player)),
-                        new Action<>(new PieceModel<>(PieceModel.Species.DISC, player), swapPositions.toArray(new Pos[swapPositions.size()]))));
+        /*Inizializzo la lista delle possibili posizioni
+          per lo SWAP!*/
+        List<Pos> swapPositions = new ArrayList<>();
 
-            }
+        //Per ogni direzione;
+        for (Board.Dir direz : listaDirezioni) {
+            List<Pos> swapTemp = swapPositionDIR(p, direz, turn);
 
+            //Se ci sono pedine 'convertibili';
+            if (swapTemp != null)
+                swapPositions.addAll(swapTemp);
         }
 
-        return insieme;
+        //Se non c'è nessuna posizione accettabile per lo SWAP;
+        if (swapPositions.isEmpty()) return null;
+
+        return new Move<>(new Action<>(p, PieceModel.of(PieceModel.Species.DISC, player)),
+                new Action<>(PieceModel.of(PieceModel.Species.DISC, player), swapPositions.toArray(new Pos[swapPositions.size()])));
     }
 
     /**Metodi per la 'leggibilità' del validmoves(), e metodi minori*/
@@ -564,38 +590,50 @@ public class Othello implements GameRuler<PieceModel<Species>> {
         return punteggio;
     }
 
+    /** La copia costa O(1): la board e la cronologia delle mosse sono condivise con
+     * questa partita finché una delle due non le modifica (vedi
+     * {@link BoardOct#copy()} e {@link ListaPersistente}). */
     @Override
-    public GameRuler<PieceModel<Species>> copy() {
+    public GameRuler<PieceModel<Species>> copy() { return new Othello(this); }
 
-        //Inizializzo il gameruler;
-        Othello partita = new Othello(tempo, board.height(), nomiGiocatori.get(0), nomiGiocatori.get(1));
+    /**Crea una copia della partita o, condividendo la board e la cronologia*/
+    private Othello(Othello o) {
 
-        //Copio la disposizione dei pezzi;
-        for (Map.Entry<Pos,PieceModel<Species>> e : board.mappaPosToPiece.entrySet()) {
-            Pos p = e.getKey();
-            PieceModel<PieceModel.Species> pm = e.getValue();
+        //La board, i cui segmenti sono copiati solamente quando sono modificati;
+        board = o.board.copy();
 
-            if (pm == null)
-                continue;
+        //I nomi dei giocatori e i loro colori;
+        nomiGiocatori = new ArrayList<>(o.nomiGiocatori);
+        colorFirstplayer = o.colorFirstplayer;
+        colorSecondPlayer = o.colorSecondPlayer;
 
-            partita.board.put(pm, p);
-        }
+        //Lo stato del gioco, il turno, il tempo e la grandezza della board;
+        statoGioco = o.statoGioco;
+        turn = o.turn;
+        tempo = o.tempo;
+        grandezzaBoard = o.grandezzaBoard;
 
-        //Copio i loro colori;
-        partita.colorFirstplayer = colorFirstplayer;
-        partita.colorSecondPlayer = colorSecondPlayer;
+        //La cronologia, che condivide le mosse con quella di o;
+        cronologiaMosse = new ListaPersistente<>(o.cronologiaMosse);
 
-        //Copio lo stato del gioco;
-        partita.statoGioco = statoGioco;
+        //Le mosse valide (immodificabili);
+        mosseValideCache = o.mosseValideCache;
 
-        //Copio il turno;
-        partita.turn = turn;
+        /*Lo hash; se non ci sono mosse è ricalcolato, perché la board può essere
+          stata preparata direttamente*/
+        zobrist = o.zobrist;
+        hashBoard = o.cronologiaMosse.isEmpty() ? zobrist.hash(board::get) : o.hashBoard;
 
-        //...e la cronologia!
-        for (Move<PieceModel<PieceModel.Species>> mossa : cronologiaMosse)
-            partita.cronologiaMosse.add(mossa);
+        //Le caselle in cui si può mettere una pedina, ricalcolate anche loro se non ci sono mosse;
+        if (o.cronologiaMosse.isEmpty())
+            calcolaMobilita();
 
-        return partita;
+        else {
+            mobilita = o.mobilita;
+            mobili = o.mobili;
+            mobilitaCondivisa = true;
+            o.mobilitaCondivisa = true;
+        }
     }
 
     /**Copia 'leggera' per il mechanics*/
@@ -605,13 +643,13 @@ public class Othello implements GameRuler<PieceModel<Species>> {
         Othello partita = new Othello(tempo, board.height(), nomiGiocatori.get(0), nomiGiocatori.get(1));
 
         //Copio la disposizione dei pezzi;
-        for (Map.Entry<Pos,PieceModel<Species>> e : board.mappaPosToPiece.entrySet()) {
-            PieceModel<PieceModel.Species> pm = e.getValue();
+        for (Pos p : board.positions()) {
+            PieceModel<PieceModel.Species> pm = board.get(p);
 
             if (pm == null)
                 continue;
 
-            partita.board.put(pm, e.getKey());
+            partita.board.put(pm, p);
         }
 
         //Copio lo stato del gioco;
@@ -620,11 +658,239 @@ public class Othello implements GameRuler<PieceModel<Species>> {
         //Copio il turno;
         partita.turn = turn;
 
+        //Lo hash e le caselle in cui si può mettere, ricalcolati perché la board può essere stata modificata direttamente;
+        partita.hashBoard = zobrist.hash(board::get);
+        partita.calcolaMobilita();
+
         return partita;
     }
 
+    /** Lo hash è quello di {@link Zobrist#hash(Situation)} per la situazione
+     * attuale: se la partita è terminata il turno è 0 per la patta o -w se ha
+     * vinto il giocatore w. */
+    @Override
+    public long hash() {
+        return hashBoard ^ zobrist.turn(Zobrist.situationTurn(turn, statoGioco));
+    }
+
+    /** Il codice di una mossa è l'indice in {@link Board#positions()} della
+     * posizione in cui si mette la pedina (come nel {@link Playout}), quello
+     * dell'abbandono è il numero delle posizioni. */
+    @Override
+    public int moveCodes() { return board.positions().size() + 1; }
+
+    @Override
+    public int encode(Move<PieceModel<Species>> m) {
+        Objects.requireNonNull(m);
+
+        //Se il gioco è terminato;
+        if (statoGioco != -1) throw new IllegalStateException();
+
+        int codice = -1;
+
+        if (m.kind == Move.Kind.RESIGN)
+            codice = board.positions().size();
+        else if (m.kind == Move.Kind.ACTION && m.actions.get(0).kind == Action.Kind.ADD)
+            codice = indice(m.actions.get(0).pos.get(0));
+
+        //La mossa con quel codice deve essere proprio m (ad es. con le stesse pedine rovesciate);
+        return codice >= 0 && m.equals(decode(codice)) ? codice : -1;
+    }
+
+    @Override
+    public Move<PieceModel<Species>> decode(int code) {
+        if (!isValid(code)) return null;
+
+        if (code == board.positions().size())
+            return new Move<>(Move.Kind.RESIGN);
+
+        return mossaIn(board.positions().get(code));
+    }
+
+    /** Le mosse valide sono trovate direttamente sulla board con le tabelle delle
+     * adiacenze, senza creare le {@link Move}. */
+    @Override
+    public void validMoveCodes(IntMoveList moves) {
+        Objects.requireNonNull(moves);
+
+        //Se il gioco è terminato;
+        if (statoGioco != -1) throw new IllegalStateException();
+
+        moves.clear();
+
+        for (int i = 0 ; i < board.positions().size() ; i++)
+            if (mobilita[turn - 1][i])
+                moves.add(i);
+    }
+
+    @Override
+    public boolean isValid(int code) {
+
+        //Se il gioco è terminato;
+        if (statoGioco != -1) throw new IllegalStateException();
+
+        return code == board.positions().size() || (code >= 0 && code < board.positions().size() && mobilita[turn - 1][code]);
+    }
+
+    /** La mossa è creata solamente per la cronologia, senza calcolare le altre mosse
+     * valide. */
+    @Override
+    public void move(int code) {
+        Move<PieceModel<Species>> m = decode(code);
+
+        if (m == null)
+            throw new IllegalArgumentException();
+
+        esegui(m);
+    }
+
+    /** Il {@link Playout} rappresenta la board con un array di interi (0 vuota, 1
+     * nera, 2 bianca) indicizzato come {@link Board#positions()}; il codice di una
+     * mossa è l'indice della posizione in cui si mette la pedina. Come per il
+     * GameRuler la partita termina quando il giocatore di turno non può muovere. */
+    @Override
+    public Playout playout() {
+        int[] celle = new int[board.positions().size()];
+
+        //Copio la disposizione delle pedine;
+        for (int i = 0 ; i < celle.length ; i++) {
+            PieceModel<Species> pedina = board.get(board.positions().get(i));
+
+            if (pedina != null)
+                celle[i] = pedina.color.equals("nero") ? 1 : 2;
+        }
+
+        return new PlayoutOthello(adiacenze(grandezzaBoard), celle, turn, statoGioco);
+    }
+
+    /**L'indice in board.positions() della posizione p, -1 se non è della board*/
+    private int indice(Pos p) {
+        return p.b < board.width() && p.t < board.height() ? p.b + p.t * board.width() : -1;
+    }
+
+    /**Il colore della pedina nella posizione di indice i: 0 vuota, 1 nera, 2 bianca*/
+    private int colore(int i) {
+        PieceModel<Species> pedina = board.get(board.positions().get(i));
+        return pedina == null ? 0 : (pedina.color.equals("nero") ? 1 : 2);
+    }
+
+    /**Ritorna true se il giocatore può mettere una pedina nella posizione di indice
+       i, cioè se è vuota e la pedina rovescerebbe almeno una pedina avversaria*/
+    private boolean puoMettere(int i, int giocatore) {
+        if (colore(i) != 0) return false;
+
+        //In ogni direzione cerco pedine avversarie chiuse da una pedina del giocatore;
+        for (int[] adiacenti : adiacenze(grandezzaBoard)) {
+            int q = adiacenti[i];
+
+            if (q < 0 || colore(q) != 3 - giocatore) continue;
+
+            while (q >= 0 && colore(q) == 3 - giocatore)
+                q = adiacenti[q];
+
+            if (q >= 0 && colore(q) == giocatore)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**Ritorna true se il giocatore di turno ha almeno una mossa valida oltre all'abbandono*/
+    private boolean puoMuovere() { return mobili[turn - 1] > 0; }
+
+    /**Calcola da zero le caselle in cui ogni giocatore può mettere una pedina*/
+    private void calcolaMobilita() {
+        int n = board.positions().size();
+        mobilita = new boolean[2][n];
+        mobili = new int[2];
+        mobilitaCondivisa = false;
+
+        for (int g = 0 ; g < 2 ; g++)
+            for (int i = 0 ; i < n ; i++)
+                if (puoMettere(i, g + 1)) {
+                    mobilita[g][i] = true;
+                    mobili[g]++;
+                }
+    }
+
+    /**Aggiorna, per entrambi i giocatori, le caselle in cui si può mettere una pedina
+       dopo che la mossa m è stata fatta o disfatta. Cambiano solamente le caselle
+       cambiate e, in ogni direzione a partire da queste, la prima casella vuota
+       (quelle oltre sono separate dalle caselle cambiate da una casella vuota)*/
+    private void aggiornaMobilita(Move<PieceModel<Species>> m) {
+        if (mobilitaCondivisa) {
+            mobilita = new boolean[][] {mobilita[0].clone(), mobilita[1].clone()};
+            mobili = mobili.clone();
+            mobilitaCondivisa = false;
+        }
+
+        List<Pos> girate = m.actions.get(1).pos;
+
+        for (int c = -1 ; c < girate.size() ; c++) {
+            int i = indice(c < 0 ? m.actions.get(0).pos.get(0) : girate.get(c));
+            aggiornaCasella(i);
+
+            for (int[] adiacenti : adiacenze(grandezzaBoard)) {
+                int q = adiacenti[i];
+
+                while (q >= 0 && colore(q) != 0)
+                    q = adiacenti[q];
+
+                if (q >= 0)
+                    aggiornaCasella(q);
+            }
+        }
+    }
+
+    /**Ricalcola per entrambi i giocatori se possono mettere una pedina nella casella di indice i*/
+    private void aggiornaCasella(int i) {
+        for (int g = 0 ; g < 2 ; g++) {
+            boolean puo = puoMettere(i, g + 1);
+
+            if (puo != mobilita[g][i]) {
+                mobilita[g][i] = puo;
+                mobili[g] += puo ? 1 : -1;
+            }
+        }
+    }
+
+    /**Mette il pezzo nella posizione, aggiornando lo hash della board*/
+    private void metti(PieceModel<Species> pezzo, Pos p) {
+        hashBoard ^= zobrist.key(p, board.put(pezzo, p)) ^ zobrist.key(p, pezzo);
+    }
+
+    /**Le chiavi di Zobrist per la board di lato dato, create una volta sola per ogni dimensione*/
+    private static Zobrist<PieceModel<Species>> zobrist(int size) {
+        Zobrist<PieceModel<Species>> chiavi = CHIAVI.get(size);
+
+        if (chiavi == null)
+            chiavi = CHIAVI.computeIfAbsent(size, s -> new Zobrist<>(new BoardOct<>(s, s).positions(), PEZZI, 2));
+
+        return chiavi;
+    }
+
+    /**Le adiacenze della board di lato dato, calcolate una volta sola per ogni dimensione*/
+    private static int[][] adiacenze(int size) {
+        int[][] tabella = ADIACENZE.get(size);
+
+        if (tabella == null)
+            tabella = ADIACENZE.computeIfAbsent(size, s -> Utils.adjacencies(new BoardOct<>(s, s)));
+
+        return tabella;
+    }
+
     @Override
-    public Mechanics<PieceModel<Species>> mechanics() {
+    public Mechanics<PieceModel<Species>> mechanics() { return mechanics(false); }
+
+    /** Come {@link Othello#mechanics()}, ma se {@code parallel} è true le situazioni
+     * successive di ogni situazione sono calcolate dai thread del
+     * {@link ForkJoinPool#commonPool()}, dividendo le mosse tra più partite di
+     * appoggio. Conviene solamente per board grandi e se chi invoca il
+     * {@link Next} non usa già tutti i processori. Le partite di appoggio sono
+     * riusate: ogni thread ne ha una, riportata alla situazione ad ogni invocazione.
+     * @param parallel  se calcolare in parallelo le situazioni successive
+     * @return la meccanica del gioco */
+    public Mechanics<PieceModel<Species>> mechanics(boolean parallel) {
         Map<Pos,PieceModel<Species>> mappa = new HashMap<>();
 
         //Creo una 'falsa' partita per crearmi il Situation;
@@ -634,94 +900,227 @@ public class Othello implements GameRuler<PieceModel<Species>> {
         // al pezzo che contiene;
         pseudoOthello.board.positions().stream().filter(p -> pseudoOthello.board.get(p) != null).forEach(p -> mappa.put(p, pseudoOthello.board.get(p)));
 
-        Next<PieceModel<Species>> nextFunc = (s) -> {
-            Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>> mappona = new HashMap<>();
+        //La partita di appoggio di ogni thread, su cui faccio e disfo le mosse;
+        ThreadLocal<Othello> libere = new ThreadLocal<>();
 
+        Next<PieceModel<Species>> nextFunc = (s) -> {
             Objects.requireNonNull(s);
 
-            if (s.turn <= 0) return mappona;
+            if (s.turn <= 0) return new HashMap<>();
 
-            //Creo una 'falsa' partita per crearmi il Situation nel Next;
-            Othello pseudoOthelloNext = (Othello) lightCopy();
-            pseudoOthelloNext.turn = s.turn;
+            //Porto la partita di appoggio nella Situation...
+            Othello appoggio = appoggio(libere, s);
+            List<Move<PieceModel<Species>>> mosse;
+            int parti;
 
-            //Porto la board alla Situation che mi interessa;
-            for (Pos p : pseudoOthelloNext.board.positions()) {
-                PieceModel<Species> pezzo = s.get(p);
+            try {
 
-                if (pezzo != null)
-                    pseudoOthelloNext.board.put(pezzo, p);
-            }
+                //...e creo la lista delle mosse valide, escluso l'abbandono;
+                Set<Move<PieceModel<Species>>> mosseValide = appoggio.validMoves();
+                mosse = new ArrayList<>(mosseValide.size());
 
-            //Creo l'insieme delle mosse valide;
-            Set<Move<PieceModel<Species>>> mosseValide = pseudoOthelloNext.validMoves();
+                for (Move<PieceModel<Species>> mossa : mosseValide)
+                    if (!mossa.kind.equals(Move.Kind.RESIGN))
+                        mosse.add(mossa);
 
-            ExecutorService exec = Executors.newFixedThreadPool(4);
-            List<Future<Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>>>> futures = new ArrayList<>();
+                parti = parallel ? Math.min(mosse.size(), ForkJoinPool.getCommonPoolParallelism()) : 1;
 
-            //Per ogni mossa possibile da questa situazione di gioco:
-            for (Move<PieceModel<Species>> mossa : mosseValide)
-                futures.add(exec.submit(() -> trovaParteMappaNextOthello(mossa, pseudoOthelloNext, s)));
+                if (parti <= 1)
+                    return successive(appoggio, s, mosse);
 
-            for (Future<Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>>> f : futures) {
-                Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>> p = null;
-                try { p = f.get(); } catch (InterruptedException | ExecutionException e) { exec.shutdown(); }
+            } finally {
+                libere.set(appoggio);
+            }
 
-                if (p != null)
-                    mappona.putAll(p);
+            //Ogni parte delle mosse usa la partita di appoggio del thread che la esegue;
+            List<Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>>> mappe = IntStream.range(0, parti).parallel()
+                    .mapToObj(i -> {
+                        Othello partita = appoggio(libere, s);
 
-            }
+                        try {
+                            return successive(partita, s, mosse.subList(i * mosse.size() / parti, (i + 1) * mosse.size() / parti));
+                        } finally {
+                            libere.set(partita);
+                        }
+                    })
+                    .collect(Collectors.toList());
+
+            Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>> mappona = new HashMap<>();
+
+            for (Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>> m : mappe)
+                mappona.putAll(m);
 
-            exec.shutdownNow();
             return mappona;
         };
 
-        return new Mechanics<>(tempo,
-                Collections.unmodifiableList(Arrays.asList(new PieceModel<>(Species.DISC, "nero"), new PieceModel<>(Species.DISC, "bianco"))),
+        return new Mechanics<>(tempo, PEZZI,
                 Collections.unmodifiableList(board.positions()), 2, new Situation<>(mappa, 1), nextFunc);
     }
 
-    public static Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>> trovaParteMappaNextOthello(Move<PieceModel<Species>> mossa,
-                                                                                                            Othello partita, Situation<PieceModel<Species>> s) {
+    /**La partita di appoggio del thread, creata se non c'è, portata nella situazione
+       data (non terminata) e senza cronologia. È tolta da libere finché non è rimessa,
+       così non è usata anche da un'altra invocazione nello stesso thread (un task
+       eseguito dal thread mentre aspetta), che ne crea un'altra*/
+    private Othello appoggio(ThreadLocal<Othello> libere, Situation<PieceModel<Species>> s) {
+        Othello partita = libere.get();
+        libere.set(null);
+
+        if (partita == null)
+            partita = new Othello(tempo, grandezzaBoard, "Andrea", "Gattuso");
+
+        //Porto la board alla Situation che mi interessa, cambiando solamente le posizioni diverse;
+        for (Pos p : partita.board.positions()) {
+            PieceModel<Species> pezzo = s.get(p), attuale = partita.board.get(p);
+
+            if (pezzo != null && !pezzo.equals(attuale))
+                partita.board.put(pezzo, p);
+            else if (pezzo == null && attuale != null)
+                partita.board.remove(p);
+        }
 
-        //Se è una mossa RESIGN, ignorala;
-        if (mossa.kind.equals(Move.Kind.RESIGN))
-            return null;
+        partita.cronologiaMosse = new ListaPersistente<>();
+        partita.statoGioco = -1;
+        partita.turn = s.turn;
+        partita.mosseValideCache = null;
+        partita.hashBoard = zobrist.hash(partita.board::get);
+        partita.calcolaMobilita();
+        return partita;
+    }
+
+    /**Le situazioni che si ottengono con le mosse date dalla situazione s, in cui si
+       trova la partita: ogni mossa è fatta e subito annullata, quindi alla fine la
+       partita è ancora in s*/
+    private static Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>> successive(Othello partita,
+                                            Situation<PieceModel<Species>> s, List<Move<PieceModel<Species>>> mosse) {
+        Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>> mappona = new HashMap<>();
+        Set<Move<PieceModel<Species>>> mosseValide = partita.validMoves();
 
-        Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>> parteDelNext = new HashMap<>();
+        for (Move<PieceModel<Species>> mossa : mosse) {
+            partita.move(mossa);
 
-        //Altrimenti, inizializzo la mappa della Situation...
-        Map<Pos,PieceModel<Species>> mappaRelativaAllaMossa = new HashMap<>();
+            //La disposizione è quella di s con la pedina messa e quelle rovesciate;
+            Map<Pos,PieceModel<Species>> mappaRelativaAllaMossa = s.newMap();
+            PieceModel<Species> pedina = mossa.actions.get(0).piece;
+            mappaRelativaAllaMossa.put(mossa.actions.get(0).pos.get(0), pedina);
 
-        //Creo un'altra 'falsa' partita per crearmi il Situation nel Next;
-        Othello pseudoOthelloNext2 = (Othello) partita.lightCopy();
+            for (Pos p : mossa.actions.get(1).pos)
+                mappaRelativaAllaMossa.put(p, pedina);
 
-        //...ed eseguo la mossa!
-        pseudoOthelloNext2.move(mossa);
+            //Prelevo lo stato del gioco in questa situazione;
+            int statoAttuale = partita.result();
 
-        //Per ogni posizione di QUESTA board, associo quella posizione al pezzo che contiene;
-        for (Pos p : pseudoOthelloNext2.board.positions()) {
-            PieceModel<Species> pezzo2 = pseudoOthelloNext2.board.get(p);
+            if (statoAttuale != -1)
+                mappona.put(mossa, new Situation<>(mappaRelativaAllaMossa, - statoAttuale));
+            else
+                mappona.put(mossa, new Situation<>(mappaRelativaAllaMossa, partita.turn));
 
-            if (pezzo2 != null)
-                mappaRelativaAllaMossa.put(p, pezzo2);
+            //unMove() azzera le mosse valide, che sono ancora quelle di s;
+            partita.unMove();
+            partita.mosseValideCache = mosseValide;
         }
 
-        //Creo la situazione a cui sono arrivato,
-        // e la aggiungo alla mappa del Next;
-        Situation<PieceModel<Species>> situazionePerQuestaMossa;
+        return mappona;
+    }
+
+
+    /**Il Playout di Othello: la situazione iniziale e quella attuale sono array di
+       interi e le mosse valide del giocatore di turno sono calcolate dopo ogni mossa
+       in un array riusato, quindi giocare non crea oggetti*/
+    private static class PlayoutOthello implements Playout {
 
-        //Prelevo lo stato del gioco in questa situazione;
-        int statoAttuale = pseudoOthelloNext2.result();
+        private PlayoutOthello(int[][] adiacenze, int[] celle, int turno, int risultato) {
+            this.adiacenze = adiacenze;
+            inizio = celle;
+            turnoInizio = turno;
+            risultatoInizio = risultato;
+            this.celle = new int[celle.length];
+            mosse = new int[celle.length];
+            reset();
+        }
 
-        if (statoAttuale != -1)
-            situazionePerQuestaMossa = new Situation<>(mappaRelativaAllaMossa, - statoAttuale);
-        else
-            situazionePerQuestaMossa = new Situation<>(mappaRelativaAllaMossa, pseudoOthelloNext2.turn);
+        private final int[][] adiacenze;
+        private final int[] inizio, celle, mosse;
+        private final int turnoInizio, risultatoInizio;
+        private int turno, risultato, numMosse;
 
-        parteDelNext.put(mossa, situazionePerQuestaMossa);
+        @Override
+        public int turn() { return risultato == -1 ? turno : 0; }
 
-        return parteDelNext;
+        @Override
+        public int result() { return risultato; }
+
+        @Override
+        public int randomMove(Random rnd) {
+            return risultato == -1 ? mosse[rnd.nextInt(numMosse)] : -1;
+        }
+
+        @Override
+        public void apply(int m) {
+            if (risultato != -1) throw new IllegalStateException();
+
+            celle[m] = turno;
+
+            //Rovescio le pedine imprigionate in ogni direzione;
+            for (int[] adiacenti : adiacenze) {
+                int fine = imprigiona(adiacenti, m, turno);
+
+                for (int p = adiacenti[m] ; p != fine && fine >= 0 ; p = adiacenti[p])
+                    celle[p] = turno;
+            }
+
+            turno = 3 - turno;
+            aggiorna();
+        }
+
+        @Override
+        public void reset() {
+            System.arraycopy(inizio, 0, celle, 0, celle.length);
+            turno = turnoInizio;
+            risultato = risultatoInizio;
+
+            if (risultato == -1)
+                aggiorna();
+        }
+
+        /**Ritorna la posizione della pedina del giocatore che chiude, nella direzione
+           data, le pedine avversarie adiacenti a p, o -1 se non ce ne sono*/
+        private int imprigiona(int[] adiacenti, int p, int giocatore) {
+            int q = adiacenti[p];
+
+            if (q < 0 || celle[q] != 3 - giocatore) return -1;
+
+            while (q >= 0 && celle[q] == 3 - giocatore)
+                q = adiacenti[q];
+
+            return q >= 0 && celle[q] == giocatore ? q : -1;
+        }
+
+        /**Calcola le mosse valide del giocatore di turno e, se non ce ne sono,
+           termina la partita contando le pedine*/
+        private void aggiorna() {
+            numMosse = 0;
+
+            for (int p = 0 ; p < celle.length ; p++) {
+                if (celle[p] != 0) continue;
+
+                for (int[] adiacenti : adiacenze)
+                    if (imprigiona(adiacenti, p, turno) >= 0) {
+                        mosse[numMosse++] = p;
+                        break;
+                    }
+            }
+
+            if (numMosse == 0) {
+                int nere = 0, bianche = 0;
+
+                for (int c : celle) {
+                    if (c == 1) nere++;
+                    else if (c == 2) bianche++;
+                }
+
+                risultato = nere > bianche ? 1 : (nere < bianche ? 2 : 0);
+            }
+        }
     }
 
 }
@@ -0,0 +1,582 @@
+package gapp.ulg.games;
+
+import gapp.ulg.game.board.*;
+
+import java.util.*;
+
+import static gapp.ulg.game.board.Board.Dir;
+import static gapp.ulg.game.board.PieceModel.Species;
+
+
+/** Un {@code OthelloBitboard} è un {@link GameRuler} per giocare a Othello che
+ * rappresenta la disposizione dei dischi con due bitboard, una per ogni colore. La
+ * posizione (b,t) corrisponde al bit di indice b + t*size, quindi per le board 6x6
+ * e 8x8 ogni bitboard è un singolo {@code long} mentre per le board 10x10 e 12x12 è
+ * un array di {@code long}. Le mosse valide sono calcolate con shift e maschere su
+ * tutta la board e i dischi da rovesciare con una scansione dei raggi a partire
+ * dalla posizione del disco aggiunto.
+ * <br>
+ * Le regole, le mosse e la {@link GameRuler.Mechanics} sono le stesse dell'Othello
+ * di riferimento: se il giocatore di turno non ha mosse valide il turno passa
+ * all'altro giocatore e se neanche questo ne ha la partita termina. */
+public class OthelloBitboard implements GameRuler<PieceModel<Species>> {
+    /** Crea un GameRuler per fare una partita a Othello.
+     * @param time  tempo in millisecondi per fare una mossa, se <= 0 significa nessun
+     *              limite
+     * @param size  dimensione della board, sono accettati solamente i valori 6,8,10,12
+     * @param p1  il nome del primo giocatore
+     * @param p2  il nome del secondo giocatore
+     * @throws NullPointerException se {@code p1} o {@code p2} è null
+     * @throws IllegalArgumentException se size non è uno dei valori 6,8,10 o 12 */
+    public OthelloBitboard(long time, int size, String p1, String p2) {
+        Objects.requireNonNull(p1);
+        Objects.requireNonNull(p2);
+        if (size < 0 || size >= GEO.length || GEO[size] == null)
+            throw new IllegalArgumentException();
+        geo = GEO[size];
+        name = "Othello"+size+"x"+size;
+        nero = new long[geo.words];                 // Le due bitboard
+        bianco = new long[geo.words];
+        int i = (size - 2)/2;
+        set(bianco, geo.index(i, i+1));             // La configurazione iniziale
+        set(bianco, geo.index(i+1, i));
+        set(nero, geo.index(i+1, i+1));
+        set(nero, geo.index(i, i));
+        playerNames = Collections.unmodifiableList(Arrays.asList(p1, p2));
+        history = new ArrayList<>();
+        gResult = -1;
+        currTurn = 1;
+        gM = new Mechanics<>((time > 0 ? time : -1), PIECES, geo.positions, 2, start(), this::next);
+        view = new View();
+    }
+
+    /** Il nome rispetta il formato:
+     * <pre>
+     *     Othello<i>Size</i>
+     * </pre>
+     * dove <code><i>Size</i></code> è la dimensione della board, ad es. "Othello8x8". */
+    @Override
+    public String name() { return name; }
+
+    @Override
+    public <T> T getParam(String name, Class<T> c) {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(c);
+        String p;
+        switch (name) {
+            case "Time": p = millisToSM(gM.time); break;
+            case "Board": p = geo.size+"x"+geo.size; break;
+            default: throw new IllegalArgumentException();
+        }
+        return c.cast(p);
+    }
+
+    @Override
+    public List<String> players() { return playerNames; }
+
+    /** Assegna il colore "nero" al primo giocatore e "bianco" al secondo. */
+    @Override
+    public String color(String name) {
+        Objects.requireNonNull(name);
+        if (!playerNames.contains(name)) throw new IllegalArgumentException();
+        return name.equals(playerNames.get(0)) ? "nero" : "bianco";
+    }
+
+    /** Ritorna una view immodificabile della board che legge direttamente le
+     * bitboard. */
+    @Override
+    public Board<PieceModel<Species>> getBoard() { return view; }
+
+    /** Se il giocatore di turno non ha nessuna mossa valida il turno è
+     * automaticamente passato all'altro giocatore. Ma se anche l'altro giuocatore
+     * non ha mosse valide, la partita termina. */
+    @Override
+    public int turn() { return gResult == -1 ? currTurn : 0; }
+
+    /** Se la mossa non è valida termina il gioco dando la vittoria all'altro
+     * giocatore. La validità è controllata direttamente sulle bitboard senza
+     * generare l'insieme di tutte le mosse valide. */
+    @Override
+    public boolean move(Move<PieceModel<Species>> m) {
+        Objects.requireNonNull(m);
+        if (gResult != -1) throw new IllegalStateException();
+        if (Move.Kind.RESIGN.equals(m.kind)) {  // Mossa di abbandono del gioco, vince l'altro giocatore
+            history.add(new TurnMove(currTurn, null, null));
+            gResult = 3 - currTurn;    // Indice dell'altro giocatore
+            vmCache = null;
+            return true;
+        }
+        long[] own = currTurn == 1 ? nero : bianco, opp = currTurn == 1 ? bianco : nero;
+        long[] flips = new long[geo.words];
+        if (!isValid(m, own, opp, flips)) {     // Mossa non valida, vince l'altro giocatore
+            gResult = 3 - currTurn;    // Indice dell'altro giocatore
+            return false;
+        }
+        Pos p = m.actions.get(0).pos.get(0);
+        play(geo.index(p.b, p.t), flips);
+        return true;
+    }
+
+    @Override
+    public boolean unMove() {
+        if (history.isEmpty()) return false;
+        TurnMove tm = history.remove(history.size()-1);
+        if (tm.nero != null) {                    // Se non è l'abbandono, ripristina
+            System.arraycopy(tm.nero, 0, nero, 0, nero.length);         // le bitboard
+            System.arraycopy(tm.bianco, 0, bianco, 0, bianco.length);
+        }
+        gResult = -1;
+        currTurn = tm.turn;
+        vmCache = null;
+        return true;
+    }
+
+    @Override
+    public boolean isPlaying(int i) {
+        if (i < 1 || i > 2) throw new IllegalArgumentException();
+        return gResult == -1;
+    }
+
+    @Override
+    public int result() { return gResult; }
+
+    /** Ogni mossa, eccetto l'abbandono, è rappresentata da una {@link Action} di tipo
+     * {@link Action.Kind#ADD} seguita da una {@link Action} di tipo
+     * {@link Action.Kind#SWAP}. L'insieme è calcolato una sola volta per ogni
+     * situazione di gioco. */
+    @Override
+    public Set<Move<PieceModel<Species>>> validMoves() {
+        if (gResult != -1)
+            throw new IllegalStateException();
+        if (vmCache == null) {
+            Set<Move<PieceModel<Species>>> vm = new HashSet<>();
+            for (Move<PieceModel<Species>> m : moves(geo, own(currTurn), own(3 - currTurn), currTurn).keySet())
+                vm.add(m);
+            vm.add(new Move<>(Move.Kind.RESIGN));  // È sempre possibile abbandonare il gioco
+            vmCache = Collections.unmodifiableSet(vm);
+        }
+        return vmCache;
+    }
+
+    @Override
+    public double score(int i) {
+        if (i < 1 || i > 2) throw new IllegalArgumentException();
+        return count(i == 1 ? nero : bianco);
+    }
+
+    @Override
+    public GameRuler<PieceModel<Species>> copy() {
+        return new OthelloBitboard(this);    // Ritorna una copia di questo oggetto
+    }
+
+    @Override
+    public Mechanics<PieceModel<Species>> mechanics() { return gM; }
+
+    /** Il codice di una mossa è l'indice b + t*size della posizione del disco
+     * aggiunto, come per le bitboard, quello dell'abbandono è size*size. */
+    @Override
+    public int moveCodes() { return geo.cells + 1; }
+
+    @Override
+    public int encode(Move<PieceModel<Species>> m) {
+        Objects.requireNonNull(m);
+        if (gResult != -1) throw new IllegalStateException();
+        if (Move.Kind.RESIGN.equals(m.kind)) return geo.cells;
+        if (!isValid(m, own(currTurn), own(3 - currTurn), new long[geo.words])) return -1;
+        Pos p = m.actions.get(0).pos.get(0);
+        return geo.index(p.b, p.t);
+    }
+
+    @Override
+    public Move<PieceModel<Species>> decode(int code) {
+        if (gResult != -1) throw new IllegalStateException();
+        if (code == geo.cells) return new Move<>(Move.Kind.RESIGN);
+        long[] flips = new long[geo.words];
+        if (!flipsAt(code, flips)) return null;
+        PieceModel<Species> curr = currTurn == 1 ? NERO : BIANCO;
+        return new Move<>(new Action<>(geo.pos[code], curr), new Action<>(curr, toPos(geo, flips)));
+    }
+
+    /** I codici sono i bit della bitboard delle mosse valide, calcolata con shift
+     * e maschere senza creare le {@link Move}. */
+    @Override
+    public void validMoveCodes(IntMoveList moves) {
+        Objects.requireNonNull(moves);
+        if (gResult != -1) throw new IllegalStateException();
+        moves.clear();
+        long[] mob = new long[geo.words], x = new long[geo.words], y = new long[geo.words];
+        mobility(geo, own(currTurn), own(3 - currTurn), mob, x, y);
+        for (int w = 0 ; w < geo.words ; w++)
+            for (long v = mob[w] ; v != 0 ; v &= v - 1)
+                moves.add((w << 6) + Long.numberOfTrailingZeros(v));
+    }
+
+    @Override
+    public boolean isValid(int code) {
+        if (gResult != -1) throw new IllegalStateException();
+        return code == geo.cells || flipsAt(code, new long[geo.words]);
+    }
+
+    /** La cronologia contiene le bitboard, quindi la mossa non è mai creata. */
+    @Override
+    public void move(int code) {
+        if (gResult != -1) throw new IllegalStateException();
+        if (code == geo.cells) {
+            move(new Move<>(Move.Kind.RESIGN));
+            return;
+        }
+        long[] flips = new long[geo.words];
+        if (!flipsAt(code, flips)) throw new IllegalArgumentException();
+        play(code, flips);
+    }
+
+
+
+    /** Le informazioni, che dipendono solamente dalla dimensione della board,
+     * condivise da tutti gli {@code OthelloBitboard} con la stessa dimensione. */
+    private static class Geometry {
+        final int size, cells, words;
+        final Pos[] pos;                  // Le posizioni in ordine di indice
+        final List<Pos> positions;
+        final long[] full;                // Maschera di tutte le posizioni della board
+        final int[] shift = new int[DIRS.length];       // Shift per ogni direzione
+        final long[][] mask = new long[DIRS.length][];  // Maschera dopo lo shift
+
+        Geometry(int size) {
+            this.size = size;
+            cells = size*size;
+            words = (cells + 63)/64;
+            pos = new Pos[cells];
+            for (int t = 0 ; t < size ; t++)
+                for (int b = 0 ; b < size ; b++)
+                    pos[index(b, t)] = Pos.of(b, t);
+            positions = Collections.unmodifiableList(Arrays.asList(pos));
+            full = new long[words];
+            for (int i = 0 ; i < cells ; i++) set(full, i);
+            for (int d = 0 ; d < DIRS.length ; d++) {
+                shift[d] = DB[d] + DT[d]*size;
+                mask[d] = full.clone();
+                for (int t = 0 ; t < size ; t++) {    // Esclude le posizioni raggiunte
+                    if (DB[d] > 0) clear(mask[d], index(0, t));       // facendo il giro
+                    if (DB[d] < 0) clear(mask[d], index(size-1, t));  // della riga
+                }
+            }
+        }
+
+        int index(int b, int t) { return b + t*size; }
+
+        boolean inside(int b, int t) { return b >= 0 && t >= 0 && b < size && t < size; }
+
+        /** Scrive in {@code dst} la bitboard {@code src} spostata di una posizione
+         * nella direzione di indice {@code d}. */
+        void shift(long[] src, int d, long[] dst) {
+            int s = shift[d];
+            long[] m = mask[d];
+            if (s > 0) {
+                for (int w = words - 1 ; w >= 0 ; w--)
+                    dst[w] = ((src[w] << s) | (w > 0 ? src[w-1] >>> (64 - s) : 0)) & m[w];
+            } else {
+                s = -s;
+                for (int w = 0 ; w < words ; w++)
+                    dst[w] = ((src[w] >>> s) | (w < words - 1 ? src[w+1] << (64 - s) : 0)) & m[w];
+            }
+        }
+    }
+
+    private static class TurnMove {
+        final int turn;
+        final long[] nero, bianco;      // Le bitboard prima della mossa, null se abbandono
+
+        TurnMove(int t, long[] n, long[] b) {
+            turn = t;
+            nero = n;
+            bianco = b;
+        }
+    }
+
+    private static String millisToSM(long millis) {
+        if (millis <= 0) return "No limit";
+        if (millis < 60_000)
+            return (millis/1000)+"s";
+        else
+            return (millis/60_000)+"m";
+    }
+
+    private static boolean get(long[] bb, int i) { return (bb[i >>> 6] & (1L << (i & 63))) != 0; }
+    private static void set(long[] bb, int i) { bb[i >>> 6] |= 1L << (i & 63); }
+    private static void clear(long[] bb, int i) { bb[i >>> 6] &= ~(1L << (i & 63)); }
+
+    private static int count(long[] bb) {
+        int c = 0;
+        for (long w : bb) c += Long.bitCount(w);
+        return c;
+    }
+
+    /** Calcola in {@code out} la bitboard delle posizioni in cui può essere aggiunto
+     * un disco dal giocatore con i dischi {@code own} contro i dischi {@code opp}.
+     * @param x,y  array di lavoro della stessa lunghezza delle bitboard
+     * @return true se c'è almeno una mossa valida */
+    private static boolean mobility(Geometry g, long[] own, long[] opp, long[] out, long[] x, long[] y) {
+        Arrays.fill(out, 0);
+        for (int d = 0 ; d < DIRS.length ; d++) {
+            g.shift(own, d, x);
+            for (int w = 0 ; w < g.words ; w++) x[w] &= opp[w];
+            for (int k = 2 ; k < g.size ; k++) {      // Estende le linee di dischi
+                g.shift(x, d, y);                      // dell'altro giocatore
+                for (int w = 0 ; w < g.words ; w++) x[w] |= y[w] & opp[w];
+            }
+            g.shift(x, d, y);               // Le posizioni vuote che chiudono una linea
+            for (int w = 0 ; w < g.words ; w++)
+                out[w] |= y[w] & ~(own[w] | opp[w]);
+        }
+        boolean any = false;
+        for (long w : out) any |= w != 0;
+        return any;
+    }
+
+    /** Calcola in {@code flips} la bitboard dei dischi dell'altro giocatore che sono
+     * rovesciati aggiungendo un disco nella posizione (b,t).
+     * @return true se almeno un disco è rovesciato */
+    private static boolean flips(Geometry g, long[] own, long[] opp, int b, int t, long[] flips) {
+        Arrays.fill(flips, 0);
+        boolean any = false;
+        for (int d = 0 ; d < DIRS.length ; d++) {
+            int db = DB[d], dt = DT[d], count = 0;
+            int bb = b + db, tt = t + dt;            // Prima posizione nella direzione d
+            while (g.inside(bb, tt) && get(opp, g.index(bb, tt))) {
+                count++;
+                bb += db;
+                tt += dt;
+            }
+            if (count > 0 && g.inside(bb, tt) && get(own, g.index(bb, tt))) {
+                any = true;
+                for (int i = 0 ; i < count ; i++) {
+                    bb -= db; tt -= dt;
+                    set(flips, g.index(bb, tt));
+                }
+            }
+        }
+        return any;
+    }
+
+    /** Ritorna la mappa che ad ogni mossa valida (esclusa {@link Move.Kind#RESIGN})
+     * del giocatore di turno associa la bitboard dei dischi rovesciati. */
+    private static Map<Move<PieceModel<Species>>,long[]> moves(Geometry g, long[] own, long[] opp, int turn) {
+        Map<Move<PieceModel<Species>>,long[]> mm = new HashMap<>();
+        long[] mob = new long[g.words], x = new long[g.words], y = new long[g.words];
+        if (!mobility(g, own, opp, mob, x, y)) return mm;
+        PieceModel<Species> curr = turn == 1 ? NERO : BIANCO;
+        for (int w = 0 ; w < g.words ; w++) {
+            for (long v = mob[w] ; v != 0 ; v &= v - 1) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(v);
+                Pos p = g.pos[i];
+                long[] fl = new long[g.words];
+                flips(g, own, opp, p.b, p.t, fl);
+                mm.put(new Move<>(new Action<>(p, curr), new Action<>(curr, toPos(g, fl))), fl);
+            }
+        }
+        return mm;
+    }
+
+    private static Pos[] toPos(Geometry g, long[] bb) {
+        Pos[] pp = new Pos[count(bb)];
+        int k = 0;
+        for (int w = 0 ; w < bb.length ; w++)
+            for (long v = bb[w] ; v != 0 ; v &= v - 1)
+                pp[k++] = g.pos[(w << 6) + Long.numberOfTrailingZeros(v)];
+        return pp;
+    }
+
+    private static final Dir[] DIRS = Dir.values();
+    private static final int[] DB = new int[DIRS.length], DT = new int[DIRS.length];
+    static {
+        for (int d = 0 ; d < DIRS.length ; d++) {
+            switch (DIRS[d]) {
+                case UP: DB[d] = 0; DT[d] = 1; break;
+                case UP_R: DB[d] = 1; DT[d] = 1; break;
+                case RIGHT: DB[d] = 1; DT[d] = 0; break;
+                case DOWN_R: DB[d] = 1; DT[d] = -1; break;
+                case DOWN: DB[d] = 0; DT[d] = -1; break;
+                case DOWN_L: DB[d] = -1; DT[d] = -1; break;
+                case LEFT: DB[d] = -1; DT[d] = 0; break;
+                case UP_L: DB[d] = -1; DT[d] = 1; break;
+            }
+        }
+    }
+    private static final Geometry[] GEO = new Geometry[13];
+    static {
+        for (int size : new int[] {6,8,10,12})
+            GEO[size] = new Geometry(size);
+    }
+
+    private static final PieceModel<Species> NERO = PieceModel.of(Species.DISC, "nero"),
+            BIANCO = PieceModel.of(Species.DISC, "bianco");
+    private static final List<PieceModel<Species>> PIECES = Collections.unmodifiableList(Arrays.asList(NERO, BIANCO));
+
+
+
+    /** La view immodificabile della board, legge direttamente le bitboard. */
+    private class View implements Board<PieceModel<Species>> {
+        @Override
+        public System system() { return System.OCTAGONAL; }
+        @Override
+        public int width() { return geo.size; }
+        @Override
+        public int height() { return geo.size; }
+
+        @Override
+        public Pos adjacent(Pos p, Dir d) {
+            Objects.requireNonNull(p);
+            Objects.requireNonNull(d);
+            if (!geo.inside(p.b, p.t)) return null;
+            int i = d.ordinal();
+            int b = p.b + DB[i], t = p.t + DT[i];
+            return geo.inside(b, t) ? geo.pos[geo.index(b, t)] : null;
+        }
+
+        @Override
+        public List<Pos> positions() { return geo.positions; }
+
+        @Override
+        public PieceModel<Species> get(Pos p) {
+            Objects.requireNonNull(p);
+            if (!geo.inside(p.b, p.t)) return null;
+            int i = geo.index(p.b, p.t);
+            return OthelloBitboard.get(nero, i) ? NERO : (OthelloBitboard.get(bianco, i) ? BIANCO : null);
+        }
+    }
+
+    /** Crea una copia (profonda) dell'oggetto OthelloBitboard dato
+     * @param o  un oggetto OthelloBitboard */
+    private OthelloBitboard(OthelloBitboard o) {
+        geo = o.geo;
+        name = o.name;
+        nero = o.nero.clone();
+        bianco = o.bianco.clone();
+        playerNames = o.playerNames;     // Può essere condiviso perché immodificabile
+        history = new ArrayList<>(o.history);  // Le TurnMove non sono mai modificate
+        currTurn = o.currTurn;
+        gResult = o.gResult;
+        vmCache = o.vmCache;             // Immodificabile
+        gM = new Mechanics<>(o.gM.time, PIECES, geo.positions, 2, start(), this::next);
+        view = new View();
+    }
+
+    private long[] own(int turn) { return turn == 1 ? nero : bianco; }
+
+    /** Calcola in {@code flips} i dischi rovesciati dal giocatore di turno aggiungendo
+     * un disco nella posizione di indice i.
+     * @return true se la mossa è valida, cioè se i è una posizione vuota e almeno un
+     * disco è rovesciato */
+    private boolean flipsAt(int i, long[] flips) {
+        if (i < 0 || i >= geo.cells) return false;
+        long[] own = own(currTurn), opp = own(3 - currTurn);
+        if (get(own, i) || get(opp, i)) return false;
+        Pos p = geo.pos[i];
+        return flips(geo, own, opp, p.b, p.t, flips);
+    }
+
+    /** Esegue la mossa valida che aggiunge un disco nella posizione di indice i e
+     * rovescia i dischi {@code flips}. */
+    private void play(int i, long[] flips) {
+        long[] own = own(currTurn), opp = own(3 - currTurn);
+        history.add(new TurnMove(currTurn, nero.clone(), bianco.clone()));
+        set(own, i);                             // Esegue la mossa: aggiunge il disco e
+        for (int w = 0 ; w < geo.words ; w++) {  // rovescia i dischi dell'altro giocatore
+            own[w] |= flips[w];
+            opp[w] &= ~flips[w];
+        }
+        vmCache = null;
+        currTurn = 3 - currTurn;      // Il turno passa all'altro giocatore
+        long[] tmp = new long[geo.words], x = new long[geo.words], y = new long[geo.words];
+        if (!mobility(geo, own(currTurn), own(3 - currTurn), tmp, x, y)) {  // Se non ha mosse valide,
+            currTurn = 3 - currTurn;                                        // il turno ripassa al giocatore
+            if (!mobility(geo, own(currTurn), own(3 - currTurn), tmp, x, y)) { // Se neanche questo ha mosse
+                int sc1 = count(nero), sc2 = count(bianco);                   // valide, la partita termina
+                gResult = (sc1 > sc2 ? 1 : (sc2 > sc1 ? 2 : 0));
+            }
+        }
+    }
+
+    private boolean isValid(Move<PieceModel<Species>> m, long[] own, long[] opp, long[] flips) {
+        if (!Move.Kind.ACTION.equals(m.kind) || m.actions.size() != 2) return false;
+        PieceModel<Species> curr = currTurn == 1 ? NERO : BIANCO;
+        Action<PieceModel<Species>> add = m.actions.get(0), swap = m.actions.get(1);
+        if (!Action.Kind.ADD.equals(add.kind) || !curr.equals(add.piece)) return false;
+        if (!Action.Kind.SWAP.equals(swap.kind) || !curr.equals(swap.piece)) return false;
+        Pos p = add.pos.get(0);
+        if (!geo.inside(p.b, p.t)) return false;
+        int i = geo.index(p.b, p.t);
+        if (get(own, i) || get(opp, i)) return false;
+        if (!flips(geo, own, opp, p.b, p.t, flips)) return false;
+        if (swap.pos.size() != count(flips)) return false;
+        for (Pos q : swap.pos)           // Le posizioni di un'azione sono distinte
+            if (!geo.inside(q.b, q.t) || !get(flips, geo.index(q.b, q.t))) return false;
+        return true;
+    }
+
+    private Situation<PieceModel<Species>> start() {
+        Map<Pos,PieceModel<Species>> c = new HashMap<>();
+        int i = (geo.size - 2)/2;
+        c.put(geo.pos[geo.index(i, i+1)], BIANCO);            // La configurazione iniziale
+        c.put(geo.pos[geo.index(i+1, i)], BIANCO);
+        c.put(geo.pos[geo.index(i+1, i+1)], NERO);
+        c.put(geo.pos[geo.index(i, i)], NERO);
+        return new Situation<>(c, 1);
+    }
+
+    /** Non usa lo stato di questo oggetto, quindi può essere invocato
+     * contemporaneamente da più thread. */
+    private Map<Move<PieceModel<Species>>,Situation<PieceModel<Species>>> next(Situation<PieceModel<Species>> s) {
+        Objects.requireNonNull(s);
+        Map<Move<PieceModel<Species>>, Situation<PieceModel<Species>>> sMap = new HashMap<>();
+        if (s.turn <= 0) return sMap;
+        Geometry g = geo;
+        long[] sN = new long[g.words], sB = new long[g.words];
+        for (int i = 0 ; i < g.cells ; i++) {
+            PieceModel<Species> pm = s.get(g.pos[i]);
+            if (NERO.equals(pm)) set(sN, i);
+            else if (BIANCO.equals(pm)) set(sB, i);
+        }
+        long[] own = s.turn == 1 ? sN : sB, opp = s.turn == 1 ? sB : sN;
+        long[] tmp = new long[g.words], x = new long[g.words], y = new long[g.words];
+        for (Map.Entry<Move<PieceModel<Species>>,long[]> e : moves(g, own, opp, s.turn).entrySet()) {
+            long[] fl = e.getValue();
+            long[] nOwn = own.clone(), nOpp = opp.clone();
+            Pos p = e.getKey().actions.get(0).pos.get(0);
+            set(nOwn, g.index(p.b, p.t));              // Esegue la mossa
+            for (int w = 0 ; w < g.words ; w++) {
+                nOwn[w] |= fl[w];
+                nOpp[w] &= ~fl[w];
+            }
+            int tNext = 3 - s.turn;         // Il turno passa all'altro giocatore
+            if (!mobility(g, nOpp, nOwn, tmp, x, y)) {      // Se non ha mosse valide,
+                tNext = 3 - tNext;                          // il turno ripassa al giocatore
+                if (!mobility(g, nOwn, nOpp, tmp, x, y)) {  // Se neanche questo ha mosse valide,
+                    int sc1 = count(s.turn == 1 ? nOwn : nOpp),   // la partita termina
+                        sc2 = count(s.turn == 1 ? nOpp : nOwn);
+                    tNext = sc1 > sc2 ? -1 : (sc2 > sc1 ? -2 : 0);
+                }
+            }
+            Map<Pos,PieceModel<Species>> cNext = new HashMap<>();
+            PieceModel<Species> cOwn = s.turn == 1 ? NERO : BIANCO, cOpp = s.turn == 1 ? BIANCO : NERO;
+            for (Pos q : toPos(g, nOwn)) cNext.put(q, cOwn);
+            for (Pos q : toPos(g, nOpp)) cNext.put(q, cOpp);
+            sMap.put(e.getKey(), new Situation<>(cNext, tNext));
+        }
+        if (sMap.isEmpty()) return null;   // Situazione non valida
+        return sMap;
+    }
+
+
+    private final Geometry geo;
+    private final String name;
+    private final long[] nero, bianco;
+    private final Board<PieceModel<Species>> view;
+    private final List<String> playerNames;
+    private final List<TurnMove> history;
+    private final Mechanics<PieceModel<Species>> gM;
+    private int currTurn;
+    private int gResult;
+    private Set<Move<PieceModel<Species>>> vmCache;   // Le mosse valide, null se da calcolare
+}
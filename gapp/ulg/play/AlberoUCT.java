@@ -0,0 +1,401 @@
+package gapp.ulg.play;
+
+import gapp.ulg.game.board.GameRuler;
+import gapp.ulg.game.board.IntMoveList;
+import gapp.ulg.game.board.Move;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/** L'albero di ricerca della modalità UCT di {@link MCTSPlayer}. I nodi sono
+ * memorizzati in array paralleli di capacità fissa (il pool dei nodi), calcolata
+ * dalla memoria massima data, quindi creare un nodo non alloca oggetti a parte la
+ * mossa. I figli di un nodo occupano posizioni consecutive del pool. Quando il pool
+ * è pieno l'albero smette di crescere, ma le iterazioni continuano a fare playout
+ * dalle sue foglie. Se il gioco codifica le mosse ({@link GameRuler#moveCodes()}) i
+ * nodi contengono i codici delle mosse, che sono generate ed eseguite senza creare
+ * oggetti {@link Move}: solamente la mossa scelta è decodificata.
+ * <br>
+ * Ogni iterazione seleziona una foglia scendendo dalla radice con UCB1, la espande
+ * con tutte le mosse valide (escluso l'abbandono), fa un playout con mosse random
+ * (con il {@link gapp.ulg.game.board.Playout} del gioco, se c'è) da uno dei nuovi figli e aggiorna le statistiche dei nodi del cammino. Le
+ * vittorie di un nodo sono contate dal punto di vista del giocatore che ha fatto la
+ * mossa del nodo (una patta vale 1/2).
+ * <br>
+ * Dopo una mossa l'albero può essere riusato: {@link AlberoUCT#muovi(GameRuler, Move)} sposta
+ * la radice nel figlio della mossa e il sottoalbero è compattato all'inizio del pool
+ * alla prossima ricerca.
+ * <br>
+ * La ricerca può essere parallela sull'albero condiviso: più task, ognuno con la
+ * sua copia del gioco, fanno iterazioni contemporaneamente. Visite e vittorie sono
+ * contatori atomici e l'espansione di un nodo è riservata con un compare-and-set,
+ * quindi non ci sono lock. Le visite sono incrementate durante la discesa e le
+ * vittorie solamente alla fine del playout (virtual loss), così gli altri task
+ * vedono temporaneamente come perdente il cammino in corso e ne scelgono altri.
+ * @param <P>  tipo del modello dei pezzi */
+class AlberoUCT<P> {
+    /** Stima dei byte occupati da un nodo, compresi la mossa e i suoi oggetti */
+    static final int BYTE_PER_NODO = 200;
+
+    /** Crea un albero vuoto con un pool di nodi che occupa al più circa mb megabyte.
+     * @param mb  memoria massima in megabyte, almeno 1 */
+    AlberoUCT(int mb) {
+        capacita = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, mb) * 1024L * 1024L / BYTE_PER_NODO);
+        padre = new int[capacita];
+        primoFiglio = new AtomicIntegerArray(capacita);
+        numFigli = new int[capacita];
+        visite = new AtomicIntegerArray(capacita);
+        punti = new AtomicIntegerArray(capacita);
+        giocatore = new byte[capacita];
+        mosse = new Object[capacita];
+        codici = new int[capacita];
+        usati = new AtomicInteger(0);
+        radice = -1;
+    }
+
+    /** Esegue iterazioni UCT a partire dalla situazione di gioco g (che deve essere
+     * quella della radice, se l'albero non è vuoto) finché non ne ha fatte n, non
+     * scade la scadenza (in nanosecondi, come {@link System#nanoTime()}) o il thread
+     * non è interrotto. Il gioco g è modificato durante la ricerca ma al termine è
+     * riportato alla situazione iniziale.
+     * @param g  il gioco nella situazione della radice, non terminato
+     * @param n  massimo numero di iterazioni
+     * @param scadenza  l'istante in cui terminare la ricerca
+     * @param rnd  generatore per i playout
+     * @return il numero di iterazioni fatte */
+    int cerca(GameRuler<P> g, int n, long scadenza, Random rnd) {
+        return cerca(g, n, scadenza, rnd, null);
+    }
+
+    /** Come {@link AlberoUCT#cerca(GameRuler, int, long, Random)} ma se fjp non è
+     * null le iterazioni sono divise tra il thread invocante e un task per ogni
+     * thread del pool, che condividono l'albero. Quando ritorna tutti i task sono
+     * terminati.
+     * @param g  il gioco nella situazione della radice, non terminato
+     * @param n  massimo numero di iterazioni
+     * @param scadenza  l'istante in cui terminare la ricerca
+     * @param rnd  generatore per i playout del thread invocante
+     * @param fjp  il pool per i task paralleli o null
+     * @return il numero di iterazioni fatte */
+    int cerca(GameRuler<P> g, int n, long scadenza, Random rnd, ForkJoinPool fjp) {
+        if (radice == -1) {
+            usati.set(0);
+            pieno = false;
+            conPlayout = true;
+            boolean c = true;
+
+            try { g.moveCodes(); } catch (UnsupportedOperationException e) { c = false; }
+
+            compatto = c;
+            radice = nuovoNodo(-1, null, -1, 3 - g.turn());
+        } else if (radice != 0)
+            compatta();
+
+        AtomicInteger fatte = new AtomicInteger(0);
+        AtomicBoolean fine = new AtomicBoolean(false);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+        if (fjp != null)
+            for (int t = 0 ; t < fjp.getParallelism() ; t++) {
+                GameRuler<P> copia = g.copy();
+                Random r = new Random(rnd.nextLong());
+                tasks.add(fjp.submit(() -> lavora(copia, n, scadenza, r, fatte, fine)));
+            }
+
+        try {
+            lavora(g, n, scadenza, rnd, fatte, fine);
+        } finally {
+            //Ferma i task e li aspetta, terminano alla fine della loro iterazione;
+            fine.set(true);
+
+            for (ForkJoinTask<?> t : tasks)
+                t.quietlyJoin();
+        }
+
+        return Math.min(fatte.get(), n);
+    }
+
+    /** Ritorna la mossa del figlio della radice con più visite, null se la radice
+     * non è ancora stata espansa.
+     * @param g  il gioco nella situazione della radice, serve per decodificare la
+     *           mossa
+     * @return la mossa più visitata della radice o null */
+    @SuppressWarnings("unchecked")
+    Move<P> migliore(GameRuler<P> g) {
+        if (radice == -1 || primoFiglio.get(radice) < 0) return null;
+        int f = primoFiglio.get(radice), m = f;
+
+        for (int i = f ; i < f + numFigli[radice] ; i++)
+            if (visite.get(i) > visite.get(m)) m = i;
+
+        return compatto ? g.decode(codici[m]) : (Move<P>) mosse[m];
+    }
+
+    /** Sposta la radice nel figlio con la mossa m, se c'è, altrimenti svuota
+     * l'albero. Non fa altro lavoro, la compattazione è rimandata alla prossima
+     * ricerca. Deve essere invocato prima di fare la mossa in g.
+     * @param g  il gioco nella situazione della radice, serve per codificare la mossa
+     * @param m  la mossa fatta nella situazione della radice */
+    void muovi(GameRuler<P> g, Move<P> m) {
+        if (radice == -1) return;
+
+        int nuova = -1, c = compatto ? g.encode(m) : -1;
+
+        int f = primoFiglio.get(radice);
+
+        if (f >= 0)
+            for (int i = f ; i < f + numFigli[radice] ; i++)
+                if (compatto ? c == codici[i] : m.equals(mosse[i])) {
+                    nuova = i;
+                    break;
+                }
+
+        radice = nuova;
+    }
+
+    /** Svuota l'albero */
+    void svuota() { radice = -1; }
+
+    /** @return il numero di nodi nel pool */
+    int nodi() { return Math.min(usati.get(), capacita); }
+
+
+    private static final double C = Math.sqrt(2);
+
+    //Valore di primoFiglio di un nodo che un thread sta espandendo;
+    private static final int IN_ESPANSIONE = -2;
+
+    private final int capacita;
+    private final int[] padre, numFigli;
+    private final AtomicIntegerArray primoFiglio, visite;
+    private final AtomicIntegerArray punti;      // Le vittorie in mezzi punti, una patta vale 1 e una vittoria 2
+    private final byte[] giocatore;
+    private final Object[] mosse;               // Le mosse dei nodi, se il gioco non le codifica
+    private final int[] codici;                 // I codici delle mosse dei nodi, se il gioco le codifica
+    private final AtomicInteger usati;
+    private volatile boolean pieno;
+    private volatile boolean conPlayout = true;  // Falso se il gioco non ha un Playout
+    private boolean compatto;                    // Vero se il gioco codifica le mosse
+    private int radice;
+
+    private int nuovoNodo(int p, Move<P> m, int c, int g) {
+        return inizializza(usati.getAndIncrement(), p, m, c, g);
+    }
+
+    private int inizializza(int i, int p, Move<P> m, int c, int g) {
+        padre[i] = p;
+        primoFiglio.set(i, -1);
+        numFigli[i] = 0;
+        visite.set(i, 0);
+        punti.set(i, 0);
+        giocatore[i] = (byte) g;
+        mosse[i] = m;
+        codici[i] = c;
+        return i;
+    }
+
+    /**Fa iterazioni finché non ne sono state fatte n in totale, scade il tempo, il
+       thread è interrotto o la ricerca è terminata da un altro thread*/
+    private void lavora(GameRuler<P> g, int n, long scadenza, Random rnd, AtomicInteger fatte, AtomicBoolean fine) {
+        //La lista dei codici delle mosse è riusata da tutte le iterazioni del thread;
+        IntMoveList lista = compatto ? new IntMoveList() : null;
+
+        while (!fine.get() && System.nanoTime() < scadenza && !Thread.currentThread().isInterrupted()
+                && fatte.getAndIncrement() < n)
+            iterazione(g, rnd, lista);
+    }
+
+    private void iterazione(GameRuler<P> g, Random rnd, IntMoveList lista) {
+        int nodo = radice, fatte = 0;
+        visite.incrementAndGet(nodo);
+
+        //Selezione: scendo finché il nodo è espanso, contando subito le visite (virtual loss);
+        while (primoFiglio.get(nodo) >= 0) {
+            nodo = ucb(nodo);
+            visite.incrementAndGet(nodo);
+            muovi(g, nodo);
+            fatte++;
+        }
+
+        //Espansione, se la partita non è terminata, nessun altro la sta facendo e c'è posto nel pool;
+        if (g.result() == -1 && !pieno && primoFiglio.compareAndSet(nodo, -1, IN_ESPANSIONE)) {
+            List<Move<P>> vm = null;
+            int nuovi;
+
+            if (compatto) {
+                g.validMoveCodes(lista);
+                nuovi = lista.size();
+            } else {
+                vm = new ArrayList<>(g.validMoves());
+                vm.removeIf(m -> m.kind == Move.Kind.RESIGN);
+                nuovi = vm.size();
+            }
+
+            int inizio = nuovi == 0 ? -1 : usati.getAndAdd(nuovi);
+
+            if (inizio >= 0 && inizio + nuovi <= capacita) {
+                int t = g.turn();
+
+                for (int i = 0 ; i < nuovi ; i++)
+                    if (compatto) inizializza(inizio + i, nodo, null, lista.get(i), t);
+                    else inizializza(inizio + i, nodo, vm.get(i), -1, t);
+
+                //Pubblica i figli agli altri thread;
+                numFigli[nodo] = nuovi;
+                primoFiglio.set(nodo, inizio);
+
+                nodo = inizio + rnd.nextInt(nuovi);
+                visite.incrementAndGet(nodo);
+                muovi(g, nodo);
+                fatte++;
+            } else {
+                if (inizio >= 0) pieno = true;
+                primoFiglio.set(nodo, -1);
+            }
+        }
+
+        int esito = playout(g, rnd);
+
+        for (int i = 0 ; i < fatte ; i++)
+            g.unMove();
+
+        //Retropropagazione, le visite sono già state contate;
+        for (int i = nodo ; i != -1 ; i = padre[i]) {
+            if (esito == 0) punti.addAndGet(i, 1);
+            else if (esito == giocatore[i]) punti.addAndGet(i, 2);
+        }
+    }
+
+    /**Esegue in g la mossa del nodo*/
+    @SuppressWarnings("unchecked")
+    private void muovi(GameRuler<P> g, int nodo) {
+        if (compatto) g.move(codici[nodo]);
+        else g.move((Move<P>) mosse[nodo]);
+    }
+
+    /**Il figlio di nodo con il massimo valore UCB1, i figli mai visitati per primi*/
+    private int ucb(int nodo) {
+        int f = primoFiglio.get(nodo), migliore = f;
+        double logN = Math.log(Math.max(1, visite.get(nodo))), max = Double.NEGATIVE_INFINITY;
+
+        for (int i = f ; i < f + numFigli[nodo] ; i++) {
+            int v_i = visite.get(i);
+
+            if (v_i == 0) return i;
+
+            double v = punti.get(i) / (2.0 * v_i) + C * Math.sqrt(logN / v_i);
+
+            if (v > max) {
+                max = v;
+                migliore = i;
+            }
+        }
+
+        return migliore;
+    }
+
+    /**Gioca una partita con mosse random (mai l'abbandono se c'è un'altra mossa) con
+       il Playout di g, se il gioco lo ha, altrimenti su una copia di g e ritorna il suo
+       esito*/
+    private int playout(GameRuler<P> g, Random rnd) {
+        if (g.result() != -1) return g.result();
+
+        if (conPlayout)
+            try {
+                return g.playout().rollout(rnd);
+            } catch (UnsupportedOperationException e) {
+                conPlayout = false;
+            }
+
+        GameRuler<P> c = g.copy();
+
+        //Se il gioco codifica le mosse il playout non crea le mosse che non fa;
+        if (compatto) {
+            IntMoveList lista = new IntMoveList();
+
+            while (c.result() == -1) {
+                c.validMoveCodes(lista);
+
+                if (lista.isEmpty())
+                    c.move(new Move<>(Move.Kind.RESIGN));
+                else
+                    c.move(lista.get(rnd.nextInt(lista.size())));
+            }
+
+            return c.result();
+        }
+
+        List<Move<P>> vm = new ArrayList<>();
+
+        while (c.result() == -1) {
+            vm.clear();
+
+            for (Move<P> m : c.validMoves())
+                if (m.kind != Move.Kind.RESIGN) vm.add(m);
+
+            if (vm.isEmpty())
+                c.move(new Move<>(Move.Kind.RESIGN));
+            else
+                c.move(vm.get(rnd.nextInt(vm.size())));
+        }
+
+        return c.result();
+    }
+
+    /**Sposta il sottoalbero della radice all'inizio del pool. I nodi sono spostati
+       in ordine di posizione, quindi la destinazione di un nodo non supera mai la
+       sua posizione e i figli di un nodo restano consecutivi*/
+    private void compatta() {
+        int usati = nodi();
+        int[] nuovo = new int[usati];
+        Arrays.fill(nuovo, -1);
+
+        //Marco i nodi del sottoalbero (visitato in profondità con uno stack esplicito);
+        int[] stack = new int[usati];
+        int top = 0, n = 0;
+        stack[top++] = radice;
+
+        while (top > 0) {
+            int i = stack[--top], f = primoFiglio.get(i);
+            nuovo[i] = 0;
+
+            if (f >= 0)
+                for (int c = f ; c < f + numFigli[i] ; c++)
+                    stack[top++] = c;
+        }
+
+        for (int i = 0 ; i < usati ; i++)
+            if (nuovo[i] == 0) nuovo[i] = n++;
+            else nuovo[i] = -1;
+
+        //La radice ha la posizione minima del suo sottoalbero;
+        for (int i = 0 ; i < usati ; i++) {
+            int d = nuovo[i], f = primoFiglio.get(i);
+
+            if (d == -1) continue;
+
+            padre[d] = i == radice ? -1 : nuovo[padre[i]];
+            primoFiglio.set(d, f < 0 ? -1 : nuovo[f]);
+            numFigli[d] = numFigli[i];
+            visite.set(d, visite.get(i));
+            punti.set(d, punti.get(i));
+            giocatore[d] = giocatore[i];
+            mosse[d] = mosse[i];
+            codici[d] = codici[i];
+        }
+
+        for (int i = n ; i < usati ; i++)
+            mosse[i] = null;
+
+        this.usati.set(n);
+        pieno = false;
+        radice = 0;
+    }
+}
@@ -0,0 +1,621 @@
+package gapp.ulg.play;
+
+import gapp.ulg.game.board.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/** Un oggetto {@code AlphaBetaPlayer} è un giocatore che sceglie la mossa con una
+ * ricerca alpha-beta (nella forma negamax) per giochi con due giocatori.
+ * <br>
+ * La ricerca è ad approfondimento iterativo: cerca a profondità 1, 2, ... fino alla
+ * profondità massima o finché non scade il tempo per la mossa
+ * ({@link GameRuler.Mechanics#time}), e gioca la migliore mossa dell'ultima
+ * iterazione completata. Le situazioni già valutate sono memorizzate in una tabella
+ * delle trasposizioni di dimensione fissa, indicizzata dallo hash di Zobrist del
+ * gioco ({@link GameRuler#hash()}) e senza lock, condivisa tra i thread e tra le
+ * mosse della partita. Se il gioco non calcola lo hash la tabella non è usata.
+ * Le mosse sono ordinate provando prima la migliore mossa della tabella, poi le
+ * mosse killer della stessa profondità e infine le altre secondo l'euristica della
+ * history.
+ * <br>
+ * La ricerca lavora sui codici interi delle mosse ({@link GameRuler#encode(Move)}):
+ * le mosse valide sono generate in {@link IntMoveList} riusate per ogni profondità e
+ * le mosse killer, la history e la tabella usano i codici, quindi durante la ricerca
+ * non sono create {@link Move}. Solamente la mossa scelta è decodificata. Se il gioco
+ * non codifica le mosse, i codici sono assegnati dal giocatore alle mosse via via che
+ * le incontra.
+ * <br>
+ * Le situazioni non finali alla profondità massima sono valutate da una
+ * {@link Evaluation} che si può specificare, quella di default conta i pezzi.
+ * <br>
+ * Se è parallelo e {@link Player#threads(int, ForkJoinPool, ExecutorService)} lo
+ * permette, le mosse della radice sono divise tra più thread (o tra i task del
+ * pool ForkJoin) che condividono la tabella delle trasposizioni. I thread sono
+ * creati ad ogni mossa e sono terminati prima che getMove ritorni.
+ * @param <P>  tipo del modello dei pezzi */
+public class AlphaBetaPlayer<P> implements Player<P> {
+    /** Una funzione di valutazione delle situazioni non finali.
+     * @param <P>  tipo del modello dei pezzi */
+    @FunctionalInterface
+    public interface Evaluation<P> {
+        /** Ritorna la valutazione della situazione attuale del gioco dal punto di
+         * vista del giocatore i: più è alta più la situazione è favorevole a i. Il
+         * valore è limitato all'intervallo [-{@link AlphaBetaPlayer#MAX_EVAL},
+         * {@link AlphaBetaPlayer#MAX_EVAL}]. Il metodo non deve modificare g.
+         * @param g  un gioco non terminato
+         * @param i  indice di turnazione di un giocatore
+         * @return la valutazione della situazione per il giocatore i */
+        int evaluate(GameRuler<P> g, int i);
+    }
+
+    /** Il massimo valore assoluto di una valutazione, le vittorie valgono di più */
+    public static final int MAX_EVAL = 100_000;
+
+    /** Valutazione di default: se i pezzi sono {@link PieceModel}, il numero di
+     * pezzi del colore del giocatore meno quelli degli altri colori, altrimenti 0. */
+    public static <P> Evaluation<P> material() {
+        return (g, i) -> {
+            String colore = g.color(g.players().get(i - 1));
+            Board<P> b = g.getBoard();
+            int v = 0;
+
+            for (Pos p : b.positions()) {
+                P pm = b.get(p);
+
+                if (pm instanceof PieceModel)
+                    v += colore.equals(((PieceModel<?>) pm).color) ? 1 : -1;
+            }
+
+            return v;
+        };
+    }
+
+    /** Crea un {@code AlphaBetaPlayer} con la valutazione di default.
+     * @param name  il nome del giocatore
+     * @param depth  la profondità massima della ricerca, se < 1 è intesa 1
+     * @param parallel  se true le mosse della radice sono divise tra più thread
+     * @throws NullPointerException se {@code name} è null */
+    public AlphaBetaPlayer(String name, int depth, boolean parallel) {
+        this(name, depth, parallel, material());
+    }
+
+    /** Crea un {@code AlphaBetaPlayer}.
+     * @param name  il nome del giocatore
+     * @param depth  la profondità massima della ricerca, se < 1 è intesa 1
+     * @param parallel  se true le mosse della radice sono divise tra più thread
+     * @param eval  la valutazione delle situazioni non finali
+     * @throws NullPointerException se {@code name} o {@code eval} è null */
+    public AlphaBetaPlayer(String name, int depth, boolean parallel, Evaluation<P> eval) {
+
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(eval);
+
+        nome = name;
+        profonditaMax = Math.max(1, depth);
+        parallelo = parallel;
+        valutazione = eval;
+        maxTh = Runtime.getRuntime().availableProcessors();
+        tabella = new AtomicLongArray(2 * DIM_TABELLA);
+
+    }
+
+    @Override
+    public String name() { return nome; }
+
+    @Override
+    public void setGame(GameRuler<P> g) {
+        Objects.requireNonNull(g);
+
+        if (g.players().size() != 2)
+            throw new IllegalArgumentException("Solo giochi con due giocatori");
+
+        partita = g;
+        turnoGiocatore = 0;
+        codici.clear();
+        mosseCodici.clear();
+        prossimoCodice.set(0);
+        boolean c = true;
+
+        try { g.moveCodes(); } catch (UnsupportedOperationException e) { c = false; }
+
+        compatto = c;
+
+        //Le situazioni della partita precedente non servono più;
+        for (int i = 0 ; i < tabella.length() ; i++)
+            tabella.lazySet(i, 0);
+    }
+
+    @Override
+    public void moved(int i, Move<P> m) {
+        Objects.requireNonNull(m);
+
+        if (partita == null || partita.result() != -1)
+            throw new IllegalStateException();
+
+        if (i <= 0 || i > partita.players().size() || !partita.isValid(m))
+            throw new IllegalArgumentException();
+
+        if (partita.isPlaying(i))
+            partita.move(m);
+    }
+
+    @Override
+    public Move<P> getMove() {
+
+        if (partita == null || partita.result() != -1 || (turnoGiocatore != 0 && partita.turn() != turnoGiocatore))
+            throw new IllegalStateException();
+
+        turnoGiocatore = partita.turn();
+
+        long tempo = partita.mechanics().time;
+        Ricerca radice = new Ricerca(partita.copy(), tempo > 0 ? System.nanoTime() + tempo * 800_000L : Long.MAX_VALUE);
+
+        //Le mosse della radice, senza l'abbandono, copiate perché la lista della profondità 0 è riusata;
+        IntMoveList ordinate = radice.mosseOrdinate(0, 0), mosse = new IntMoveList(ordinate.size());
+
+        for (int i = 0 ; i < ordinate.size() ; i++)
+            mosse.add(ordinate.get(i));
+
+        if (mosse.isEmpty())
+            return new Move<>(Move.Kind.RESIGN);
+
+        if (mosse.size() == 1)
+            return decodifica(mosse.get(0));
+
+        int nThread = !parallelo ? 0 : fjp != null ? fjp.getParallelism() : maxTh;
+        int migliore = mosse.get(0);
+
+        //Le ricerche dei task paralleli, una per task per tutte le profondità (per non perdere killer e history);
+        List<Ricerca> lavoratori = new ArrayList<>();
+
+        //Senza fjp i task usano un pool creato per questa mossa e terminato prima di ritornare;
+        ExecutorService pool = null;
+
+        if (nThread > 1) {
+            pool = fjp != null ? fjp : Executors.newFixedThreadPool(nThread);
+
+            for (int t = 0 ; t < nThread ; t++) {
+                Ricerca r = new Ricerca(radice.g.copy(), radice.scadenza);
+                r.fermata = radice.fermata;
+                lavoratori.add(r);
+            }
+        }
+
+        try {
+
+            //Approfondimento iterativo: il risultato di un'iterazione incompleta è scartato;
+            for (int d = 1 ; d <= profonditaMax ; d++) {
+                int m;
+
+                try {
+                    m = nThread > 1 ? radiceParallela(radice, lavoratori, mosse, d, pool) : radice.radice(mosse, d);
+                } catch (Interrotta e) {
+                    if (radice.interrotta())
+                        return null;
+
+                    break;
+                }
+
+                migliore = m;
+
+                //La mossa migliore è la prima della prossima iterazione;
+                for (int i = mosse.indexOf(m) ; i > 0 ; i--)
+                    mosse.set(i, mosse.get(i - 1));
+
+                mosse.set(0, m);
+
+                //Vittoria o sconfitta certa, è inutile andare più in profondità;
+                if (Math.abs(radice.valoreRadice) > MAX_EVAL)
+                    break;
+            }
+        } finally {
+            if (pool != null && pool != fjp)
+                termina(pool);
+        }
+
+        return decodifica(migliore);
+    }
+
+    @Override
+    public void threads(int maxTh, ForkJoinPool fjp, ExecutorService bgExec) {
+
+        if (maxTh < 0)
+            this.maxTh = Runtime.getRuntime().availableProcessors();
+        else
+            this.maxTh = maxTh;
+
+        this.fjp = fjp;
+    }
+
+
+    //Il valore di una vittoria alla radice, diminuisce con la distanza per preferire le vittorie più vicine;
+    private static final int VITTORIA = 1_000_000;
+
+    //Numero di entrate della tabella delle trasposizioni (potenza di 2), ogni entrata occupa due long;
+    private static final int DIM_TABELLA = 1 << 18;
+
+    //Tipi di valori memorizzati nella tabella;
+    private static final int ESATTO = 0, MINIMO = 1, MASSIMO = 2;
+
+    //Eccezione (senza stack trace) usata per terminare la ricerca quando scade il tempo;
+    private static final class Interrotta extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Interrotta() { super(null, null, false, false); }
+    }
+
+    private static final Interrotta INTERROTTA = new Interrotta();
+
+    private final String nome;
+    private final int profonditaMax;
+    private final boolean parallelo;
+    private final Evaluation<P> valutazione;
+    private final AtomicLongArray tabella;
+    private GameRuler<P> partita;
+    private int turnoGiocatore;
+
+    //Se il gioco codifica le mosse, altrimenti i codici sono assegnati con le due mappe;
+    private boolean compatto;
+    private final Map<Move<P>, Integer> codici = new ConcurrentHashMap<>();
+    private final Map<Integer, Move<P>> mosseCodici = new ConcurrentHashMap<>();
+    private final AtomicInteger prossimoCodice = new AtomicInteger();
+    private int maxTh;
+    private ForkJoinPool fjp;
+
+    /**Il codice della mossa m, assegnato la prima volta che la mossa è incontrata;
+       serve solamente se il gioco non codifica le mosse*/
+    private int codice(Move<P> m) {
+        return codici.computeIfAbsent(m, k -> {
+            int c = prossimoCodice.getAndIncrement();
+            mosseCodici.put(c, k);
+            return c;
+        });
+    }
+
+    /**La mossa della situazione attuale della partita con il codice dato*/
+    private Move<P> decodifica(int c) {
+        return compatto ? partita.decode(c) : mosseCodici.get(c);
+    }
+
+    /**Divide le mosse della radice tra i task eseguiti da pool (uno per ricerca di
+       lavoratori), che le prendono una alla volta e usano come alpha il miglior
+       valore trovato fino a quel momento. Prima di ritornare, anche per un'eccezione, i task sono
+       fermati con radice.fermata e attesi, quindi le ricerche non sono più in uso*/
+    private int radiceParallela(Ricerca radice, List<Ricerca> lavoratori, IntMoveList mosse, int d, ExecutorService pool) {
+        AtomicInteger prossima = new AtomicInteger(0);
+        int[] migliore = {0, Integer.MIN_VALUE};
+        radice.fermata.set(false);
+
+        //La prima mossa (la migliore dell'iterazione precedente) è cercata da sola per avere un buon alpha;
+        migliore[0] = mosse.get(0);
+        migliore[1] = radice.valoreMossa(mosse.get(0), d, -VITTORIA - 1);
+        prossima.set(1);
+
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+            for (Ricerca r : lavoratori) {
+                Runnable task = () -> {
+                    for (int i = prossima.getAndIncrement() ; i < mosse.size() ; i = prossima.getAndIncrement()) {
+                        int alpha;
+
+                        synchronized (migliore) { alpha = migliore[1]; }
+
+                        int v = r.valoreMossa(mosse.get(i), d, alpha);
+
+                        synchronized (migliore) {
+                            if (v > migliore[1]) {
+                                migliore[0] = mosse.get(i);
+                                migliore[1] = v;
+                            }
+                        }
+                    }
+                };
+
+                futures.add(pool.submit(task));
+            }
+
+            for (Future<?> f : futures)
+                f.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw INTERROTTA;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Interrotta)
+                throw INTERROTTA;
+
+            throw new IllegalStateException(e.getCause());
+        } finally {
+
+            //cancel non interrompe i task del ForkJoinPool, quindi li fermo con il flag e li aspetto;
+            radice.fermata.set(true);
+            attendi(futures);
+        }
+
+        radice.valoreRadice = migliore[1];
+        return migliore[0];
+    }
+
+    /**Aspetta che tutti i task siano terminati, anche se il thread è interrotto
+       (l'interruzione è poi ripristinata)*/
+    private static void attendi(List<Future<?>> futures) {
+        boolean interrotto = false;
+
+        for (Future<?> f : futures)
+            while (true) {
+                try {
+                    f.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrotto = true;
+                } catch (ExecutionException | CancellationException e) {
+                    break;
+                }
+            }
+
+        if (interrotto)
+            Thread.currentThread().interrupt();
+    }
+
+    /**Termina il pool e aspetta che i suoi thread siano terminati, anche se il
+       thread è interrotto (l'interruzione è poi ripristinata)*/
+    private static void termina(ExecutorService pool) {
+        boolean interrotto = false;
+        pool.shutdownNow();
+
+        while (true) {
+            try {
+                if (pool.awaitTermination(1, TimeUnit.MINUTES))
+                    break;
+            } catch (InterruptedException e) {
+                interrotto = true;
+            }
+        }
+
+        if (interrotto)
+            Thread.currentThread().interrupt();
+    }
+
+    /**Lo stato di una ricerca in un thread: la copia del gioco su cui fa e disfa le
+       mosse, le mosse killer e la history, che non sono condivise tra i thread*/
+    private class Ricerca {
+        Ricerca(GameRuler<P> g, long scadenza) {
+            this.g = g;
+            this.scadenza = scadenza;
+            boolean h = true;
+
+            try { g.hash(); } catch (UnsupportedOperationException e) { h = false; }
+
+            usaTabella = h;
+            chiamante = Thread.currentThread();
+        }
+
+        final GameRuler<P> g;
+        final long scadenza;
+        final boolean usaTabella;
+        final Thread chiamante;
+        //Per ogni profondità le mosse killer (-1 se non c'è), la lista delle mosse e i loro punti;
+        final List<int[]> killer = new ArrayList<>();
+        final List<IntMoveList> liste = new ArrayList<>();
+        final List<int[]> punti = new ArrayList<>();
+        int[] history = new int[64];
+        AtomicBoolean fermata = new AtomicBoolean(false);
+        int valoreRadice;
+        long nodi;
+
+        /**La ricerca sequenziale di tutte le mosse della radice a profondità d*/
+        int radice(IntMoveList mosse, int d) {
+            int migliore = -1;
+            int alpha = -VITTORIA - 1;
+
+            for (int i = 0 ; i < mosse.size() ; i++) {
+                int m = mosse.get(i);
+                int v = valoreMossa(m, d, alpha);
+
+                if (v > alpha) {
+                    alpha = v;
+                    migliore = m;
+                }
+            }
+
+            valoreRadice = alpha;
+            return migliore;
+        }
+
+        /**Il valore della mossa m della radice, per il giocatore di turno, con una
+           ricerca a profondità d; se è <= alpha è solamente un limite superiore*/
+        int valoreMossa(int m, int d, int alpha) {
+            int io = g.turn();
+            muovi(m);
+
+            try {
+                int altro = g.turn() != 0 ? g.turn() : 3 - io;
+                return altro == io ? negamax(d - 1, alpha, VITTORIA + 1, 1, io)
+                        : -negamax(d - 1, -VITTORIA - 1, -alpha, 1, altro);
+            } finally {
+                g.unMove();
+            }
+        }
+
+        /**Il valore della situazione attuale di g per il giocatore io, che è di turno
+           (o lo sarebbe se la partita non fosse terminata)*/
+        int negamax(int d, int alpha, int beta, int ply, int io) {
+
+            if ((++nodi & 15) == 0 && (fermata.get() || System.nanoTime() > scadenza || chiamante.isInterrupted()))
+                throw INTERROTTA;
+
+            int r = g.result();
+
+            if (r != -1)
+                return r == 0 ? 0 : r == io ? VITTORIA - ply : -(VITTORIA - ply);
+
+            if (d <= 0)
+                return Math.max(-MAX_EVAL, Math.min(MAX_EVAL, valutazione.evaluate(g, io)));
+
+            //Consulto la tabella delle trasposizioni;
+            long hash = usaTabella ? g.hash() : 0;
+            int mossaTabella = 0;
+
+            if (usaTabella) {
+                int i = (int) (hash & (DIM_TABELLA - 1)) * 2;
+                long dati = tabella.get(i + 1);
+
+                if ((tabella.get(i) ^ dati) == hash && dati != 0) {
+                    int valore = daTabella((int) (dati >> 32) >> 8, ply), profondita = (int) (dati >>> 2) & 0x3F, tipo = (int) dati & 3;
+                    mossaTabella = (int) (dati >>> 8) & 0xFFFFFF;
+
+                    if (profondita >= d) {
+                        if (tipo == ESATTO) return valore;
+                        if (tipo == MINIMO && valore >= beta) return valore;
+                        if (tipo == MASSIMO && valore <= alpha) return valore;
+                    }
+                }
+            }
+
+            int alphaIniziale = alpha, migliore = -VITTORIA - 1;
+            int mossaMigliore = -1;
+            IntMoveList mosse = mosseOrdinate(ply, mossaTabella);
+
+            for (int j = 0 ; j < mosse.size() ; j++) {
+                int m = mosse.get(j);
+                muovi(m);
+                int v;
+
+                try {
+                    int altro = g.turn() != 0 ? g.turn() : 3 - io;
+                    v = altro == io ? negamax(d - 1, alpha, beta, ply + 1, io)
+                            : -negamax(d - 1, -beta, -alpha, ply + 1, altro);
+                } finally {
+                    g.unMove();
+                }
+
+                if (v > migliore) {
+                    migliore = v;
+                    mossaMigliore = m;
+                }
+
+                if (v > alpha)
+                    alpha = v;
+
+                //Taglio: la mossa diventa killer per questa profondità e aumenta la sua history;
+                if (alpha >= beta) {
+                    int[] k = killer(ply);
+
+                    if (m != k[0]) {
+                        k[1] = k[0];
+                        k[0] = m;
+                    }
+
+                    if (m >= history.length)
+                        history = Arrays.copyOf(history, Math.max(m + 1, 2 * history.length));
+
+                    history[m] += d * d;
+                    break;
+                }
+            }
+
+            //Solamente l'abbandono è possibile;
+            if (mossaMigliore < 0)
+                return -(VITTORIA - ply);
+
+            if (usaTabella) {
+                int tipo = migliore <= alphaIniziale ? MASSIMO : migliore >= beta ? MINIMO : ESATTO;
+                long dati = ((long) inTabella(migliore, ply) << 40) | (((mossaMigliore + 1) & 0xFFFFFFL) << 8) | (Math.min(d, 63) << 2) | tipo;
+                int i = (int) (hash & (DIM_TABELLA - 1)) * 2;
+                tabella.set(i, hash ^ dati);
+                tabella.set(i + 1, dati);
+            }
+
+            return migliore;
+        }
+
+        /**I codici delle mosse valide di g senza l'abbandono, nella lista della
+           profondità ply: prima quella della tabella (con il codice più 1 dato, se
+           non è 0), poi le killer della profondità ply, poi le altre in ordine
+           decrescente di history*/
+        IntMoveList mosseOrdinate(int ply, int mossaTabella) {
+            while (liste.size() <= ply) {
+                liste.add(new IntMoveList());
+                punti.add(new int[16]);
+            }
+
+            IntMoveList mosse = liste.get(ply);
+
+            if (compatto)
+                g.validMoveCodes(mosse);
+            else {
+                mosse.clear();
+
+                for (Move<P> m : g.validMoves())
+                    if (m.kind != Move.Kind.RESIGN)
+                        mosse.add(codice(m));
+            }
+
+            int[] k = killer(ply), p = punti.get(ply);
+
+            if (p.length < mosse.size()) {
+                p = new int[Math.max(mosse.size(), 2 * p.length)];
+                punti.set(ply, p);
+            }
+
+            //Ordinamento per inserzione, le liste sono corte;
+            for (int i = 0 ; i < mosse.size() ; i++) {
+                int m = mosse.get(i), v;
+
+                if (m + 1 == mossaTabella) v = Integer.MAX_VALUE;
+                else if (m == k[0]) v = Integer.MAX_VALUE - 2;
+                else if (m == k[1]) v = Integer.MAX_VALUE - 3;
+                else v = m < history.length ? history[m] : 0;
+
+                int j = i;
+
+                for ( ; j > 0 && p[j - 1] < v ; j--) {
+                    p[j] = p[j - 1];
+                    mosse.set(j, mosse.get(j - 1));
+                }
+
+                p[j] = v;
+                mosse.set(j, m);
+            }
+
+            return mosse;
+        }
+
+        /**Esegue in g la mossa con il codice dato*/
+        void muovi(int m) {
+            if (compatto)
+                g.move(m);
+            else
+                g.move(mosseCodici.get(m));
+        }
+
+        /**I valori di vittoria e sconfitta dipendono dalla distanza dalla radice, nella
+           tabella sono memorizzati come distanza dalla situazione*/
+        int inTabella(int v, int ply) {
+            return v > MAX_EVAL ? v + ply : v < -MAX_EVAL ? v - ply : v;
+        }
+
+        int daTabella(int v, int ply) {
+            return v > MAX_EVAL ? v - ply : v < -MAX_EVAL ? v + ply : v;
+        }
+
+        int[] killer(int ply) {
+            while (killer.size() <= ply)
+                killer.add(new int[] {-1, -1});
+
+            return killer.get(ply);
+        }
+
+        /**Ritorna true se la ricerca è stata terminata perché il thread che
+           l'ha iniziata è stato interrotto*/
+        boolean interrotta() {
+            return chiamante.isInterrupted();
+        }
+    }
+}
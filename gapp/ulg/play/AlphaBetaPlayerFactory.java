@@ -0,0 +1,170 @@
+package gapp.ulg.play;
+
+import gapp.ulg.game.GameFactory;
+import gapp.ulg.game.Param;
+import gapp.ulg.game.PlayerFactory;
+import gapp.ulg.game.board.GameRuler;
+import gapp.ulg.game.board.Player;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Supplier;
+
+/** Una AlphaBetaPlayerFactory è una fabbrica di {@link AlphaBetaPlayer}.
+ * @param <P>  tipo del modello dei pezzi */
+public class AlphaBetaPlayerFactory<P> implements PlayerFactory<Player<P>,GameRuler<P>> {
+
+    public AlphaBetaPlayerFactory() {
+
+        nome1 = "Depth";
+        prompt1 = "Maximum search depth";
+        values1 = new ArrayList<>();
+        values1.addAll(Arrays.asList(1,2,3,4,5,6,8,10,12,16));
+        valoreAttuale1 = 4;
+
+        nome2 = "Execution";
+        prompt2 = "Threaded execution";
+        values2 = new ArrayList<>();
+        values2.addAll(Arrays.asList("Sequential","Parallel"));
+        valoreAttuale2 = "Sequential";
+
+    }
+
+    private String nome1;
+    private String prompt1;
+    private List<Integer> values1;
+    private Integer valoreAttuale1;
+
+    private String nome2;
+    private String prompt2;
+    private List<String> values2;
+    private String valoreAttuale2;
+
+    @Override
+    public String name() { return "Alpha-Beta Player"; }
+
+    @Override
+    public void setDir(Path dir) { }
+
+    /** Ritorna una lista con i seguenti due parametri:
+     * <pre>
+     * Primo parametro
+     *     - name: "Depth"
+     *     - prompt: "Maximum search depth"
+     *     - values: [1,2,3,4,5,6,8,10,12,16]
+     *     - default: 4
+     * Secondo parametro
+     *     - name: "Execution"
+     *     - prompt: "Threaded execution"
+     *     - values: ["Sequential","Parallel"]
+     *     - default: "Sequential"
+     * </pre>
+     * La profondità è un limite massimo, se il gioco ha un limite di tempo per
+     * mossa la ricerca si ferma prima quando il tempo sta per scadere.
+     * @return la lista con i due parametri */
+    @Override
+    public List<Param<?>> params() {
+        List<Param<?>> listaParametri = new ArrayList<>();
+
+        Param<Integer> primoP = new Param<Integer>() {
+            @Override
+            public String name() {
+                return nome1;
+            }
+
+            @Override
+            public String prompt() {
+                return prompt1;
+            }
+
+            @Override
+            public List<Integer> values() {
+                return Collections.unmodifiableList(values1);
+            }
+
+            @Override
+            public void set(Object v) {
+
+                if (values1.contains(v))
+                    valoreAttuale1 = (Integer) v;
+                else
+                    throw new IllegalArgumentException();
+
+            }
+
+            @Override
+            public Integer get() {
+                return valoreAttuale1;
+            }
+        };
+        Param<String> secondoP = new Param<String>() {
+            @Override
+            public String name() {
+                return nome2;
+            }
+
+            @Override
+            public String prompt() {
+                return prompt2;
+            }
+
+            @Override
+            public List<String> values() {
+                return Collections.unmodifiableList(values2);
+            }
+
+            @Override
+            public void set(Object v) {
+                if (values2.contains(v))
+                    valoreAttuale2 = (String) v;
+                else
+                    throw new IllegalArgumentException();
+            }
+
+            @Override
+            public String get() {
+                return valoreAttuale2;
+            }
+        };
+
+        listaParametri.add(primoP);
+        listaParametri.add(secondoP);
+
+        return Collections.unmodifiableList(listaParametri);
+    }
+
+    /** Ritorna {@link Play#YES} se il gioco può essere giocato da due giocatori,
+     * altrimenti {@link Play#NO}. */
+    @Override
+    public Play canPlay(GameFactory<? extends GameRuler<P>> gF) {
+
+        Objects.requireNonNull(gF);
+
+        if (gF.minPlayers() <= 2 && gF.maxPlayers() >= 2)
+            return Play.YES;
+
+        return Play.NO;
+    }
+
+    @Override
+    public String tryCompute(GameFactory<? extends GameRuler<P>> gF, boolean parallel,
+                             Supplier<Boolean> interrupt) {
+
+        Objects.requireNonNull(gF);
+        return null;
+    }
+
+    /** Ritorna un {@link AlphaBetaPlayer} che rispetta i parametri impostati
+     * {@link AlphaBetaPlayerFactory#params()} e il nome specificato. */
+    @Override
+    public Player<P> newPlayer(GameFactory<? extends GameRuler<P>> gF, String name) {
+
+        Objects.requireNonNull(gF);
+        Objects.requireNonNull(name);
+
+        if (canPlay(gF) != Play.YES)
+            throw new IllegalStateException();
+
+        return new AlphaBetaPlayer<>(name, valoreAttuale1, valoreAttuale2.equals("Parallel"));
+    }
+}
@@ -0,0 +1,89 @@
+package gapp.ulg.play;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Il file in cui il calcolo di una strategia ottimale salva periodicamente il
+ * proprio stato, per riprendere il calcolo dopo un'interruzione o un riavvio. Il
+ * file inizia con un numero che identifica il tipo di calcolo che lo ha scritto
+ * ({@link RisolutoreIterativo} o {@link RisolutoreParallelo}), il resto dipende dal calcolo.
+ * Il file è sostituito atomicamente: prima è scritto un file temporaneo nella
+ * stessa directory e poi è rinominato, quindi un'interruzione durante il salvataggio
+ * lascia il checkpoint precedente. */
+class Checkpoint {
+    /** Ogni quanti millisecondi al più è salvato lo stato */
+    static final long INTERVALLO = 60_000;
+
+    /** Scrive lo stato di un calcolo */
+    interface Scrittura {
+        void scrivi(DataOutputStream out) throws IOException;
+    }
+
+    /** Crea il checkpoint nel file dato.
+     * @param file  il file del checkpoint
+     * @param tipo  il numero che identifica il calcolo */
+    Checkpoint(Path file, int tipo) {
+        this.file = file;
+        this.tipo = tipo;
+        ultimo = new AtomicLong(System.currentTimeMillis());
+    }
+
+    /** Ritorna lo stream per leggere lo stato salvato, posizionato dopo il tipo, o
+     * null se il file non c'è o è stato scritto da un altro calcolo.
+     * @return lo stream per leggere lo stato salvato o null */
+    DataInputStream apri() {
+        if (!Files.isRegularFile(file))
+            return null;
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+
+            if (in.readInt() == tipo)
+                return in;
+
+            in.close();
+        } catch (IOException e) {}
+
+        return null;
+    }
+
+    /** Ritorna true se dall'ultimo salvataggio è passato almeno
+     * {@link Checkpoint#INTERVALLO}. Se più thread lo invocano contemporaneamente
+     * solamente uno riceve true, così lo stato è salvato una volta sola.
+     * @return true se è ora di salvare */
+    boolean scaduto() {
+        long adesso = System.currentTimeMillis(), u = ultimo.get();
+        return adesso - u >= INTERVALLO && ultimo.compareAndSet(u, adesso);
+    }
+
+    /** Salva lo stato scritto da {@code w}. Un errore di scrittura non interrompe il
+     * calcolo: il checkpoint precedente resta valido.
+     * @param w  scrive lo stato */
+    synchronized void salva(Scrittura w) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(tipo);
+                w.scrivi(out);
+            }
+
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try { Files.deleteIfExists(tmp); } catch (IOException e2) {}
+        }
+
+        ultimo.set(System.currentTimeMillis());
+    }
+
+    /** Cancella il checkpoint, quando il calcolo è terminato. */
+    void cancella() {
+        try { Files.deleteIfExists(file); } catch (IOException e) {}
+    }
+
+
+    private final Path file;
+    private final int tipo;
+    private final AtomicLong ultimo;
+}
@@ -6,6 +6,9 @@ import gapp.ulg.games.MNKgame;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 
 /** <b>IMPLEMENTARE I METODI SECONDO LE SPECIFICHE DATE NEI JAVADOC. Non modificare
@@ -31,6 +34,22 @@ import java.util.concurrent.*;
  * compiere è calcolato così <i>R = ceil(RPM/M)</i>, cioè la parte intera superiore
  * della divisione decimale del numero di rollout per mossa <i>RPM</i> diviso il
  * numero <i>M</i> di mosse possibili (è sempre esclusa {@link Move.Kind#RESIGN}).
+ * <br>
+ * Se è creato con una memoria per l'albero maggiore di 0, invece dei rollout
+ * divisi in parti uguali tra le mosse usa una vera ricerca UCT: costruisce un
+ * albero (in un pool di nodi che occupa al più la memoria data) scegliendo con UCB1
+ * quali situazioni esplorare, con al più <i>RPM</i> playout per mossa ed entro il
+ * tempo per la mossa, e sceglie la mossa più visitata. L'albero è riusato nelle
+ * mosse successive spostando la radice dopo {@link MCTSPlayer#moved(int, Move)}.
+ * <br>
+ * Senza albero, se il gioco ha un limite di tempo per mossa la ricerca è
+ * <i>anytime</i>: i rollouts sono fatti a turno sulle mosse e si fermano (anche nel
+ * mezzo di un rollout) all'80% del tempo, scegliendo la mossa con il punteggio
+ * medio migliore tra quelle provate fino a quel momento. In parallelo i rollouts
+ * sono divisi tra i task del pool ForkJoin dato da
+ * {@link Player#threads(int, ForkJoinPool, ExecutorService)}, senza pool sono fatti
+ * nel thread di getMove. Il numero di playout completati è dato da
+ * {@link MCTSPlayer#playouts()}.
  * @param <P>  tipo del modello dei pezzi */
 public class MCTSPlayer<P> implements Player<P> {
     /** Crea un {@code MCTSPlayer} con un limite dato sul numero di rollouts per
@@ -42,6 +61,21 @@ public class MCTSPlayer<P> implements Player<P> {
      *                  di sfruttare il parallelismo della macchina
      * @throws NullPointerException se {@code name} è null */
     public MCTSPlayer(String name, int rpm, boolean parallel) {
+        this(name, rpm, parallel, 0);
+    }
+
+    /** Crea un {@code MCTSPlayer} con un limite dato sul numero di rollouts per
+     * mossa e, se {@code treeMB} è maggiore di 0, in modalità UCT con un albero che
+     * occupa al più circa {@code treeMB} megabyte.
+     *
+     * @param name  il nome del giocatore
+     * @param rpm   limite sul numero di rollouts per mossa, se < 1 è inteso 1
+     * @param parallel  se true la ricerca della mossa da fare è eseguita cercando
+     *                  di sfruttare il parallelismo della macchina
+     * @param treeMB  memoria massima in megabyte per l'albero UCT, se <= 0 usa i
+     *                rollouts divisi tra le mosse (senza albero)
+     * @throws NullPointerException se {@code name} è null */
+    public MCTSPlayer(String name, int rpm, boolean parallel, int treeMB) {
 
         Objects.requireNonNull(name);
 
@@ -50,6 +84,8 @@ public class MCTSPlayer<P> implements Player<P> {
         rPM = rpm;
         seqOrConc = parallel;
         maxTh = Runtime.getRuntime().availableProcessors();
+        memoriaAlbero = treeMB;
+        albero = null;
 
     }
 
@@ -60,14 +96,31 @@ public class MCTSPlayer<P> implements Player<P> {
     private int maxTh;
     private ForkJoinPool fjp;
     private ExecutorService bgExec;
+    private int memoriaAlbero;
+    private AlberoUCT<P> albero;
+    private volatile int playoutFatti;
+    private volatile boolean senzaPlayout;
 
     @Override
     public String name() { return nome; }
 
+    /** Ritorna il numero di playout completati durante l'ultima invocazione di
+     * {@link MCTSPlayer#getMove()} fatta in modalità UCT o anytime (cioè per un
+     * gioco con un limite di tempo per mossa), 0 se non ce ne sono state.
+     * @return il numero di playout completati nell'ultima ricerca */
+    public int playouts() { return playoutFatti; }
+
     @Override
     public void setGame(GameRuler<P> g) {
         Objects.requireNonNull(g);
         partita = g;
+
+        //Il nuovo gioco potrebbe avere un Playout;
+        senzaPlayout = false;
+
+        //L'albero di una partita precedente non serve più;
+        if (albero != null)
+            albero.svuota();
     }
 
     @Override
@@ -80,13 +133,29 @@ public class MCTSPlayer<P> implements Player<P> {
         if (i <= 0 || i > partita.players().size() || !partita.isValid(m))
             throw new IllegalArgumentException();
 
-        if (partita.isPlaying(i))
+        if (partita.isPlaying(i)) {
+
+            //Sposto la radice dell'albero nella nuova situazione, la mossa è codificata prima di farla;
+            if (albero != null)
+                albero.muovi(partita, m);
+
             partita.move(m);
+        }
 
     }
 
     @Override
     public Move<P> getMove() {
+
+        if (memoriaAlbero > 0)
+            return getMoveUCT();
+
+        //Con un limite di tempo la ricerca è anytime, così la mossa arriva sempre in tempo;
+        long tempoMossa = partita != null && partita.result() == -1 ? partita.mechanics().time : -1;
+
+        if (tempoMossa > 0)
+            return getMoveAnytime(tempoMossa);
+
         Map<Move<P>, GameRuler.Situation<P>> mappona;
         Map<Pos,P> mappaAttuale = new HashMap<>();
         GameRuler.Situation<P> situazioneAttuale;
@@ -94,7 +163,9 @@ public class MCTSPlayer<P> implements Player<P> {
         Move<P> mossa = null;
 
         System.out.println("maxth mcts " + maxTh);
-        final ExecutorService[] exec = {maxTh != 0 ? Executors.newFixedThreadPool(maxTh) : null};
+        //Il pool fornito da threads, se c'è, altrimenti un pool creato solo per questa mossa;
+        final boolean poolProprio = seqOrConc && fjp == null && maxTh != 0;
+        final ExecutorService[] exec = {poolProprio ? Executors.newFixedThreadPool(maxTh) : seqOrConc ? fjp : null};
 
         System.out.println(seqOrConc);
 
@@ -128,7 +199,8 @@ public class MCTSPlayer<P> implements Player<P> {
                         for (Future<Map<Move<P>, Integer>> f3 : futures)
                             f3.cancel(true);
 
-                        exec[0].shutdownNow();
+                        if (poolProprio)
+                            exec[0].shutdownNow();
                     }
 
                 }
@@ -248,13 +320,16 @@ public class MCTSPlayer<P> implements Player<P> {
                     for (Future<Map<Move<P>, Integer>> f2 : futures)
                         f2.cancel(true);
 
-                    exec[0].shutdownNow();
+                    if (poolProprio)
+                        exec[0].shutdownNow();
+
                     return mossa;
                 }
 
             }
 
-            exec[0].shutdownNow();
+            if (poolProprio)
+                exec[0].shutdownNow();
         }
 
         int a = -1_000_000;
@@ -298,10 +373,216 @@ public class MCTSPlayer<P> implements Player<P> {
         this.bgExec = bgExec;
     }
 
+    /**La ricerca UCT: al più rPM playout, entro l'80% del tempo per la mossa*/
+    private Move<P> getMoveUCT() {
+
+        if (partita == null || partita.result() != -1 || !partita.isPlaying(partita.turn()))
+            throw new IllegalStateException();
+
+        if (albero == null)
+            albero = new AlberoUCT<>(memoriaAlbero);
+
+        long tempo = partita.mechanics().time;
+        long scadenza = tempo > 0 ? System.nanoTime() + tempo * 800_000L : Long.MAX_VALUE;
+
+        //In parallelo i task girano nel pool fornito da threads, senza creare thread;
+        playoutFatti = albero.cerca(partita.copy(), Math.max(1, rPM), scadenza, new Random(), seqOrConc ? fjp : null);
+
+        if (Thread.currentThread().isInterrupted())
+            return null;
+
+        Move<P> mossa = albero.migliore(partita);
+
+        //Nessuna iterazione completata, una mossa qualsiasi (non l'abbandono, se possibile);
+        if (mossa == null)
+            for (Move<P> m : partita.validMoves())
+                if (mossa == null || mossa.kind == Move.Kind.RESIGN)
+                    mossa = m;
+
+        return mossa;
+    }
+
+    /**La ricerca anytime: i rollout sono fatti a turno sulle mosse (come se fossero
+       divisi in parti uguali) finché non sono ceil(rPM/M) per mossa o non arriva la
+       scadenza, all'80% del tempo per la mossa, che è controllata anche durante i
+       rollout. Ritorna la mossa con il punteggio medio migliore tra quelle provate*/
+    private Move<P> getMoveAnytime(long tempo) {
+
+        if (partita == null || partita.result() != -1 || !partita.isPlaying(partita.turn()))
+            throw new IllegalStateException();
+
+        long scadenza = System.nanoTime() + tempo * 800_000L;
+        int turnoMCTS = partita.turn();
+
+        //Le mosse (escluso l'abbandono) e le partite dopo ognuna di esse;
+        List<Move<P>> mosse = new ArrayList<>();
+        List<GameRuler<P>> dopo = new ArrayList<>();
+
+        for (Move<P> m : partita.validMoves()) {
+            if (m.kind == Move.Kind.RESIGN) continue;
+
+            GameRuler<P> copia = partita.copy();
+            copia.move(m);
+            mosse.add(m);
+            dopo.add(copia);
+        }
+
+        if (mosse.isEmpty())
+            return new Move<>(Move.Kind.RESIGN);
+
+        int numeroDiRollout = Math.max(1, (rPM + mosse.size() - 1) / mosse.size());
+        AtomicInteger prossimo = new AtomicInteger(0);
+        AtomicIntegerArray punteggi = new AtomicIntegerArray(mosse.size()), fatti = new AtomicIntegerArray(mosse.size());
+
+        //Ferma tutti i task quando il thread che cerca la mossa è interrotto;
+        AtomicBoolean fermati = new AtomicBoolean(false);
+        Runnable lavoro = () -> lavoraAnytime(dopo, numeroDiRollout * mosse.size(), turnoMCTS, scadenza,
+                prossimo, punteggi, fatti, fermati);
+
+        //In parallelo gli altri task girano nel pool fornito da threads, senza creare thread (senza pool è sequenziale);
+        int numTask = seqOrConc && fjp != null ? fjp.getParallelism() : 1;
+        List<Future<?>> futures = new ArrayList<>();
+        boolean interrotto = false;
+
+        try {
+            for (int t = 1 ; t < numTask ; t++)
+                futures.add(fjp.submit(lavoro));
+
+            lavoro.run();
+        } finally {
+            if (Thread.currentThread().isInterrupted())
+                fermati.set(true);
+
+            /*Aspetto tutti i task prima di ritornare (cancel non interrompe quelli del
+              ForkJoinPool), anche se nel frattempo il thread è interrotto*/
+            for (Future<?> f : futures)
+                while (true) {
+                    try {
+                        f.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrotto = true;
+                        fermati.set(true);
+                    } catch (ExecutionException | CancellationException e) {
+                        break;
+                    }
+                }
+
+            if (interrotto)
+                Thread.currentThread().interrupt();
+        }
+
+        if (Thread.currentThread().isInterrupted())
+            return null;
+
+        //La mossa con la media migliore (una mossa mai provata vale meno di tutte le altre);
+        Move<P> mossa = mosse.get(0);
+        double migliore = Double.NEGATIVE_INFINITY;
+        int totale = 0;
+
+        for (int i = 0 ; i < mosse.size() ; i++) {
+            totale += fatti.get(i);
+
+            if (fatti.get(i) > 0 && (double) punteggi.get(i) / fatti.get(i) > migliore) {
+                migliore = (double) punteggi.get(i) / fatti.get(i);
+                mossa = mosse.get(i);
+            }
+        }
+
+        playoutFatti = totale;
+        return mossa;
+    }
+
+    /**Il lavoro di un task della ricerca anytime: prende il prossimo rollout da fare
+       (il k-esimo è dopo la mossa k modulo il numero di mosse) finché non sono finiti,
+       non arriva la scadenza, il thread è interrotto o i task sono fermati*/
+    private void lavoraAnytime(List<GameRuler<P>> dopo, int totale, int turnoMCTS, long scadenza,
+                               AtomicInteger prossimo, AtomicIntegerArray punteggi, AtomicIntegerArray fatti,
+                               AtomicBoolean fermati) {
+        Random rnd = ThreadLocalRandom.current();
+
+        //I Playout non sono thread-safe, quindi ogni task ha i suoi;
+        Playout[] giocate = new Playout[dopo.size()];
+        int i;
+
+        while (System.nanoTime() < scadenza && !Thread.currentThread().isInterrupted() && !fermati.get()
+                && (i = prossimo.getAndIncrement()) < totale) {
+            int k = i % dopo.size();
+            int risultato;
+
+            if (giocate[k] == null && !senzaPlayout)
+                try {
+                    giocate[k] = dopo.get(k).playout();
+                } catch (UnsupportedOperationException e) {
+                    senzaPlayout = true;
+                }
+
+            risultato = giocate[k] != null ? rollout(giocate[k], rnd, scadenza, fermati)
+                    : rollout(dopo.get(k), rnd, scadenza, fermati);
+
+            //Il tempo è scaduto (o i task sono stati fermati) durante il rollout;
+            if (risultato == -2)
+                break;
+
+            fatti.incrementAndGet(k);
+
+            if (risultato == turnoMCTS)
+                punteggi.incrementAndGet(k);
+
+            else if (risultato != 0)
+                punteggi.decrementAndGet(k);
+        }
+    }
+
+    /**Un rollout con il Playout, controllando la scadenza e lo stop ogni 32 mosse;
+       ritorna l'esito o -2 se il tempo è scaduto prima della fine*/
+    private static int rollout(Playout giocata, Random rnd, long scadenza, AtomicBoolean fermati) {
+        giocata.reset();
+
+        for (int passi = 1 ; giocata.result() == -1 ; passi++) {
+            if ((passi & 31) == 0 && (System.nanoTime() >= scadenza || fermati.get()))
+                return -2;
+
+            giocata.apply(giocata.randomMove(rnd));
+        }
+
+        return giocata.result();
+    }
+
+    /**Un rollout su una copia della partita, per i giochi senza Playout, controllando
+       la scadenza e lo stop a ogni mossa; ritorna l'esito o -2 se il tempo è scaduto
+       prima della fine*/
+    private static <P> int rollout(GameRuler<P> partita, Random rnd, long scadenza, AtomicBoolean fermati) {
+        GameRuler<P> copia = partita.copy();
+        List<Move<P>> mosse = new ArrayList<>();
+
+        while (copia.result() == -1) {
+            if (System.nanoTime() >= scadenza || fermati.get())
+                return -2;
+
+            mosse.clear();
+
+            for (Move<P> m : copia.validMoves())
+                if (m.kind != Move.Kind.RESIGN) mosse.add(m);
+
+            copia.move(mosse.isEmpty() ? new Move<>(Move.Kind.RESIGN) : mosse.get(rnd.nextInt(mosse.size())));
+        }
+
+        return copia.result();
+    }
+
     public Map<Move<P>, Integer> mnkSequential(GameRuler.Situation<P> sit, Move<P> move,
                                                int numeroDiRollout, int turnoMCTS, boolean[] tempoScaduto) {
         Map<Move<P>, Integer> mappaDaRitornare = new HashMap<>();
 
+        //Se il gioco ha un Playout i rollout non creano oggetti per le mosse;
+        Integer punteggio = rolloutPlayout(move, numeroDiRollout, turnoMCTS, tempoScaduto);
+
+        if (punteggio != null) {
+            mappaDaRitornare.put(move, punteggio);
+            return mappaDaRitornare;
+        }
+
         //Creo una partita per questa mossa;
         MNKgame giocata2 = new MNKgame(((MNKgame) partita).tempo, partita.getBoard().width(),
                 partita.getBoard().height(), ((MNKgame) partita).lunghezzaLinea,
@@ -361,6 +642,14 @@ public class MCTSPlayer<P> implements Player<P> {
 
         Map<Move<P>, Integer> mappaDaRitornare = new HashMap<>();
 
+        //Se il gioco ha un Playout i rollout non creano oggetti per le mosse;
+        Integer punteggio = rolloutPlayout(move, numeroDiRollout, turnoMCTS, tempoScaduto);
+
+        if (punteggio != null) {
+            mappaDaRitornare.put(move, punteggio);
+            return mappaDaRitornare;
+        }
+
         //Creo una partita per questa mossa;
         GameRuler<P> giocata2 = partita.copy();
 
@@ -391,6 +680,38 @@ public class MCTSPlayer<P> implements Player<P> {
         return mappaDaRitornare;
     }
 
+    /**I rollout fatti con il Playout del gioco dopo la mossa data, ritorna il
+       punteggio della mossa oppure null se il gioco non ha un Playout*/
+    private Integer rolloutPlayout(Move<P> move, int numeroDiRollout, int turnoMCTS, boolean[] tempoScaduto) {
+        Playout giocata;
+
+        try {
+            GameRuler<P> copia = partita.copy();
+            copia.move(move);
+            giocata = copia.playout();
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+
+        Random rnd = ThreadLocalRandom.current();
+        int valoreDiVittoria = 0;
+
+        for (int i = 0 ; i < numeroDiRollout ; i++) {
+            int risultato = giocata.rollout(rnd);
+
+            if (risultato == turnoMCTS)
+                valoreDiVittoria++;
+
+            else if (risultato != 0)
+                valoreDiVittoria--;
+
+            if (tempoScaduto[0])
+                break;
+        }
+
+        return valoreDiVittoria;
+    }
+
     public Map<Move<P>, Integer> concurrentMCTS(GameRuler.Situation<P> sit, Move<P> move,
                                                 int numeroDiRollout, int turnoMCTS, boolean[] tempoScaduto) {
 
@@ -22,7 +22,7 @@ public class MCTSPlayerFactory<P> implements PlayerFactory<Player<P>,GameRuler<P
         nome1 = "Rollouts";
         prompt1 = "Number of rollouts per move";
         values1 = new ArrayList<>();
-        values1.addAll(Arrays.asList(1,10,50,100,200,500,1000));
+        values1.addAll(Arrays.asList(1,10,50,100,200,500,1000,5000,20000));
         default1 = 50;
         valoreAttuale1 = 50;
 
@@ -33,6 +33,13 @@ public class MCTSPlayerFactory<P> implements PlayerFactory<Player<P>,GameRuler<P
         default2 = "Sequential";
         valoreAttuale2 = "Sequential";
 
+        nome3 = "Tree memory";
+        prompt3 = "UCT tree memory in MB (0 = flat rollouts)";
+        values3 = new ArrayList<>();
+        values3.addAll(Arrays.asList(0,16,64,256));
+        default3 = 0;
+        valoreAttuale3 = 0;
+
     }
 
     private String nome1;
@@ -47,26 +54,39 @@ public class MCTSPlayerFactory<P> implements PlayerFactory<Player<P>,GameRuler<P
     private String default2;
     private String valoreAttuale2;
 
+    private String nome3;
+    private String prompt3;
+    private List<Integer> values3;
+    private Integer default3;
+    private Integer valoreAttuale3;
+
     @Override
     public String name() { return "Monte-Carlo Tree Search Player"; }
 
     @Override
     public void setDir(Path dir) { }
 
-    /** Ritorna una lista con i seguenti due parametri:
+    /** Ritorna una lista con i seguenti tre parametri:
      * <pre>
      * Primo parametro
      *     - name: "Rollouts"
      *     - prompt: "Number of rollouts per move"
-     *     - values: [1,10,50,100,200,500,1000]
+     *     - values: [1,10,50,100,200,500,1000,5000,20000]
      *     - default: 50
      * Secondo parametro
      *     - name: "Execution"
      *     - prompt: "Threaded execution"
      *     - values: ["Sequential","Parallel"]
      *     - default: "Sequential"
+     * Terzo parametro
+     *     - name: "Tree memory"
+     *     - prompt: "UCT tree memory in MB (0 = flat rollouts)"
+     *     - values: [0,16,64,256]
+     *     - default: 0
      * </pre>
-     * @return la lista con i due parametri */
+     * Con un valore di "Tree memory" maggiore di 0 il giocatore usa la ricerca UCT
+     * (vedi {@link MCTSPlayer}).
+     * @return la lista con i tre parametri */
     @Override
     public List<Param<?>> params() {
         List<Param<?>> listaParametri = new ArrayList<>();
@@ -132,8 +152,39 @@ public class MCTSPlayerFactory<P> implements PlayerFactory<Player<P>,GameRuler<P
             }
         };
 
+        Param<Integer> terzoP = new Param<Integer>() {
+            @Override
+            public String name() {
+                return nome3;
+            }
+
+            @Override
+            public String prompt() {
+                return prompt3;
+            }
+
+            @Override
+            public List<Integer> values() {
+                return Collections.unmodifiableList(values3);
+            }
+
+            @Override
+            public void set(Object v) {
+                if (values3.contains(v))
+                    valoreAttuale3 = (Integer) v;
+                else
+                    throw new IllegalArgumentException();
+            }
+
+            @Override
+            public Integer get() {
+                return valoreAttuale3;
+            }
+        };
+
         listaParametri.add(primoP);
         listaParametri.add(secondoP);
+        listaParametri.add(terzoP);
 
         return Collections.unmodifiableList(listaParametri);
     }
@@ -175,6 +226,6 @@ public class MCTSPlayerFactory<P> implements PlayerFactory<Player<P>,GameRuler<P
                 break;
         }
 
-        return new MCTSPlayer<>(name, valoreAttuale1, parallel);
+        return new MCTSPlayer<>(name, valoreAttuale1, parallel, valoreAttuale3);
     }
 }
@@ -15,6 +15,7 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -146,7 +147,14 @@ public class OptimalPlayerFactory<P> implements PlayerFactory<Player<P>,GameRule
      * </pre>
      * Il controllo sull'esistenza di un file con la strategia è effettuato solamente
      * in base al nome (senza tentare di leggere il file, perché potrebbe richiedere
-     * troppo tempo). */
+     * troppo tempo). I file scritti da
+     * {@link OptimalPlayerFactory#tryCompute(GameFactory, boolean, Supplier)} sono
+     * in un formato compatto (chiavi ordinate di lunghezza fissa ed esiti di 2 bit)
+     * che è mappato in memoria, quindi la strategia non è caricata nello heap; i
+     * file nel vecchio formato (una mappa serializzata) sono ancora letti. Un
+     * checkpoint di un calcolo interrotto ({@code strategy_<nome del gioco>.ckp})
+     * non è una strategia, quindi per quel gioco ritorna {@link Play#TRY_COMPUTE} e
+     * il calcolo riprenderà dal checkpoint. */
     @Override
     public Play canPlay(GameFactory<? extends GameRuler<P>> gF) {
         String nomeGioco;
@@ -182,8 +190,10 @@ public class OptimalPlayerFactory<P> implements PlayerFactory<Player<P>,GameRule
             try {
                 List<String> nomiFile = new ArrayList<>(), nomiFile2 = new ArrayList<>(), nomiFile3 = new ArrayList<>();
 
+                //Solamente le strategie, non i checkpoint dei calcoli interrotti;
                 List<File> fileNellaCartella = Files.walk(dirDelleStrategie)
                         .filter(Files::isRegularFile)
+                        .filter(f -> f.getFileName().toString().endsWith(".dat"))
                         .map(Path::toFile)
                         .collect(Collectors.toList());
 
@@ -202,6 +212,17 @@ public class OptimalPlayerFactory<P> implements PlayerFactory<Player<P>,GameRule
 
 
                 if (nomiFile3.contains(nomeGioco)) {
+                    Path file = dirDelleStrategie.resolve("strategy_" + nomeGioco + ".dat");
+
+                    //Il formato compatto è mappato in memoria, senza leggere la tabella;
+                    if (StrategiaMappata.compatto(file)) {
+
+                        try {
+                            strat = new StrategiaMappata<>(gF, file);
+                        } catch (IOException e) { loadError = true; }
+
+                        return Play.YES;
+                    }
 
                     FileInputStream fileIn = new FileInputStream(dirDelleStrategie.toString() +
                             "/strategy_" + nomeGioco + ".dat");
@@ -242,7 +263,11 @@ public class OptimalPlayerFactory<P> implements PlayerFactory<Player<P>,GameRule
      * ottenuto dalla {@link GameFactory} specificata. Se il calcolo ha successo e
      * una directory ({@link OptimalPlayerFactory#setDir(Path)} ) è impostata, tenta
      * di salvare il file con la strategia calcolata, altrimenti la mantiene in
-     * memoria. */
+     * memoria. Con la directory impostata il calcolo salva periodicamente il proprio
+     * stato nel file {@code strategy_<nome del gioco>.ckp} della directory, anche
+     * quando è interrotto, e un calcolo successivo per lo stesso gioco (con la stessa
+     * modalità, sequenziale o parallela) riprende da lì; il file è cancellato quando
+     * il calcolo termina. */
     @Override
     public String tryCompute(GameFactory<? extends GameRuler<P>> gF, boolean parallel,
                              Supplier<Boolean> interrupt) {
@@ -274,14 +299,18 @@ public class OptimalPlayerFactory<P> implements PlayerFactory<Player<P>,GameRule
         else if (canPlay(gF).equals(Play.TRY_COMPUTE)) {
 
             try {
-                strat = new StrategiaOttimale<>(gF, parallel, interrupt);
+                //Se la directory è impostata il calcolo riprende dall'eventuale checkpoint;
+                Path checkpoint = dirDelleStrategie == null ? null :
+                        dirDelleStrategie.resolve("strategy_" + gF.newGame().name() + ".ckp");
+
+                strat = new StrategiaOttimale<>(gF, parallel, interrupt, checkpoint);
             } catch (OutOfMemoryError e) {
                 generateError = true;
                 return "OUT OF MEMORY";
             } catch (StackOverflowError e) {
                 generateError = true;
                 return "STACK OVERFLOW";
-            } catch (NullPointerException e) {
+            } catch (CancellationException e) {
                 generateError = true;
                 return "INTERRUPTED";
             }
@@ -291,20 +320,9 @@ public class OptimalPlayerFactory<P> implements PlayerFactory<Player<P>,GameRule
 
                 try {
 
-                    FileOutputStream fileOut = new FileOutputStream(dirDelleStrategie.toString() +
-                            "/strategy_" + nomeGioco + ".dat");
-
-                    ObjectOutputStream out = new ObjectOutputStream(fileOut);
-
-                    Map<Probe.EncS<P>, Integer> onlyStrategy = ((StrategiaOttimale) strat).strategia;
-                    Map<byte[], Integer> onlyByteStrategy = new HashMap<>();
-
-                    for (Map.Entry<Probe.EncS<P>, Integer> e : onlyStrategy.entrySet())
-                        onlyByteStrategy.put(e.getKey().codedSit, e.getValue());
-
-                    out.writeObject(onlyByteStrategy);
-                    out.close();
-                    fileOut.close();
+                    //Nel formato compatto, che canPlay mappa in memoria;
+                    StrategiaMappata.scrivi(((StrategiaOttimale<P>) strat).strategia,
+                            dirDelleStrategie.resolve("strategy_" + nomeGioco + ".dat"));
 
                 } catch (IOException i) {}
             }
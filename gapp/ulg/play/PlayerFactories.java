@@ -63,6 +63,7 @@ public class PlayerFactories {
         boardFactories.put("Random Player",RandPlayerFactory.class);
         boardFactories.put("Monte-Carlo Tree Search Player", gapp.ulg.play.MCTSPlayerFactory.class);
         boardFactories.put("Optimal Player", OptimalPlayerFactory.class);
+        boardFactories.put("Alpha-Beta Player", AlphaBetaPlayerFactory.class);
     }
 
 
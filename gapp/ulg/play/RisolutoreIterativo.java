@@ -0,0 +1,204 @@
+package gapp.ulg.play;
+
+import gapp.ulg.game.board.GameRuler.Mechanics;
+import gapp.ulg.game.board.GameRuler.Situation;
+import gapp.ulg.game.util.Probe;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
+
+/** Calcolo sequenziale della strategia ottimale con una visita in profondità che
+ * usa una pila esplicita invece della ricorsione, quindi senza rischio di
+ * {@link StackOverflowError} qualunque sia la profondità del gioco.
+ * <br>
+ * Le situazioni sono visitate nello stesso ordine della versione ricorsiva: una
+ * situazione terminale vale il suo turno (0 patta, -i vittoria del giocatore i) e
+ * le altre valgono il miglior valore delle prossime situazioni per il giocatore di
+ * turno. Appena una prossima situazione è vincente le altre non sono più guardate,
+ * quindi la tabella contiene i valori delle sole situazioni effettivamente valutate
+ * (molte meno di tutte quelle raggiungibili) e ogni situazione è valutata una sola
+ * volta.
+ * <br>
+ * Il calcolo è interrotto in modo cooperativo se il {@code Supplier} di interruzione
+ * ritorna true o se il thread è interrotto: i controlli sono fatti ogni
+ * {@link RisolutoreIterativo#CONTROLLO} situazioni e il metodo
+ * {@link RisolutoreIterativo#risolvi()} lancia {@link CancellationException}.
+ * <br>
+ * Se è dato un file di checkpoint i valori delle situazioni già valutate sono
+ * salvati al più ogni {@link Checkpoint#INTERVALLO} e quando il calcolo è
+ * interrotto; un nuovo calcolo con lo stesso file parte dalla tabella salvata,
+ * quindi non valuta di nuovo quelle situazioni.
+ * @param <P>  tipo del modello dei pezzi */
+class RisolutoreIterativo<P> {
+    /** Ogni quante situazioni è controllata l'interruzione */
+    static final int CONTROLLO = 1024;
+
+    /** Crea il risolutore per il gioco con la meccanica data.
+     * @param gM  la meccanica del gioco
+     * @param interrupt  se non è null e ritorna true il calcolo è interrotto
+     * @param checkpoint  il file in cui salvare lo stato del calcolo o null */
+    RisolutoreIterativo(Mechanics<P> gM, Supplier<Boolean> interrupt, Path checkpoint) {
+        meccanica = gM;
+        interruzione = interrupt;
+        this.checkpoint = checkpoint == null ? null : new Checkpoint(checkpoint, TIPO);
+    }
+
+    /** Calcola la strategia ottimale.
+     * @return la mappa dalle codifiche delle situazioni valutate ai loro valori (0
+     * patta, -i vittoria del giocatore i)
+     * @throws CancellationException se il calcolo è interrotto */
+    Map<Probe.EncS<P>, Integer> risolvi() {
+        if (checkpoint != null)
+            riprendi();
+
+        try {
+            visita();
+        } catch (CancellationException e) {
+            //Il lavoro fatto non va perso;
+            if (checkpoint != null)
+                checkpoint.salva(this::scrivi);
+
+            throw e;
+        }
+
+        if (checkpoint != null)
+            checkpoint.cancella();
+
+        return tabella;
+    }
+
+
+    /**Il tipo dei checkpoint scritti da questo calcolo*/
+    private static final int TIPO = 0x49544552;   // "ITER"
+
+    private final Mechanics<P> meccanica;
+    private final Supplier<Boolean> interruzione;
+    private final Checkpoint checkpoint;
+    /**I valori delle situazioni già valutate*/
+    private final Map<Probe.EncS<P>, Integer> tabella = new HashMap<>();
+    private long contatore;
+
+    /**Una situazione in corso di valutazione: le prossime situazioni ancora da
+       guardare e il miglior valore trovato finora*/
+    private class Nodo {
+        Nodo(Situation<P> s, Probe.EncS<P> cod) {
+            turno = s.turn;
+            this.cod = cod;
+            figli = meccanica.next.get(s).values().iterator();
+        }
+
+        /**Tiene conto del valore di una prossima situazione*/
+        void aggiungi(int v) {
+            if (v == -turno) vincente = true;
+            else if (v == 0) patta = true;
+            else altro = v;
+        }
+
+        /**Il valore, quando le prossime situazioni sono finite o una è vincente (-3 se
+           non ce ne sono, come nella versione ricorsiva)*/
+        int valore() { return vincente ? -turno : (patta ? 0 : altro); }
+
+        final int turno;
+        final Probe.EncS<P> cod;
+        final Iterator<Situation<P>> figli;
+        boolean vincente, patta;
+        int altro = -3;
+    }
+
+    /**Valuta la situazione iniziale e, dove serve, le situazioni raggiungibili*/
+    private void visita() {
+        Situation<P> start = meccanica.start;
+        Probe.EncS<P> codStart = new Probe.EncS<>(meccanica, start);
+
+        if (tabella.containsKey(codStart))
+            return;
+
+        if (start.turn <= 0) {
+            tabella.put(codStart, start.turn);
+            return;
+        }
+
+        Deque<Nodo> pila = new ArrayDeque<>();
+        pila.push(new Nodo(start, codStart));
+
+        while (!pila.isEmpty()) {
+            Nodo nodo = pila.peek();
+
+            //La situazione è valutata, il valore passa a quella che la precede;
+            if (nodo.vincente || !nodo.figli.hasNext()) {
+                int v = nodo.valore();
+                tabella.put(nodo.cod, v);
+                pila.pop();
+
+                if (!pila.isEmpty())
+                    pila.peek().aggiungi(v);
+
+                continue;
+            }
+
+            if (++contatore % CONTROLLO == 0)
+                controlla();
+
+            Situation<P> n = nodo.figli.next();
+            Probe.EncS<P> cod = new Probe.EncS<>(meccanica, n);
+            Integer v = tabella.get(cod);
+
+            if (v == null && n.turn <= 0) {
+                v = n.turn;
+                tabella.put(cod, v);
+            }
+
+            if (v != null)
+                nodo.aggiungi(v);
+            else
+                pila.push(new Nodo(n, cod));
+        }
+    }
+
+    /**Lancia CancellationException se il calcolo deve essere interrotto, altrimenti
+       salva lo stato se è ora di farlo*/
+    private void controlla() {
+        if (Thread.currentThread().isInterrupted() || (interruzione != null && interruzione.get()))
+            throw new CancellationException();
+
+        if (checkpoint != null && checkpoint.scaduto())
+            checkpoint.salva(this::scrivi);
+    }
+
+    /**Scrive i valori delle situazioni già valutate*/
+    private void scrivi(DataOutputStream out) throws IOException {
+        out.writeInt(tabella.size());
+
+        for (Map.Entry<Probe.EncS<P>, Integer> e : tabella.entrySet()) {
+            out.writeInt(e.getKey().codedSit.length);
+            out.write(e.getKey().codedSit);
+            out.writeByte(e.getValue());
+        }
+    }
+
+    /**Riprende la tabella salvata nel checkpoint, se c'è*/
+    private void riprendi() {
+        DataInputStream in = checkpoint.apri();
+
+        if (in == null)
+            return;
+
+        try (DataInputStream letto = in) {
+            int n = letto.readInt();
+
+            for (int i = 0 ; i < n ; i++) {
+                byte[] cod = new byte[letto.readInt()];
+                letto.readFully(cod);
+                tabella.put(new Probe.EncS<>(cod), (int) letto.readByte());
+            }
+        } catch (IOException e) {
+            //Checkpoint illeggibile, si ricomincia da capo;
+            tabella.clear();
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package gapp.ulg.play;
+
+import gapp.ulg.game.board.GameRuler.Mechanics;
+import gapp.ulg.game.board.GameRuler.Situation;
+import gapp.ulg.game.util.Probe;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/** Calcolo parallelo della strategia ottimale con il work-stealing di un
+ * {@link ForkJoinPool}. Solamente le situazioni fino alla profondità di taglio sono
+ * suddivise in task, quelle più profonde sono risolte dal thread che le raggiunge
+ * con una visita in profondità con una pila esplicita (come
+ * {@link RisolutoreIterativo}), così i task non sono troppo piccoli.
+ * <br>
+ * Il primo thread che raggiunge una situazione la prenota e la risolve, un thread
+ * che la trova prenotata aspetta il valore con {@link ForkJoinPool#managedBlock},
+ * così il pool può attivare un altro thread al suo posto, e nessuna situazione è
+ * risolta due volte. Le attese non possono formare un ciclo: mentre aspetta un
+ * task, un thread del pool esegue solamente quel task o task generati da esso,
+ * quindi le situazioni nella pila di un thread sono ognuna successiva (non
+ * necessariamente immediata) a quella sotto. Un thread aspetta sempre una
+ * prossima situazione di quella in cima alla sua pila e chi l'ha prenotata la ha
+ * nella sua pila, sotto la sua cima, quindi seguendo le attese le situazioni sono
+ * sempre più profonde e, dato che il gioco è aciclico, non si può tornare a un
+ * thread già incontrato. Appena una prossima situazione è vincente per il
+ * giocatore di turno le altre non sono più guardate e i task non ancora iniziati
+ * terminano subito, quindi come con la versione sequenziale ricorsiva la tabella
+ * contiene i valori delle sole situazioni effettivamente valutate.
+ * <br>
+ * Il calcolo è interrotto se il {@code Supplier} di interruzione ritorna true o se
+ * il thread che ha invocato {@link RisolutoreParallelo#risolvi()} è interrotto, e
+ * il metodo lancia {@link CancellationException}.
+ * <br>
+ * Se è dato un file di checkpoint i valori delle situazioni già risolte sono salvati
+ * al più ogni {@link Checkpoint#INTERVALLO} e quando il calcolo è interrotto; un
+ * nuovo calcolo con lo stesso file parte dalla tabella salvata, quindi non risolve
+ * di nuovo quelle situazioni.
+ * @param <P>  tipo del modello dei pezzi */
+class RisolutoreParallelo<P> {
+    /** La profondità di taglio di default, le situazioni più profonde sono risolte
+     * sequenzialmente */
+    static final int TAGLIO = 4;
+
+    /** Crea il risolutore per il gioco con la meccanica data.
+     * @param gM  la meccanica del gioco
+     * @param taglio  la profondità fino alla quale le situazioni sono suddivise in
+     *                task
+     * @param interrupt  se non è null e ritorna true il calcolo è interrotto
+     * @param checkpoint  il file in cui salvare lo stato del calcolo o null
+     * @param pool  il pool in cui eseguire i task */
+    RisolutoreParallelo(Mechanics<P> gM, int taglio, Supplier<Boolean> interrupt, Path checkpoint,
+                        ForkJoinPool pool) {
+        meccanica = gM;
+        this.pool = Objects.requireNonNull(pool);
+        this.taglio = taglio;
+        interruzione = interrupt;
+        this.checkpoint = checkpoint == null ? null : new Checkpoint(checkpoint, TIPO);
+    }
+
+    /** Calcola la strategia ottimale nel pool del risolutore.
+     * @return la mappa dalle codifiche delle situazioni valutate ai loro valori (0
+     * patta, -i vittoria del giocatore i)
+     * @throws CancellationException se il calcolo è interrotto */
+    Map<Probe.EncS<P>, Integer> risolvi() {
+        if (checkpoint != null)
+            riprendi();
+
+        try {
+            attendi(pool.submit(new Compito(meccanica.start, 0, 0, null)));
+        } catch (CancellationException e) {
+            //Il lavoro fatto non va perso;
+            if (checkpoint != null)
+                checkpoint.salva(this::scrivi);
+
+            throw e;
+        }
+
+        if (checkpoint != null)
+            checkpoint.cancella();
+
+        //Alla fine non ci sono più prenotazioni, solamente valori;
+        Map<Probe.EncS<P>, Integer> strategia = new HashMap<>();
+
+        for (Map.Entry<Probe.EncS<P>, Object> e : tabella.entrySet())
+            strategia.put(e.getKey(), (Integer) e.getValue());
+
+        return strategia;
+    }
+
+
+    /**Il tipo dei checkpoint scritti da questo calcolo*/
+    private static final int TIPO = 0x5041524C;   // "PARL"
+
+    private final Mechanics<P> meccanica;
+    private final Checkpoint checkpoint;
+    private final int taglio;
+    private final Supplier<Boolean> interruzione;
+    private final ForkJoinPool pool;
+    //Se il thread che ha invocato risolvi() è stato interrotto;
+    private volatile boolean fermato;
+    /**I valori (Integer) delle situazioni risolte e le prenotazioni di quelle in corso:
+       il latch è aperto da chi risolve la situazione dopo averlo sostituito con il
+       valore (o tolto, se il calcolo fallisce)*/
+    private final ConcurrentHashMap<Probe.EncS<P>, Object> tabella = new ConcurrentHashMap<>();
+
+    /**Il task che risolve una situazione fino alla profondità di taglio e avvisa i
+       fratelli se è vincente per il giocatore di turno nella situazione padre*/
+    private class Compito extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        Compito(Situation<P> s, int profondita, int turnoPadre, AtomicBoolean vincente) {
+            this.s = s;
+            this.profondita = profondita;
+            this.turnoPadre = turnoPadre;
+            this.vincente = vincente;
+        }
+
+        @Override
+        protected Integer compute() {
+            //Se un fratello è già vincente il valore non serve;
+            if (vincente != null && vincente.get())
+                return null;
+
+            int v = valore(s, profondita);
+
+            if (vincente != null && v == -turnoPadre)
+                vincente.set(true);
+
+            return v;
+        }
+
+        private final Situation<P> s;
+        private final int profondita, turnoPadre;
+        private final AtomicBoolean vincente;
+    }
+
+    /**Il valore della situazione, risolta dal task se non è già nella tabella*/
+    private int valore(Situation<P> s, int profondita) {
+        Probe.EncS<P> cod = new Probe.EncS<>(meccanica, s);
+
+        //Una situazione finale non ha niente da risolvere;
+        if (s.turn <= 0) {
+            tabella.put(cod, s.turn);
+            return s.turn;
+        }
+
+        Object x = prenota(cod);
+
+        if (x instanceof Integer)
+            return (Integer) x;
+
+        CountDownLatch mia = (CountDownLatch) x;
+        boolean finita = false;
+
+        try {
+            int v = profondita < taglio ? parallelo(s, profondita) : sequenziale(s, cod, mia);
+            risolta(cod, mia, v);
+            finita = true;
+            return v;
+        } finally {
+            if (!finita)
+                rilascia(cod, mia);
+        }
+    }
+
+    /**Ritorna il valore della situazione se è già risolta, aspettando chi la sta
+       risolvendo se è prenotata, altrimenti la prenota e ritorna il latch della
+       prenotazione (se chi l'aveva prenotata fallisce prova a prenotarla di nuovo)*/
+    private Object prenota(Probe.EncS<P> cod) {
+        CountDownLatch mia = null;
+
+        while (true) {
+            if (fermato || (interruzione != null && interruzione.get()))
+                throw new CancellationException();
+
+            //La prenotazione è creata solamente se la situazione non è già nella tabella;
+            Object x = tabella.get(cod);
+
+            if (x == null) {
+                if (mia == null)
+                    mia = new CountDownLatch(1);
+
+                x = tabella.putIfAbsent(cod, mia);
+
+                if (x == null)
+                    return mia;
+            }
+
+            if (x instanceof Integer)
+                return x;
+
+            aspetta((CountDownLatch) x);
+        }
+    }
+
+    /**Sostituisce la prenotazione con il valore, poi chi aspetta lo può leggere*/
+    private void risolta(Probe.EncS<P> cod, CountDownLatch mia, int v) {
+        tabella.put(cod, v);
+        mia.countDown();
+
+        if (checkpoint != null && checkpoint.scaduto())
+            checkpoint.salva(this::scrivi);
+    }
+
+    /**Toglie la prenotazione di una situazione non risolta, così chi aspetta la può
+       prenotare*/
+    private void rilascia(Probe.EncS<P> cod, CountDownLatch mia) {
+        tabella.remove(cod, mia);
+        mia.countDown();
+    }
+
+    /**Aspetta che il latch sia aperto senza occupare un thread del pool. Se il thread
+       è interrotto il calcolo è fermato (valore se ne accorge)*/
+    private void aspetta(CountDownLatch latch) {
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    latch.await();
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() { return latch.getCount() == 0; }
+            });
+        } catch (InterruptedException e) {
+            fermato = true;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**Aspetta il task della situazione iniziale. Se il thread è interrotto ferma i
+       task, aspetta che il task termini e lancia CancellationException (invoke non
+       si accorge dell'interruzione, perché la cancella finché aspetta)*/
+    private void attendi(ForkJoinTask<Integer> radice) {
+        try {
+            radice.get();
+        } catch (InterruptedException e) {
+            fermato = true;
+            radice.quietlyJoin();
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**Una situazione prenotata nella pila della visita in profondità: le prossime
+       situazioni ancora da guardare (calcolate quando la situazione è già nella
+       pila, così se il calcolo fallisce la prenotazione è tolta) e il miglior
+       valore trovato finora*/
+    private class Nodo {
+        Nodo(Situation<P> s, Probe.EncS<P> cod, CountDownLatch mia) {
+            this.s = s;
+            this.cod = cod;
+            this.mia = mia;
+        }
+
+        /**Tiene conto del valore di una prossima situazione*/
+        void aggiungi(int v) {
+            if (v == -s.turn) vincente = true;
+            else if (v == 0) patta = true;
+            else altro = v;
+        }
+
+        /**Il valore, quando le prossime situazioni sono finite o una è vincente*/
+        int valore() { return vincente ? -s.turn : (patta ? 0 : altro); }
+
+        final Situation<P> s;
+        final Probe.EncS<P> cod;
+        final CountDownLatch mia;
+        Iterator<Situation<P>> figli;
+        boolean vincente, patta;
+        int altro = -3;
+    }
+
+    /**Il valore della situazione s, già prenotata dal chiamante (che mette il valore
+       nella tabella), con una visita in profondità con una pila esplicita. Ogni
+       situazione nella pila è prenotata, quindi se la visita fallisce le prenotazioni
+       sono tolte (tranne quella di s)*/
+    private int sequenziale(Situation<P> s, Probe.EncS<P> cod, CountDownLatch mia) {
+        Deque<Nodo> pila = new ArrayDeque<>();
+        pila.push(new Nodo(s, cod, mia));
+        boolean finita = false;
+
+        try {
+            while (true) {
+                Nodo nodo = pila.peek();
+
+                if (nodo.figli == null)
+                    nodo.figli = meccanica.next.get(nodo.s).values().iterator();
+
+                //La situazione è valutata, il valore passa a quella che la precede;
+                if (nodo.vincente || !nodo.figli.hasNext()) {
+                    int v = nodo.valore();
+
+                    if (pila.size() == 1) {
+                        finita = true;
+                        return v;
+                    }
+
+                    risolta(nodo.cod, nodo.mia, v);
+                    pila.pop();
+                    pila.peek().aggiungi(v);
+                    continue;
+                }
+
+                Situation<P> n = nodo.figli.next();
+                Probe.EncS<P> codFiglio = new Probe.EncS<>(meccanica, n);
+
+                if (n.turn <= 0) {
+                    tabella.put(codFiglio, n.turn);
+                    nodo.aggiungi(n.turn);
+                    continue;
+                }
+
+                Object x = prenota(codFiglio);
+
+                if (x instanceof Integer)
+                    nodo.aggiungi((Integer) x);
+                else
+                    pila.push(new Nodo(n, codFiglio, (CountDownLatch) x));
+            }
+        } finally {
+            if (!finita)
+                while (pila.size() > 1) {
+                    Nodo nodo = pila.pop();
+                    rilascia(nodo.cod, nodo.mia);
+                }
+        }
+    }
+
+    private int parallelo(Situation<P> s, int profondita) {
+        AtomicBoolean vincente = new AtomicBoolean();
+        List<Compito> compiti = new ArrayList<>();
+
+        for (Situation<P> n : meccanica.next.get(s).values())
+            compiti.add(new Compito(n, profondita + 1, s.turn, vincente));
+
+        //Il primo lo risolvo io, gli altri possono essere rubati;
+        for (int i = compiti.size() - 1 ; i > 0 ; i--)
+            compiti.get(i).fork();
+
+        boolean patta = false;
+        int altro = -3;
+
+        for (int i = 0 ; i < compiti.size() ; i++) {
+            Compito c = compiti.get(i);
+
+            /*Tutti i task sono attesi, anche se un fratello è vincente: quelli non ancora
+              iniziati terminano subito, e cancel non fermerebbe quelli già iniziati, che
+              continuerebbero anche dopo il ritorno di risolvi()*/
+            Integer v = i == 0 ? c.invoke() : c.join();
+
+            if (v == null) continue;
+
+            if (v == 0) patta = true;
+            else altro = v;
+        }
+
+        return vincente.get() ? -s.turn : (patta ? 0 : altro);
+    }
+
+    /**Scrive i valori delle situazioni già risolte*/
+    private void scrivi(DataOutputStream out) throws IOException {
+        List<Map.Entry<Probe.EncS<P>, Object>> risolte = new ArrayList<>();
+
+        for (Map.Entry<Probe.EncS<P>, Object> e : tabella.entrySet())
+            if (e.getValue() instanceof Integer)
+                risolte.add(e);
+
+        out.writeInt(risolte.size());
+
+        for (Map.Entry<Probe.EncS<P>, Object> e : risolte) {
+            out.writeInt(e.getKey().codedSit.length);
+            out.write(e.getKey().codedSit);
+            out.writeByte((Integer) e.getValue());
+        }
+    }
+
+    /**Riprende la tabella salvata nel checkpoint, se c'è*/
+    private void riprendi() {
+        DataInputStream in = checkpoint.apri();
+
+        if (in == null)
+            return;
+
+        try (DataInputStream letto = in) {
+            int n = letto.readInt();
+
+            for (int i = 0 ; i < n ; i++) {
+                byte[] cod = new byte[letto.readInt()];
+                letto.readFully(cod);
+                tabella.put(new Probe.EncS<>(cod), (int) letto.readByte());
+            }
+        } catch (IOException e) {
+            //Checkpoint illeggibile, si ricomincia da capo;
+            tabella.clear();
+        }
+    }
+}
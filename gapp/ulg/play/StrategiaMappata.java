@@ -0,0 +1,176 @@
+package gapp.ulg.play;
+
+import gapp.ulg.game.GameFactory;
+import gapp.ulg.game.board.GameRuler;
+import gapp.ulg.game.util.Probe;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/** Una strategia ottimale letta direttamente da un file in formato compatto,
+ * mappato in memoria con {@link FileChannel#map}: le ricerche in
+ * {@link StrategiaOttimale#move} leggono il file mappato senza creare la tabella
+ * nello heap. Il formato del file è:
+ * <pre>
+ *     int      MAGIC
+ *     int      L, lunghezza in byte delle chiavi
+ *     int      N, numero di situazioni
+ *     N*L byte le codifiche {@link Probe.EncS} delle situazioni, come numeri senza
+ *              segno di L byte (big-endian) in ordine crescente
+ *     byte[]   gli esiti, 2 bit per situazione nello stesso ordine delle chiavi
+ *              (0 patta, 1 vince il primo giocatore, 2 vince il secondo, 3
+ *              situazione senza mosse)
+ * </pre>
+ * quindi una ricerca è una ricerca binaria sulle chiavi. Il file mappato deve essere
+ * al più di 2GB.
+ * @param <P>  tipo del modello dei pezzi */
+class StrategiaMappata<P> extends StrategiaOttimale<P> {
+    /** Il numero con cui iniziano i file in questo formato, i file che non iniziano
+     * così sono nel vecchio formato (una mappa serializzata) */
+    static final int MAGIC = 0x4F505453;   // "OPTS"
+
+    private static final long serialVersionUID = 1L;
+
+    /** Crea la strategia per il gioco della fabbrica data mappando il file dato.
+     * @param gF  la fabbrica del gioco
+     * @param file  un file scritto con {@link StrategiaMappata#scrivi(Map, Path)}
+     * @throws IOException se il file non può essere letto o non è nel formato
+     * compatto */
+    StrategiaMappata(GameFactory<? extends GameRuler<P>> gF, Path file) throws IOException {
+        super(gF);
+
+        try (FileChannel canale = FileChannel.open(file, StandardOpenOption.READ)) {
+            dati = canale.map(FileChannel.MapMode.READ_ONLY, 0, canale.size());
+        }
+
+        if (dati.capacity() < 12 || dati.getInt(0) != MAGIC)
+            throw new IOException("Formato non valido");
+
+        lunghezza = dati.getInt(4);
+        numero = dati.getInt(8);
+
+        if (lunghezza <= 0 || 12L + (long) numero * lunghezza + (numero + 3) / 4 > dati.capacity())
+            throw new IOException("Formato non valido");
+    }
+
+    /** Ritorna true se il file dato è nel formato compatto.
+     * @param file  un file
+     * @return true se il file dato è nel formato compatto
+     * @throws IOException se il file non può essere letto */
+    static boolean compatto(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /** Scrive la strategia data nel file dato nel formato compatto.
+     * @param strategia  la strategia, da codifiche di situazioni a esiti (0, -1 o -2)
+     * @param file  il file
+     * @throws IOException se il file non può essere scritto */
+    static <P> void scrivi(Map<Probe.EncS<P>, Integer> strategia, Path file) throws IOException {
+        int lunghezza = 1;
+
+        for (Probe.EncS<P> cod : strategia.keySet())
+            lunghezza = Math.max(lunghezza, senzaZeri(cod.codedSit).length);
+
+        //Le chiavi di lunghezza fissa, che ordinate come byte senza segno sono ordinate come numeri;
+        List<Map.Entry<byte[], Integer>> voci = new ArrayList<>(strategia.size());
+
+        for (Map.Entry<Probe.EncS<P>, Integer> e : strategia.entrySet())
+            voci.add(new AbstractMap.SimpleImmutableEntry<>(allunga(e.getKey().codedSit, lunghezza), e.getValue()));
+
+        voci.sort((x, y) -> confronta(x.getKey(), y.getKey()));
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(lunghezza);
+            out.writeInt(voci.size());
+
+            for (Map.Entry<byte[], Integer> e : voci)
+                out.write(e.getKey());
+
+            int b = 0;
+
+            for (int i = 0 ; i < voci.size() ; i++) {
+                b |= daEsito(voci.get(i).getValue()) << (2 * (i % 4));
+
+                if (i % 4 == 3 || i == voci.size() - 1) {
+                    out.write(b);
+                    b = 0;
+                }
+            }
+        }
+    }
+
+    @Override
+    Integer esito(Probe.EncS<P> cod) {
+        byte[] cercata = senzaZeri(cod.codedSit);
+
+        if (cercata.length > lunghezza)
+            return null;
+
+        int da = 0, a = numero - 1, offset = lunghezza - cercata.length;
+
+        while (da <= a) {
+            int medio = (da + a) >>> 1, base = 12 + medio * lunghezza, c = 0;
+
+            //Confronto la chiave medio con quella cercata, allungata con zeri iniziali;
+            for (int i = 0 ; i < lunghezza && c == 0 ; i++)
+                c = Integer.compare(dati.get(base + i) & 0xFF, i < offset ? 0 : cercata[i - offset] & 0xFF);
+
+            if (c < 0) da = medio + 1;
+            else if (c > 0) a = medio - 1;
+            else {
+                int b = dati.get(12 + numero * lunghezza + medio / 4) & 0xFF;
+                return aEsito((b >>> (2 * (medio % 4))) & 3);
+            }
+        }
+
+        return null;
+    }
+
+
+    //Il file mappato non si serializza: una copia deserializzata non conosce nessuna situazione;
+    private final transient MappedByteBuffer dati;
+    private final transient int lunghezza, numero;
+
+    private static int daEsito(Integer esito) {
+        if (esito == 0) return 0;
+        return esito == -1 ? 1 : (esito == -2 ? 2 : 3);
+    }
+
+    private static Integer aEsito(int v) {
+        return v == 0 ? 0 : -v;
+    }
+
+    /**I byte della codifica senza gli zeri iniziali (il segno di BigInteger)*/
+    private static byte[] senzaZeri(byte[] cod) {
+        int i = 0;
+
+        while (i < cod.length - 1 && cod[i] == 0) i++;
+
+        return i == 0 ? cod : Arrays.copyOfRange(cod, i, cod.length);
+    }
+
+    private static byte[] allunga(byte[] cod, int lunghezza) {
+        byte[] c = senzaZeri(cod), chiave = new byte[lunghezza];
+        System.arraycopy(c, 0, chiave, lunghezza - c.length, c.length);
+        return chiave;
+    }
+
+    private static int confronta(byte[] x, byte[] y) {
+        for (int i = 0 ; i < x.length ; i++) {
+            int c = Integer.compare(x[i] & 0xFF, y[i] & 0xFF);
+            if (c != 0) return c;
+        }
+
+        return 0;
+    }
+}